@@ -20,6 +20,15 @@ DROP FUNCTION IF EXISTS update_log_status(
 
 DROP FUNCTION IF EXISTS check_today_extract_success();
 
+-- ============================================================
+-- LOG_SRC: THỐNG KÊ GỌI API (số lần gọi, retry, độ trễ)
+-- ============================================================
+ALTER TABLE log_src ADD COLUMN IF NOT EXISTS api_calls INT DEFAULT 0;
+ALTER TABLE log_src ADD COLUMN IF NOT EXISTS retry_count INT DEFAULT 0;
+ALTER TABLE log_src ADD COLUMN IF NOT EXISTS cache_hits INT DEFAULT 0;
+ALTER TABLE log_src ADD COLUMN IF NOT EXISTS avg_latency_ms NUMERIC(10, 2);
+ALTER TABLE log_src ADD COLUMN IF NOT EXISTS max_latency_ms INT;
+
 -- ============================================================
 -- FUNCTION: LẤY HOẶC TẠO CONFIG - Trả về config_src_id
 -- ============================================================
@@ -86,11 +95,15 @@ BEGIN
     -- Tạo prefix ngày: YYYYMMDD
     execution_date_part := to_char(CURRENT_DATE, 'YYYYMMDD');
 
+    -- Số thứ tự trong ngày chung cho mọi config_src (mỗi ngày backfill có config_src riêng,
+    -- execution_id = batch_id phải khác nhau); khóa để 2 lần chạy song song không lấy cùng số
+    PERFORM pg_advisory_xact_lock(hashtext('create_new_log'));
+
     -- Lấy số thứ tự lớn nhất trong ngày
 SELECT COALESCE(MAX(split_part(execution_id, '-', 3)::INT), 0)
 INTO max_counter_today
 FROM log_src
-WHERE config_src_id = config_src_id_input
+WHERE execution_id LIKE 'EXEC-' || execution_date_part || '-%'
   AND DATE(start_time) = CURRENT_DATE;
 
 -- Tăng số thứ tự
@@ -154,11 +167,15 @@ RETURNS BOOLEAN AS $$
 DECLARE
 v_count INT;
 BEGIN
+-- Chỉ tính partition của hôm nay (config_name kết thúc bằng _yyyyMMdd),
+-- log backfill của các ngày khác chạy trong hôm nay không được tính
 SELECT COUNT(*)
 INTO v_count
-FROM log_src
-WHERE status = 'success'
-  AND DATE(start_time) = CURRENT_DATE;
+FROM log_src l
+JOIN config_src c ON c.config_src_id = l.config_src_id
+WHERE l.status = 'success'
+  AND DATE(l.start_time) = CURRENT_DATE
+  AND c.config_name LIKE '%' || to_char(CURRENT_DATE, 'YYYYMMDD');
 
 RETURN v_count > 0;
 END;
@@ -0,0 +1,49 @@
+-- ============================================================
+-- STAGING DB + WAREHOUSE DB: FACT TABLES PARTITION THEO THÁNG (<factPartitions><enabled>true</enabled>)
+-- fact_weather_daily, fact_air_quality_daily: RANGE theo observation_time, mỗi tháng một partition
+-- (<bảng>_pYYYYMM). TransformToStaging / LoadToDataWarehouse (utils.FactPartitions) tạo trước các
+-- partition tháng tới, tách dữ liệu rơi vào partition default ra partition tháng, DROP partition cũ
+-- theo retentionMonths.
+-- Chạy trên cả staging DB và warehouse DB. Dữ liệu hiện có được chuyển vào partition default,
+-- lần chạy đầu tiên sẽ tách ra các partition tháng.
+-- ============================================================
+DO $$
+DECLARE
+    v_table TEXT;
+    v_column RECORD;
+BEGIN
+    FOREACH v_table IN ARRAY ARRAY['fact_weather_daily', 'fact_air_quality_daily']
+    LOOP
+        -- Bỏ qua bảng không tồn tại hoặc đã partition
+        CONTINUE WHEN to_regclass(v_table) IS NULL;
+        CONTINUE WHEN EXISTS (SELECT 1 FROM pg_partitioned_table WHERE partrelid = to_regclass(v_table));
+
+        -- 1. Bảng cũ -> _legacy
+        EXECUTE format('ALTER TABLE %I RENAME TO %I', v_table, v_table || '_legacy');
+
+        -- 2. Bảng cha partition theo observation_time, cùng cột/default với bảng cũ
+        EXECUTE format('CREATE TABLE %I (LIKE %I INCLUDING DEFAULTS INCLUDING IDENTITY INCLUDING GENERATED) ' ||
+                       'PARTITION BY RANGE (observation_time)', v_table, v_table || '_legacy');
+        EXECUTE format('CREATE TABLE %I PARTITION OF %I DEFAULT', v_table || '_default', v_table);
+
+        -- Khóa của ON CONFLICT (location_sk, observation_time), đã chứa cột partition
+        EXECUTE format('CREATE UNIQUE INDEX %I ON %I (location_sk, observation_time)',
+                       v_table || '_location_time_key', v_table);
+
+        -- 3. Sequence của cột serial thuộc về bảng mới (không bị xóa cùng bảng cũ)
+        FOR v_column IN
+            SELECT a.attname, pg_get_serial_sequence(v_table || '_legacy', a.attname) AS seq
+            FROM pg_attribute a
+            WHERE a.attrelid = to_regclass(v_table || '_legacy') AND a.attnum > 0
+              AND NOT a.attisdropped AND a.attidentity = ''
+        LOOP
+            CONTINUE WHEN v_column.seq IS NULL;
+            EXECUTE format('ALTER SEQUENCE %s OWNED BY %I.%I', v_column.seq, v_table, v_column.attname);
+        END LOOP;
+
+        -- 4. Chuyển dữ liệu cũ sang bảng mới (vào partition default)
+        EXECUTE format('INSERT INTO %I OVERRIDING SYSTEM VALUE SELECT * FROM %I', v_table, v_table || '_legacy');
+        EXECUTE format('DROP TABLE %I', v_table || '_legacy');
+    END LOOP;
+END;
+$$;
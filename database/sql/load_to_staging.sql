@@ -106,4 +106,35 @@ BEGIN
 END;
 $BODY$
   LANGUAGE plpgsql VOLATILE
-  COST 100;
\ No newline at end of file
+  COST 100;
+-- ============================================================
+-- STAGING_BATCH: CÁC BATCH ĐÃ LOAD VÀO STAGING (chế độ incremental)
+-- loaded -> transformed -> dropped (retention xóa partition)
+-- ============================================================
+CREATE TABLE IF NOT EXISTS staging_batch (
+    load_batch_id  VARCHAR(100) PRIMARY KEY,
+    source_file    VARCHAR(500),
+    file_sha256    CHAR(64),
+    row_count      INT DEFAULT 0,
+    status         VARCHAR(20) NOT NULL DEFAULT 'loaded',
+    loaded_at      TIMESTAMP DEFAULT NOW(),
+    transformed_at TIMESTAMP,
+    dropped_at     TIMESTAMP
+);
+
+CREATE INDEX IF NOT EXISTS idx_staging_batch_status ON staging_batch (status, loaded_at);
+CREATE INDEX IF NOT EXISTS idx_staging_batch_sha256 ON staging_batch (file_sha256);
+
+-- ============================================================
+-- STAGING_FILE_CLAIM: KHÓA FILE KHI LOAD NHIỀU FILE SONG SONG (--scan / --watch)
+-- claimed -> loaded | failed (failed hoặc claim quá hạn được lấy lại)
+-- ============================================================
+CREATE TABLE IF NOT EXISTS staging_file_claim (
+    file_name     VARCHAR(255) PRIMARY KEY,
+    file_sha256   CHAR(64),
+    status        VARCHAR(20) NOT NULL DEFAULT 'claimed',
+    claimed_by    VARCHAR(255),
+    claimed_at    TIMESTAMP DEFAULT NOW(),
+    finished_at   TIMESTAMP,
+    load_batch_id VARCHAR(100)
+);
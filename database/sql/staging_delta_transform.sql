@@ -0,0 +1,20 @@
+-- ============================================================
+-- STAGING DB: TRANSFORM DELTA (<transform><mode>delta</mode>, cần <load><incremental>)
+-- stg_* không TRUNCATE nữa: dòng của batch mới được upsert theo khóa, chỉ ghi khi hash_key đổi.
+-- transform_exec_id = lần transform đã ghi dòng, bước Dim/Fact chỉ đọc các dòng đó.
+-- ============================================================
+ALTER TABLE stg_location ADD COLUMN IF NOT EXISTS transform_exec_id VARCHAR(100);
+ALTER TABLE stg_weather_condition ADD COLUMN IF NOT EXISTS transform_exec_id VARCHAR(100);
+ALTER TABLE stg_weather_observation ADD COLUMN IF NOT EXISTS transform_exec_id VARCHAR(100);
+ALTER TABLE stg_air_quality ADD COLUMN IF NOT EXISTS transform_exec_id VARCHAR(100);
+
+-- Khóa cho ON CONFLICT (đã duy nhất sau DISTINCT ON của bản rebuild)
+CREATE UNIQUE INDEX IF NOT EXISTS ux_stg_location_id ON stg_location (location_id);
+CREATE UNIQUE INDEX IF NOT EXISTS ux_stg_weather_condition_id ON stg_weather_condition (condition_id);
+CREATE UNIQUE INDEX IF NOT EXISTS ux_stg_weather_observation_id ON stg_weather_observation (observation_id);
+CREATE UNIQUE INDEX IF NOT EXISTS ux_stg_air_quality_id ON stg_air_quality (aq_id);
+
+CREATE INDEX IF NOT EXISTS idx_stg_location_exec ON stg_location (transform_exec_id);
+CREATE INDEX IF NOT EXISTS idx_stg_weather_condition_exec ON stg_weather_condition (transform_exec_id);
+CREATE INDEX IF NOT EXISTS idx_stg_weather_observation_exec ON stg_weather_observation (transform_exec_id);
+CREATE INDEX IF NOT EXISTS idx_stg_air_quality_exec ON stg_air_quality (transform_exec_id);
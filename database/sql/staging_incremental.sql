@@ -0,0 +1,55 @@
+-- ============================================================
+-- STAGING DB: RAW TABLES PARTITION THEO BATCH (<load><incremental>true</incremental>)
+-- Mỗi lần load ghi vào partition riêng (LIST theo load_batch_id = execution_id của Load),
+-- LoadToStaging tạo partition mới, retention DROP partition cũ thay vì TRUNCATE.
+-- Dữ liệu hiện có được giữ lại trong partition 'legacy'.
+-- ============================================================
+DO $$
+DECLARE
+    v_table TEXT;
+    v_constraint TEXT;
+BEGIN
+    FOREACH v_table IN ARRAY ARRAY['raw_weather_location', 'raw_weather_condition',
+                                   'raw_air_quality', 'raw_weather_observation', 'raw_payload']
+    LOOP
+        -- Bỏ qua bảng không tồn tại (raw_payload chỉ có khi dùng payloadStore) hoặc đã partition
+        CONTINUE WHEN to_regclass(v_table) IS NULL;
+        CONTINUE WHEN EXISTS (SELECT 1 FROM pg_partitioned_table WHERE partrelid = to_regclass(v_table));
+
+        -- 1. Bảng cũ -> partition 'legacy'
+        EXECUTE format('ALTER TABLE %I RENAME TO %I', v_table, v_table || '_legacy');
+        EXECUTE format('ALTER TABLE %I ADD COLUMN IF NOT EXISTS load_batch_id VARCHAR(100) NOT NULL DEFAULT %L',
+                       v_table || '_legacy', 'legacy');
+        EXECUTE format('ALTER TABLE %I ALTER COLUMN load_batch_id DROP DEFAULT', v_table || '_legacy');
+
+        -- raw_payload cũ có PRIMARY KEY (payload_hash) (staging_raw_payload.sql): bỏ đi, khóa mới
+        -- (load_batch_id, payload_hash) của bảng cha được tạo cho cả partition 'legacy' ở bước dưới
+        IF v_table = 'raw_payload' THEN
+            FOR v_constraint IN
+                SELECT conname FROM pg_constraint
+                WHERE conrelid = to_regclass(v_table || '_legacy') AND contype = 'p'
+            LOOP
+                EXECUTE format('ALTER TABLE %I DROP CONSTRAINT %I', v_table || '_legacy', v_constraint);
+            END LOOP;
+        END IF;
+
+        -- 2. Bảng cha partition theo load_batch_id, cùng cột/default với bảng cũ
+        EXECUTE format('CREATE TABLE %I (LIKE %I INCLUDING DEFAULTS INCLUDING IDENTITY INCLUDING GENERATED) ' ||
+                       'PARTITION BY LIST (load_batch_id)', v_table, v_table || '_legacy');
+
+        -- 3. Gắn dữ liệu cũ vào bảng cha
+        EXECUTE format('ALTER TABLE %I ATTACH PARTITION %I FOR VALUES IN (%L)',
+                       v_table, v_table || '_legacy', 'legacy');
+    END LOOP;
+END;
+$$;
+
+-- Khóa raw_payload phải chứa cột partition
+DO $$
+BEGIN
+    IF to_regclass('raw_payload') IS NOT NULL
+       AND NOT EXISTS (SELECT 1 FROM pg_constraint WHERE conrelid = to_regclass('raw_payload') AND contype = 'p') THEN
+        ALTER TABLE raw_payload ADD PRIMARY KEY (load_batch_id, payload_hash);
+    END IF;
+END;
+$$;
@@ -0,0 +1,38 @@
+-- ============================================================
+-- STAGING DB: LƯU RAW PAYLOAD MỘT LẦN (<load><payloadStore>true</payloadStore>)
+-- Mỗi dòng nguồn chỉ ghi JSON một lần vào raw_payload (khóa = SHA-256 của JSON),
+-- 4 bảng raw_* chỉ giữ payload_hash thay vì chép lại cùng một JSONB.
+-- Chạy trước hay sau staging_incremental.sql đều được: nếu raw_* đã partition theo
+-- load_batch_id thì raw_payload cũng được tạo partition (khóa chứa cột partition).
+-- ============================================================
+DO $$
+BEGIN
+    IF to_regclass('raw_payload') IS NOT NULL THEN
+        RETURN;
+    END IF;
+
+    IF EXISTS (SELECT 1 FROM pg_partitioned_table WHERE partrelid = to_regclass('raw_weather_location')) THEN
+        CREATE TABLE raw_payload (
+            payload_hash  CHAR(64) NOT NULL,
+            payload       JSONB NOT NULL,
+            batch_id      VARCHAR(100),
+            loaded_at     TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+            load_batch_id VARCHAR(100) NOT NULL,
+            PRIMARY KEY (load_batch_id, payload_hash)
+        ) PARTITION BY LIST (load_batch_id);
+    ELSE
+        CREATE TABLE raw_payload (
+            payload_hash CHAR(64) PRIMARY KEY,
+            payload      JSONB NOT NULL,
+            batch_id     VARCHAR(100),
+            loaded_at    TIMESTAMP DEFAULT CURRENT_TIMESTAMP
+        );
+    END IF;
+END;
+$$;
+
+ALTER TABLE raw_weather_location ADD COLUMN IF NOT EXISTS payload_hash CHAR(64);
+ALTER TABLE raw_weather_condition ADD COLUMN IF NOT EXISTS payload_hash CHAR(64);
+ALTER TABLE raw_air_quality ADD COLUMN IF NOT EXISTS payload_hash CHAR(64);
+ALTER TABLE raw_weather_observation ADD COLUMN IF NOT EXISTS payload_hash CHAR(64);
+
@@ -0,0 +1,18 @@
+-- ============================================================
+-- STAGING DB: DÒNG BỊ LOẠI KHI LOAD (raw_reject)
+-- Dòng sai số cột hoặc thiếu location_name không được load, được giữ lại với
+-- số dòng trong file, cột, lý do và nội dung dòng.
+-- Số dòng bị loại ghi vào log_process.records_failed; <load><maxRejects> (vd. 100 hoặc 1%)
+-- vượt ngưỡng thì cả lần load bị rollback.
+-- ============================================================
+CREATE TABLE IF NOT EXISTS raw_reject (
+    reject_id     BIGSERIAL PRIMARY KEY,
+    load_batch_id VARCHAR(100) NOT NULL,
+    line_number   BIGINT,
+    column_name   VARCHAR(100),
+    reason        TEXT,
+    raw_line      TEXT,
+    created_at    TIMESTAMP DEFAULT CURRENT_TIMESTAMP
+);
+
+CREATE INDEX IF NOT EXISTS idx_raw_reject_batch ON raw_reject (load_batch_id);
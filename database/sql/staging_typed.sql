@@ -0,0 +1,69 @@
+-- ============================================================
+-- STAGING DB: RAW TABLES KIỂU SỐ (<load><typedStaging>true</typedStaging>)
+-- LoadToStaging parse và kiểm tra số một lần khi load, cột đo lường lưu kiểu số thay vì TEXT;
+-- TransformToStaging không còn CASE ... ~ regex cho từng ô.
+-- Ô không hợp lệ được load thành NULL và ghi vào raw_cell_error.
+-- Dữ liệu cũ được chuyển kiểu, giá trị không phải số thành NULL.
+-- ============================================================
+DO $$
+DECLARE
+    v_col RECORD;
+BEGIN
+    FOR v_col IN
+        SELECT * FROM (VALUES
+            ('raw_weather_location', 'localtime_epoch', 'BIGINT', '^[-+]?[0-9]+$'),
+            ('raw_air_quality', 'co', 'DOUBLE PRECISION', '^[-+]?[0-9]*\.?[0-9]+$'),
+            ('raw_air_quality', 'no2', 'DOUBLE PRECISION', '^[-+]?[0-9]*\.?[0-9]+$'),
+            ('raw_air_quality', 'o3', 'DOUBLE PRECISION', '^[-+]?[0-9]*\.?[0-9]+$'),
+            ('raw_air_quality', 'so2', 'DOUBLE PRECISION', '^[-+]?[0-9]*\.?[0-9]+$'),
+            ('raw_air_quality', 'pm2_5', 'DOUBLE PRECISION', '^[-+]?[0-9]*\.?[0-9]+$'),
+            ('raw_air_quality', 'pm10', 'DOUBLE PRECISION', '^[-+]?[0-9]*\.?[0-9]+$'),
+            ('raw_air_quality', 'us_epa_index', 'INTEGER', '^[-+]?[0-9]+$'),
+            ('raw_air_quality', 'gb_defra_index', 'INTEGER', '^[-+]?[0-9]+$'),
+            ('raw_weather_observation', 'temp_c', 'DOUBLE PRECISION', '^[-+]?[0-9]*\.?[0-9]+$'),
+            ('raw_weather_observation', 'temp_f', 'DOUBLE PRECISION', '^[-+]?[0-9]*\.?[0-9]+$'),
+            ('raw_weather_observation', 'feelslike_c', 'DOUBLE PRECISION', '^[-+]?[0-9]*\.?[0-9]+$'),
+            ('raw_weather_observation', 'feelslike_f', 'DOUBLE PRECISION', '^[-+]?[0-9]*\.?[0-9]+$'),
+            ('raw_weather_observation', 'humidity', 'INTEGER', '^[-+]?[0-9]+$'),
+            ('raw_weather_observation', 'cloud', 'INTEGER', '^[-+]?[0-9]+$'),
+            ('raw_weather_observation', 'vis_km', 'DOUBLE PRECISION', '^[-+]?[0-9]*\.?[0-9]+$'),
+            ('raw_weather_observation', 'vis_miles', 'DOUBLE PRECISION', '^[-+]?[0-9]*\.?[0-9]+$'),
+            ('raw_weather_observation', 'uv', 'DOUBLE PRECISION', '^[-+]?[0-9]*\.?[0-9]+$'),
+            ('raw_weather_observation', 'gust_mph', 'DOUBLE PRECISION', '^[-+]?[0-9]*\.?[0-9]+$'),
+            ('raw_weather_observation', 'gust_kph', 'DOUBLE PRECISION', '^[-+]?[0-9]*\.?[0-9]+$'),
+            ('raw_weather_observation', 'wind_mph', 'DOUBLE PRECISION', '^[-+]?[0-9]*\.?[0-9]+$'),
+            ('raw_weather_observation', 'wind_kph', 'DOUBLE PRECISION', '^[-+]?[0-9]*\.?[0-9]+$'),
+            ('raw_weather_observation', 'wind_degree', 'INTEGER', '^[-+]?[0-9]+$'),
+            ('raw_weather_observation', 'pressure_mb', 'DOUBLE PRECISION', '^[-+]?[0-9]*\.?[0-9]+$'),
+            ('raw_weather_observation', 'pressure_in', 'DOUBLE PRECISION', '^[-+]?[0-9]*\.?[0-9]+$'),
+            ('raw_weather_observation', 'precip_mm', 'DOUBLE PRECISION', '^[-+]?[0-9]*\.?[0-9]+$'),
+            ('raw_weather_observation', 'precip_in', 'DOUBLE PRECISION', '^[-+]?[0-9]*\.?[0-9]+$')
+        ) AS c(table_name, column_name, new_type, pattern)
+    LOOP
+        -- Bỏ qua cột đã là kiểu số (chạy lại script không sao)
+        CONTINUE WHEN NOT EXISTS (
+            SELECT 1 FROM information_schema.columns
+            WHERE table_name = v_col.table_name AND column_name = v_col.column_name
+              AND data_type IN ('text', 'character varying', 'character'));
+
+        EXECUTE format('ALTER TABLE %I ALTER COLUMN %I TYPE %s USING CASE WHEN TRIM(%I) ~ %L THEN CAST(TRIM(%I) AS %s) END',
+                       v_col.table_name, v_col.column_name, v_col.new_type,
+                       v_col.column_name, v_col.pattern, v_col.column_name, v_col.new_type);
+    END LOOP;
+END;
+$$;
+
+-- Ô không chuyển được sang số (giá trị gốc, dòng, bảng, cột)
+CREATE TABLE IF NOT EXISTS raw_cell_error (
+    error_id      BIGSERIAL PRIMARY KEY,
+    load_batch_id VARCHAR(100) NOT NULL,
+    row_number    BIGINT,
+    table_name    VARCHAR(100),
+    column_name   VARCHAR(100),
+    source_column VARCHAR(100),
+    raw_value     TEXT,
+    expected_type VARCHAR(20),
+    created_at    TIMESTAMP DEFAULT CURRENT_TIMESTAMP
+);
+
+CREATE INDEX IF NOT EXISTS idx_raw_cell_error_batch ON raw_cell_error (load_batch_id);
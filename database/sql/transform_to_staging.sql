@@ -106,4 +106,16 @@ BEGIN
 END;
 $BODY$
   LANGUAGE plpgsql VOLATILE
-  COST 100;
\ No newline at end of file
+  COST 100;
+
+-- ============================================================
+-- TRANSFORM_WATERMARK: HIGH-WATER MARK THEO BẢNG RAW (<transform><mode>delta</mode>)
+-- Batch của staging_batch có loaded_at > last_loaded_at chưa được transform cho bảng đó.
+-- Xóa một dòng để transform lại mọi batch còn giữ của bảng đó.
+-- ============================================================
+CREATE TABLE IF NOT EXISTS transform_watermark (
+    source_table       VARCHAR(100) PRIMARY KEY,
+    last_loaded_at     TIMESTAMP,
+    last_load_batch_id VARCHAR(100),
+    updated_at         TIMESTAMP DEFAULT NOW()
+);
@@ -0,0 +1,121 @@
+package scripts.extract_scripts;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * current.json -> CSV row: WeatherRowTranscoder vs the former JsonParser tree + String.format
+ * (ExtractWeatherData.parseWeatherResponse before the transcoder, kept here as legacyRow).
+ * Run with -prof gc to compare allocation per row.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(2)
+public class WeatherRowTranscoderBenchmark {
+
+    private static final ExtractWeatherData.Location LOCATION =
+            new ExtractWeatherData.Location("Ha Noi", "Hanoi", "HN", "North");
+    private static final String EXEC_ID = "EXEC-20251123-001";
+    private static final String EXTRACT_TIME = "2025-11-23 08:00:00";
+
+    private final WeatherRowTranscoder transcoder = new WeatherRowTranscoder();
+
+    @Benchmark
+    public String transcoder() throws IOException {
+        return transcoder.transcode(SampleResponses.CURRENT, LOCATION, EXEC_ID, EXTRACT_TIME);
+    }
+
+    @Benchmark
+    public String legacy() {
+        return legacyRow(SampleResponses.CURRENT, LOCATION, EXEC_ID, EXTRACT_TIME);
+    }
+
+    private static String legacyRow(String jsonResponse, ExtractWeatherData.Location location,
+                                    String executionId, String extractTime) {
+        JsonObject root = JsonParser.parseString(jsonResponse).getAsJsonObject();
+        JsonObject locationObj = root.getAsJsonObject("location");
+        JsonObject current = root.getAsJsonObject("current");
+        JsonObject condition = current.getAsJsonObject("condition");
+        JsonObject airQuality = current.getAsJsonObject("air_quality");
+
+        String icon = condition.get("icon").getAsString();
+        if (icon.startsWith("//")) {
+            icon = "https:" + icon;
+        }
+        String name = location.getName();
+        if (name.contains(",")) {
+            name = "\"" + name + "\"";
+        }
+
+        return String.format("%s,%s,%s,%s," +
+                        "%s,%.4f,%.4f,%s,%d,%s," +
+                        "%.1f,%.1f,%.1f,%.1f," +
+                        "%d,%.1f,%.1f,%d,%s," +
+                        "%.1f,%.1f," +
+                        "%.1f,%.2f,%.1f,%.2f," +
+                        "%d,%.1f,%.1f,%.1f," +
+                        "%d," +
+                        "\"%s\",\"%s\",%d," +
+                        "%d,%d,%.2f,%.2f,%.2f,%.2f,%.2f,%.2f," +
+                        "%s,%s",
+                executionId,
+                name,
+                location.getCode(),
+                location.getRegion(),
+                locationObj.get("country").getAsString(),
+                locationObj.get("lat").getAsDouble(),
+                locationObj.get("lon").getAsDouble(),
+                locationObj.get("tz_id").getAsString(),
+                locationObj.get("localtime_epoch").getAsLong(),
+                locationObj.get("localtime").getAsString(),
+                current.get("temp_c").getAsDouble(),
+                current.get("temp_f").getAsDouble(),
+                current.get("feelslike_c").getAsDouble(),
+                current.get("feelslike_f").getAsDouble(),
+                current.get("humidity").getAsInt(),
+                current.get("wind_kph").getAsDouble(),
+                current.get("wind_mph").getAsDouble(),
+                current.get("wind_degree").getAsInt(),
+                current.get("wind_dir").getAsString(),
+                current.get("gust_kph").getAsDouble(),
+                current.get("gust_mph").getAsDouble(),
+                current.get("pressure_mb").getAsDouble(),
+                current.get("pressure_in").getAsDouble(),
+                current.get("precip_mm").getAsDouble(),
+                current.get("precip_in").getAsDouble(),
+                current.get("cloud").getAsInt(),
+                current.get("uv").getAsDouble(),
+                current.get("vis_km").getAsDouble(),
+                current.get("vis_miles").getAsDouble(),
+                current.get("is_day").getAsInt(),
+                condition.get("text").getAsString(),
+                icon,
+                condition.get("code").getAsInt(),
+                airQuality.get("us-epa-index").getAsInt(),
+                airQuality.get("gb-defra-index").getAsInt(),
+                airQuality.get("pm2_5").getAsDouble(),
+                airQuality.get("pm10").getAsDouble(),
+                airQuality.get("co").getAsDouble(),
+                airQuality.get("no2").getAsDouble(),
+                airQuality.get("o3").getAsDouble(),
+                airQuality.get("so2").getAsDouble(),
+                current.get("last_updated").getAsString(),
+                extractTime
+        );
+    }
+}
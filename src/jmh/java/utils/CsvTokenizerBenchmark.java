@@ -0,0 +1,95 @@
+package utils;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing an extract file: CsvTokenizer vs the former readLine + lookahead regex split +
+ * per-field replaceAll (LoadToStaging / RecordFileReader before the tokenizer).
+ * Input is a generated weatherapi_*.csv with the extract's columns, quoted text fields included.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(2)
+public class CsvTokenizerBenchmark {
+
+    private static final String[] CONDITIONS = {"Sunny", "Partly cloudy", "Patchy rain nearby", "Overcast"};
+
+    @Param({"1000", "24000"})
+    private int rows;
+
+    private String csv;
+    private final CsvTokenizer tokenizer = new CsvTokenizer(Reader.nullReader());
+
+    @Setup
+    public void generate() {
+        Random random = new Random(7);
+        StringBuilder sb = new StringBuilder();
+        sb.append("execution_id,location_name,location_code,region,country,lat,lon,tz_id,localtime_epoch,localtime," +
+                "temp_c,temp_f,feels_like_c,feels_like_f,humidity,wind_kph,wind_mph,wind_degree,wind_dir," +
+                "gust_kph,gust_mph,pressure_mb,pressure_in,precip_mm,precip_in,cloud,uv,vis_km,vis_miles,is_day," +
+                "condition_text,condition_icon,condition_code,aqi_us,aqi_gb,pm2_5,pm10,co,no2,o3,so2," +
+                "last_updated,extract_time,source_system\n");
+        for (int i = 0; i < rows; i++) {
+            double temp = 15 + random.nextDouble() * 20;
+            String condition = CONDITIONS[random.nextInt(CONDITIONS.length)];
+            sb.append("EXEC-20251123-001,")
+                    .append(i % 7 == 0 ? "\"Ha Noi, Viet Nam\"" : "Da Nang").append(",DN,Central,Vietnam,")
+                    .append("16.0678,108.2208,Asia/Bangkok,1763859600,2025-11-23 08:00,")
+                    .append(String.format(Locale.ROOT, "%.1f,%.1f,%.1f,%.1f,", temp, temp * 1.8 + 32, temp + 1, temp * 1.8 + 34))
+                    .append(random.nextInt(100)).append(",10.8,6.7,45,NE,14.6,9.1,1019.0,30.09,0.0,0.00,50,1.4,10.0,6.0,1,")
+                    .append('"').append(condition).append("\",\"https://cdn.weatherapi.com/weather/64x64/day/116.png\",1003,")
+                    .append("4,10,88.25,91.58,1093.95,52.36,30.00,21.83,2025-11-23 08:00,2025-11-23 08:00:01,WeatherAPI\n");
+        }
+        csv = sb.toString();
+    }
+
+    @Benchmark
+    public void tokenizer(Blackhole blackhole) throws IOException {
+        tokenizer.reset(new StringReader(csv));
+        while (tokenizer.next()) {
+            for (int i = 0; i < tokenizer.getFieldCount(); i++) {
+                blackhole.consume(tokenizer.getField(i));
+            }
+        }
+    }
+
+    @Benchmark
+    public void legacyRegex(Blackhole blackhole) throws IOException {
+        try (BufferedReader reader = new BufferedReader(new StringReader(csv))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                for (String field : legacySplit(line)) {
+                    blackhole.consume(field);
+                }
+            }
+        }
+    }
+
+    private static String[] legacySplit(String line) {
+        String[] row = line.split(",(?=(?:[^\"]*\"[^\"]*\")*[^\"]*$)", -1);
+        for (int i = 0; i < row.length; i++) row[i] = row[i].replaceAll("^\"|\"$", "");
+        return row;
+    }
+}
@@ -0,0 +1,99 @@
+package scripts.extract_scripts;
+
+import java.time.Duration;
+
+/**
+ * Simple circuit breaker for one upstream host.
+ * CLOSED    : calls go through, consecutive failures are counted
+ * OPEN      : after failureThreshold failures, calls fail fast for openDuration
+ * HALF_OPEN : after openDuration one trial call is let through,
+ *             success closes the breaker, failure opens it again
+ */
+public class CircuitBreaker {
+
+    enum State { CLOSED, OPEN, HALF_OPEN }
+
+    private final String name;
+    private final int failureThreshold;
+    private final long openNanos;
+
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    private long openedAtNanos;
+    private boolean trialInFlight;
+    // Thread making the half-open trial call
+    private Thread trialThread;
+
+    public CircuitBreaker(String name, int failureThreshold, Duration openDuration) {
+        this.name = name;
+        this.failureThreshold = Math.max(1, failureThreshold);
+        this.openNanos = openDuration.toNanos();
+    }
+
+    /**
+     * Is a call allowed right now?
+     */
+    public synchronized boolean allowRequest() {
+        if (state == State.OPEN && System.nanoTime() - openedAtNanos >= openNanos) {
+            state = State.HALF_OPEN;
+            trialInFlight = false;
+            trialThread = null;
+        }
+        switch (state) {
+            case CLOSED:
+                return true;
+            case HALF_OPEN:
+                if (trialInFlight) {
+                    return false;
+                }
+                trialInFlight = true;
+                trialThread = Thread.currentThread();
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    public synchronized void onSuccess() {
+        consecutiveFailures = 0;
+        trialInFlight = false;
+        trialThread = null;
+        if (state != State.CLOSED) {
+            System.out.println("  [CircuitBreaker] " + name + " CLOSED");
+        }
+        state = State.CLOSED;
+    }
+
+    public synchronized void onFailure() {
+        consecutiveFailures++;
+        trialInFlight = false;
+        trialThread = null;
+        if (state == State.HALF_OPEN || consecutiveFailures >= failureThreshold) {
+            if (state != State.OPEN) {
+                System.err.println("  [CircuitBreaker] " + name + " OPEN after " +
+                        consecutiveFailures + " consecutive failures");
+            }
+            state = State.OPEN;
+            openedAtNanos = System.nanoTime();
+        }
+    }
+
+    /**
+     * End of a call: frees the half-open trial taken by this thread if neither onSuccess nor
+     * onFailure did (the call was interrupted or failed with an unexpected error)
+     */
+    public synchronized void releaseTrial() {
+        if (trialThread == Thread.currentThread()) {
+            trialInFlight = false;
+            trialThread = null;
+        }
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    public String getName() {
+        return name;
+    }
+}
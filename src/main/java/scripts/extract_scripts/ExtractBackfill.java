@@ -0,0 +1,226 @@
+package scripts.extract_scripts;
+
+import org.w3c.dom.Element;
+import utils.DBConn;
+import utils.EmailSender;
+import utils.LoadConfig;
+import utils.RecordFileWriter;
+import utils.RecordFormat;
+
+import java.nio.file.Paths;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Backfill / history extract (WeatherAPI history.json only).
+ *
+ * Splits a date range x location subset into (location, day) tasks, fetches
+ * them in parallel through the same WeatherApiClient (rate limit + retry)
+ * from the history endpoint, and writes one file per day with the daily
+ * naming weatherapi_yyyyMMdd.<format>. Each day is a partition registered in
+ * the control DB (config_src <config_name>_yyyyMMdd + its own log_src entry)
+ * and follows STRICT MODE on its own: one failed task = no file for that day.
+ */
+public class ExtractBackfill {
+
+    private static final DateTimeFormatter DAY_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd");
+    private static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    public static void runBackfill(LoadConfig config, LocalDate from, LocalDate to,
+                                   Set<String> locationCodes, DBConn controlDB) {
+        System.out.println("[Backfill] Extracting history " + from + " -> " + to + "...");
+
+        if (to.isBefore(from)) {
+            throw new IllegalArgumentException("Backfill end date is before start date");
+        }
+
+        // Partitions whose log_src row is still 'running', marked failed if the backfill aborts
+        List<ExtractWeatherData.ExtractInfo> unfinished = new ArrayList<>();
+        try {
+            // Locations (optionally a subset by code)
+            List<ExtractWeatherData.Location> locations = new ArrayList<>();
+            for (ExtractWeatherData.Location location : ExtractWeatherData.getLocationsFromConfig(config)) {
+                if (locationCodes.isEmpty() || locationCodes.contains(location.getCode())) {
+                    locations.add(location);
+                }
+            }
+            if (locations.isEmpty()) {
+                throw new RuntimeException("No locations match backfill subset: " + locationCodes);
+            }
+
+            List<LocalDate> days = new ArrayList<>();
+            for (LocalDate d = from; !d.isAfter(to); d = d.plusDays(1)) {
+                days.add(d);
+            }
+
+            System.out.println("  - Days      : " + days.size());
+            System.out.println("  - Locations : " + locations.size());
+            System.out.println("  - Tasks     : " + days.size() * locations.size());
+
+            // API config
+            Element api = LoadConfig.getElement(config.getXmlDoc(), "api");
+            Element weather = LoadConfig.getChildElement(api, "weather");
+            String apiKey = LoadConfig.getValue(weather, "apiKey");
+            String historyUrl = buildHistoryBaseUrl(LoadConfig.getValue(weather, "baseUrl"),
+                    LoadConfig.getValue(weather, "historyEndpoint"));
+            int maxConcurrency = ExtractWeatherData.parseIntOrDefault(
+                    LoadConfig.getValue(weather, "maxConcurrency"), 1);
+            WeatherApiClient apiClient = WeatherApiClient.fromConfig(weather);
+
+            // Register every partition first (config_src + running log)
+            List<ExtractWeatherData.ExtractInfo> partitions = new ArrayList<>();
+            for (LocalDate day : days) {
+                ExtractWeatherData.ExtractInfo partition = ExtractToFile.registerExtract(config, day);
+                partitions.add(partition);
+                unfinished.add(partition);
+            }
+
+            // Fetch all (location, day) tasks
+            Semaphore permits = new Semaphore(Math.max(1, maxConcurrency));
+            List<List<Future<List<String>>>> futures = new ArrayList<>();
+            try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+                for (int d = 0; d < days.size(); d++) {
+                    LocalDate day = days.get(d);
+                    String executionId = partitions.get(d).getExecutionId();
+                    List<Future<List<String>>> dayFutures = new ArrayList<>();
+                    for (ExtractWeatherData.Location location : locations) {
+                        dayFutures.add(executor.submit(() -> {
+                            permits.acquire();
+                            try {
+                                return fetchDay(apiClient, historyUrl, apiKey, location, day, executionId);
+                            } finally {
+                                permits.release();
+                            }
+                        }));
+                    }
+                    futures.add(dayFutures);
+                }
+            }
+
+            // Write one file per day (STRICT MODE per partition)
+            int failedPartitions = 0;
+            StringBuilder summary = new StringBuilder();
+            for (int d = 0; d < days.size(); d++) {
+                LocalDate day = days.get(d);
+                ExtractWeatherData.ExtractInfo partition = partitions.get(d);
+
+                List<String> rows = new ArrayList<>();
+                List<String> errors = new ArrayList<>();
+                for (int l = 0; l < locations.size(); l++) {
+                    ExtractWeatherData.Location location = locations.get(l);
+                    try {
+                        rows.addAll(futures.get(d).get(l).get());
+                    } catch (ExecutionException e) {
+                        Throwable cause = e.getCause() != null ? e.getCause() : e;
+                        errors.add(location.getName() + " (" + location.getCode() + ") - " + cause.getMessage());
+                    }
+                }
+
+                if (errors.isEmpty()) {
+                    writePartition(partition.getOutputPath(), ExtractWeatherData.getOutputFormat(config), rows);
+                    ExtractWeatherData.updateLogSuccess(controlDB, partition.getConfigSrcId(), partition.getExecutionId(), rows.size());
+                    unfinished.remove(partition);
+                    summary.append(String.format("✓ %s: %d rows -> %s\n", day, rows.size(), partition.getOutputPath()));
+                } else {
+                    failedPartitions++;
+                    String errorMsg = String.format("Backfill %s FAILED: %d/%d locations failed. First error: %s",
+                            day, errors.size(), locations.size(), errors.get(0));
+                    ExtractWeatherData.updateLogFailed(controlDB, partition.getConfigSrcId(), partition.getExecutionId(), errorMsg);
+                    unfinished.remove(partition);
+                    summary.append(String.format("✗ %s: %d location(s) failed, first: %s\n",
+                            day, errors.size(), errors.get(0)));
+                }
+            }
+
+            System.out.println("\n[Backfill] Completed:");
+            System.out.print(summary);
+            System.out.println("  - API calls: " + apiClient.getCallCount() + ", retries: " + apiClient.getRetryCount());
+
+            String subject = failedPartitions == 0
+                    ? "✓ Weather ETL - Backfill Completed Successfully"
+                    : "✗ ERROR: Weather ETL - Backfill Failed (" + failedPartitions + " day(s))";
+            String body = "=== BACKFILL " + from + " -> " + to + " ===\n\n" +
+                    "Time: " + LocalDateTime.now().format(TIME_FORMAT) + "\n" +
+                    "Locations: " + locations.size() + "\n\n" + summary;
+            EmailSender.sendEmail(subject, body);
+
+            if (failedPartitions > 0) {
+                throw new RuntimeException(failedPartitions + " backfill partition(s) failed");
+            }
+
+        } catch (RuntimeException e) {
+            failUnfinished(controlDB, unfinished, e);
+            throw e;
+        } catch (Exception e) {
+            failUnfinished(controlDB, unfinished, e);
+            EmailSender.sendError("✗ ERROR: Weather ETL - Backfill Failed (System Error)", e.getMessage(), e);
+            throw new RuntimeException("Backfill failed", e);
+        }
+    }
+
+    /**
+     * The backfill stopped before these partitions got their result (write error, interrupt,
+     * registration failing part way): close their 'running' log entries as failed
+     */
+    private static void failUnfinished(DBConn controlDB, List<ExtractWeatherData.ExtractInfo> unfinished, Exception cause) {
+        for (ExtractWeatherData.ExtractInfo partition : unfinished) {
+            ExtractWeatherData.updateLogFailed(controlDB, partition.getConfigSrcId(), partition.getExecutionId(),
+                    "Backfill aborted: " + cause.getMessage());
+        }
+        unfinished.clear();
+    }
+
+    /**
+     * Fetch hourly history of one location for one day
+     */
+    private static List<String> fetchDay(WeatherApiClient apiClient, String historyUrl, String apiKey,
+                                         ExtractWeatherData.Location location, LocalDate day,
+                                         String executionId) throws Exception {
+        String label = location.getName() + " (" + location.getCode() + ") " + day;
+        String url = String.format("%s?key=%s&q=%s&dt=%s",
+                historyUrl, apiKey, location.getApiName().replace(" ", "%20"), day.format(DAY_FORMAT));
+
+        String body = apiClient.get(url, label);
+        List<String> rows = new ArrayList<>();
+        for (String row : new WeatherRowTranscoder().transcodeHistory(body, location, executionId,
+                LocalDateTime.now().format(TIME_FORMAT))) {
+            rows.add(row + "," + WeatherApiSource.NAME);
+        }
+        if (rows.isEmpty()) {
+            throw new IllegalStateException("No hourly data returned");
+        }
+        System.out.println("  ✓ " + label + ": " + rows.size() + " rows");
+        return rows;
+    }
+
+    /**
+     * .../v1/current.json?... -> .../v1/history.json
+     */
+    static String buildHistoryBaseUrl(String baseUrl, String historyEndpoint) {
+        String basePath = baseUrl.split("\\?")[0];
+        String endpoint = historyEndpoint == null || historyEndpoint.isEmpty() ? "history.json" : historyEndpoint;
+        return basePath.substring(0, basePath.lastIndexOf('/') + 1) + endpoint;
+    }
+
+    /**
+     * Temp file + fsync + rename + manifest, same as the daily extract
+     */
+    private static void writePartition(String outputPath, RecordFormat format, List<String> rows) throws Exception {
+        try (RecordFileWriter writer = RecordFileWriter.open(Paths.get(outputPath), format,
+                ExtractWeatherData.getColumns(), ExtractWeatherData.getColumnTypes())) {
+            for (String row : rows) {
+                writer.writeRow(row);
+            }
+            writer.commit();
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package scripts.extract_scripts;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Per-location checkpoint journal kept next to the output file
+ * (e.g. data/weatherapi_20251118.csv.journal).
+ *
+ * Each line: STATUS \t location_code \t execution_id \t csv_row | error
+ * - OK lines are written as soon as a location succeeds
+ * - a rerun on the same day reuses OK rows and only fetches the rest
+ * - the journal is deleted once the complete file has been written
+ */
+public class ExtractCheckpoint implements Closeable {
+
+    private static final String OK = "OK";
+    private static final String FAILED = "FAILED";
+
+    private final Path journalPath;
+    private final Map<String, String> completedRows = new HashMap<>();
+    private final BufferedWriter writer;
+
+    private ExtractCheckpoint(Path journalPath, String executionId) throws IOException {
+        this.journalPath = journalPath;
+
+        if (Files.exists(journalPath)) {
+            readJournal();
+        }
+
+        this.writer = Files.newBufferedWriter(journalPath, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        writer.write("# " + executionId + " started " +
+                LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss")));
+        writer.newLine();
+        writer.flush();
+    }
+
+    /**
+     * Open (or create) the journal for an output file
+     */
+    public static ExtractCheckpoint open(String outputPath, String executionId) throws IOException {
+        return new ExtractCheckpoint(journalPathFor(outputPath), executionId);
+    }
+
+    public static Path journalPathFor(String outputPath) {
+        return Paths.get(outputPath + ".journal");
+    }
+
+    /**
+     * Load last status of each location, only OK rows are kept
+     */
+    private void readJournal() throws IOException {
+        List<String> lines = Files.readAllLines(journalPath, StandardCharsets.UTF_8);
+        for (String line : lines) {
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            String[] parts = line.split("\t", 4);
+            if (parts.length < 4) {
+                continue; // Truncated line from a crash
+            }
+            if (OK.equals(parts[0])) {
+                completedRows.put(parts[1], parts[3]);
+            } else {
+                completedRows.remove(parts[1]);
+            }
+        }
+    }
+
+    /**
+     * CSV row of a location already extracted by a previous run, or null
+     */
+    public String getCompletedRow(String locationCode) {
+        return completedRows.get(locationCode);
+    }
+
+    public int getCompletedCount() {
+        return completedRows.size();
+    }
+
+    public synchronized void markSuccess(String locationCode, String executionId, String csvRow) throws IOException {
+        append(OK, locationCode, executionId, csvRow);
+    }
+
+    public synchronized void markFailed(String locationCode, String executionId, String error) throws IOException {
+        String reason = error != null ? error.replace('\t', ' ').replace('\n', ' ') : "";
+        append(FAILED, locationCode, executionId, reason);
+    }
+
+    private void append(String status, String locationCode, String executionId, String value) throws IOException {
+        writer.write(status + "\t" + locationCode + "\t" + executionId + "\t" + value);
+        writer.newLine();
+        writer.flush();
+    }
+
+    /**
+     * Remove the journal after the complete file has been written
+     */
+    public void delete() throws IOException {
+        close();
+        Files.deleteIfExists(journalPath);
+    }
+
+    public Path getJournalPath() {
+        return journalPath;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        writer.close();
+    }
+}
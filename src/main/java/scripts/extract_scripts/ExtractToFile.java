@@ -5,8 +5,12 @@ import utils.DBConn;
 import utils.EmailSender;
 import utils.LoadConfig;
 
+import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
 
 public class ExtractToFile {
 
@@ -72,7 +76,7 @@ public class ExtractToFile {
             System.out.println("[DEBUG] Username: " + username);
             System.out.println("[DEBUG] Password: " + (password.isEmpty() ? "EMPTY!" : "***"));
 
-            DBConn db = new DBConn(url, username, password);
+            DBConn db = DBConn.fromConfig(control);
 
             // Test connection
             db.executeQuery("SELECT 1", rs -> {
@@ -144,90 +148,96 @@ public class ExtractToFile {
     public static ExtractWeatherData.ExtractInfo prepareExtract(LoadConfig c) {
         try {
             System.out.println("[Step 4] Preparing extract...");
+            return registerExtract(c, LocalDate.now());
 
-            Element config = LoadConfig.getElement(c.getXmlDoc(), "config");
-            Element configSource = LoadConfig.getChildElement(config, "configSource");
-
-            String baseName = LoadConfig.getValue(configSource, "config_name");
-
-            String today = java.time.LocalDate.now().format(
-                    java.time.format.DateTimeFormatter.ofPattern("yyyyMMdd")
-            );
-
-            String configName = baseName + "_" + today;
-            String sourceType = LoadConfig.getValue(configSource, "source_type");
-            String sourceUrl = LoadConfig.getValue(configSource, "source_url");
-            String outputPathBase = LoadConfig.getValue(configSource, "output_path");
-            boolean isActive = Boolean.parseBoolean(LoadConfig.getValue(configSource, "is_active"));
-
-            String fullOutputPath = ExtractWeatherData.generateDailyFileName(outputPathBase);
-
-            System.out.println("[Step 4] Config info from XML:");
-            System.out.println("  - Config Name   : " + configName);
-            System.out.println("  - Source Type   : " + sourceType);
-            System.out.println("  - Source URL    : " + sourceUrl);
-            System.out.println("  - Output Path   : " + fullOutputPath);
-            System.out.println("  - Is Active     : " + isActive);
-
-            // Step 1: Get config with FULL PATH
-            String getConfigSql = String.format(
-                    "SELECT * FROM get_or_create_config('%s', '%s', '%s', '%s', %b)",
-                    configName, sourceType, sourceUrl, fullOutputPath, isActive
-            );
-
-            final int[] configSrcId = {0};
-            final String[] dbSourceUrl = {null};
-            final String[] dbOutputPath = {null};
-
-            controlDB.executeQuery(getConfigSql, rs -> {
-                if (rs.next()) {
-                    configSrcId[0] = rs.getInt("config_src_id");
-                    dbSourceUrl[0] = rs.getString("source_url");
-                    dbOutputPath[0] = rs.getString("output_path");
-                }
-            });
+        } catch (Exception e) {
+            EmailSender.sendError("ERROR: Prepare Extract Failed", e.getMessage(), e);
+            e.printStackTrace();
+            System.exit(1);
+            return null;
+        }
+    }
 
-            if (configSrcId[0] == 0) {
-                throw new Exception("Cannot get or create config");
+    /**
+     * Get/create config_src of one day partition (<config_name>_yyyyMMdd) and create a new log_src entry
+     */
+    static ExtractWeatherData.ExtractInfo registerExtract(LoadConfig c, LocalDate date) throws Exception {
+        Element config = LoadConfig.getElement(c.getXmlDoc(), "config");
+        Element configSource = LoadConfig.getChildElement(config, "configSource");
+
+        String baseName = LoadConfig.getValue(configSource, "config_name");
+
+        String day = date.format(DateTimeFormatter.ofPattern("yyyyMMdd"));
+
+        String configName = baseName + "_" + day;
+        String sourceType = LoadConfig.getValue(configSource, "source_type");
+        String sourceUrl = LoadConfig.getValue(configSource, "source_url");
+        String outputPathBase = LoadConfig.getValue(configSource, "output_path");
+        boolean isActive = Boolean.parseBoolean(LoadConfig.getValue(configSource, "is_active"));
+
+        String fullOutputPath = ExtractWeatherData.generateDailyFileName(outputPathBase, date,
+                ExtractWeatherData.getOutputFormat(c));
+
+        System.out.println("[Step 4] Config info from XML:");
+        System.out.println("  - Config Name   : " + configName);
+        System.out.println("  - Source Type   : " + sourceType);
+        System.out.println("  - Source URL    : " + sourceUrl);
+        System.out.println("  - Output Path   : " + fullOutputPath);
+        System.out.println("  - Is Active     : " + isActive);
+
+        // Step 1: Get config with FULL PATH
+        String getConfigSql = String.format(
+                "SELECT * FROM get_or_create_config('%s', '%s', '%s', '%s', %b)",
+                configName, sourceType, sourceUrl, fullOutputPath, isActive
+        );
+
+        final int[] configSrcId = {0};
+        final String[] dbSourceUrl = {null};
+        final String[] dbOutputPath = {null};
+
+        controlDB.executeQuery(getConfigSql, rs -> {
+            if (rs.next()) {
+                configSrcId[0] = rs.getInt("config_src_id");
+                dbSourceUrl[0] = rs.getString("source_url");
+                dbOutputPath[0] = rs.getString("output_path");
             }
+        });
 
-            System.out.println("[Step 4] Config from DB:");
-            System.out.println("  - Config ID     : " + configSrcId[0]);
-            System.out.println("  - Source URL    : " + dbSourceUrl[0]);
-            System.out.println("  - Output Path   : " + dbOutputPath[0]);
-
-            // Step 2: Create new log
-            String createLogSql = String.format(
-                    "SELECT create_new_log(%d) AS execution_id",
-                    configSrcId[0]
-            );
-
-            final String[] executionId = {null};
-            controlDB.executeQuery(createLogSql, rs -> {
-                if (rs.next()) {
-                    executionId[0] = rs.getString("execution_id");
-                }
-            });
+        if (configSrcId[0] == 0) {
+            throw new Exception("Cannot get or create config");
+        }
 
-            if (executionId[0] == null) {
-                throw new Exception("Cannot create log");
+        System.out.println("[Step 4] Config from DB:");
+        System.out.println("  - Config ID     : " + configSrcId[0]);
+        System.out.println("  - Source URL    : " + dbSourceUrl[0]);
+        System.out.println("  - Output Path   : " + dbOutputPath[0]);
+
+        // Step 2: Create new log
+        String createLogSql = String.format(
+                "SELECT create_new_log(%d) AS execution_id",
+                configSrcId[0]
+        );
+
+        final String[] executionId = {null};
+        controlDB.executeQuery(createLogSql, rs -> {
+            if (rs.next()) {
+                executionId[0] = rs.getString("execution_id");
             }
+        });
 
-            String currentExecutionId = executionId[0];
-            System.out.println("[Step 4] Created execution: " + executionId[0]);
+        if (executionId[0] == null) {
+            throw new Exception("Cannot create log");
+        }
 
-            return new ExtractWeatherData.ExtractInfo(
-                    executionId[0],
-                    dbSourceUrl[0],
-                    dbOutputPath[0]
-            );
+        String currentExecutionId = executionId[0];
+        System.out.println("[Step 4] Created execution: " + executionId[0]);
 
-        } catch (Exception e) {
-            EmailSender.sendError("ERROR: Prepare Extract Failed", e.getMessage(), e);
-            e.printStackTrace();
-            System.exit(1);
-            return null;
-        }
+        return new ExtractWeatherData.ExtractInfo(
+                configSrcId[0],
+                executionId[0],
+                dbSourceUrl[0],
+                dbOutputPath[0]
+        );
     }
 
     /**
@@ -236,14 +246,17 @@ public class ExtractToFile {
      * ============================================================
      */
     private static void printUsage() {
-        System.out.println("Usage: java ExtractToFile <config_path> <extract_config_path>");
+        System.out.println("Usage: java ExtractToFile <config_path> <extract_config_path> [--backfill <from> <to> [codes]]");
         System.out.println();
         System.out.println("Arguments:");
         System.out.println("  config_path         : Path to main configuration file (e.g., config/config.xml)");
         System.out.println("  extract_config_path : Path to extract configuration file (e.g., config/extract_config.xml)");
+        System.out.println("  --backfill          : Extract history from <from> to <to> (yyyy-MM-dd, inclusive),");
+        System.out.println("                        one file per day; optional comma separated location codes");
         System.out.println();
         System.out.println("Example:");
         System.out.println("  java ExtractToFile config/config.xml config/extract_config.xml");
+        System.out.println("  java ExtractToFile config/config.xml config/extract_config.xml --backfill 2025-11-01 2025-11-07 HN,HCM");
     }
 
     public static void main(String[] args) {
@@ -262,9 +275,33 @@ public class ExtractToFile {
         String configPath = args[0];
         String extractConfigPath = args[1];
 
+        // Optional backfill mode
+        boolean backfill = args.length > 2 && "--backfill".equals(args[2]);
+        LocalDate backfillFrom = null;
+        LocalDate backfillTo = null;
+        Set<String> backfillCodes = new HashSet<>();
+        if (backfill) {
+            try {
+                backfillFrom = LocalDate.parse(args[3]);
+                backfillTo = LocalDate.parse(args[4]);
+                if (args.length > 5) {
+                    backfillCodes.addAll(Arrays.asList(args[5].split(",")));
+                }
+            } catch (Exception e) {
+                System.err.println("ERROR: Invalid backfill arguments!");
+                System.err.println();
+                printUsage();
+                System.exit(1);
+            }
+        }
+
         System.out.println("Configuration:");
         System.out.println("  - Main Config    : " + configPath);
         System.out.println("  - Extract Config : " + extractConfigPath);
+        if (backfill) {
+            System.out.println("  - Backfill       : " + backfillFrom + " -> " + backfillTo +
+                    (backfillCodes.isEmpty() ? " (all locations)" : " " + backfillCodes));
+        }
         System.out.println();
 
         try {
@@ -274,6 +311,17 @@ public class ExtractToFile {
             // Step 2: Connect DB
             controlDB = connectDB(config);
 
+            if (backfill) {
+                // Backfill: one partition per day, today's check does not apply
+                LoadConfig extractConfig = loadConfig(extractConfigPath);
+                ExtractBackfill.runBackfill(extractConfig, backfillFrom, backfillTo, backfillCodes, controlDB);
+
+                System.out.println("\n========================================");
+                System.out.println("Weather ETL - Backfill Process COMPLETED");
+                System.out.println("========================================");
+                System.exit(0);
+            }
+
             // Step 3: Check extract success today
             checkTodayExtractSuccess();
 
@@ -284,6 +332,7 @@ public class ExtractToFile {
             // Step 5: Extract weather to csv file
             ExtractWeatherData.extractWeatherToFile(
                     extractConfig,
+                    extractInfo.getConfigSrcId(),
                     extractInfo.getExecutionId(),
                     extractInfo.getSourceUrl(),
                     extractInfo.getOutputPath(),
@@ -1,26 +1,39 @@
 package scripts.extract_scripts;
 
-import com.google.gson.JsonObject;
-import com.google.gson.JsonParser;
 import org.w3c.dom.Element;
 import org.w3c.dom.NodeList;
 import utils.DBConn;
+import utils.FileManifest;
 import utils.LoadConfig;
+import utils.RecordFileWriter;
+import utils.RecordFormat;
 
-import java.io.BufferedWriter;
-import java.io.FileWriter;
-import java.net.URI;
-import java.net.http.HttpClient;
-import java.net.http.HttpRequest;
-import java.net.http.HttpResponse;
-import java.time.Duration;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
 
 public class ExtractWeatherData {
 
+    private static final DateTimeFormatter EXTRACT_TIME_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    // Column types of the binary output format, other columns are strings
+    private static final Set<String> LONG_COLUMNS = Set.of(
+            "localtime_epoch", "humidity", "wind_degree", "cloud", "is_day",
+            "condition_code", "aqi_us", "aqi_gb");
+    private static final Set<String> DOUBLE_COLUMNS = Set.of(
+            "lat", "lon", "temp_c", "temp_f", "feels_like_c", "feels_like_f",
+            "wind_kph", "wind_mph", "gust_kph", "gust_mph",
+            "pressure_mb", "pressure_in", "precip_mm", "precip_in",
+            "uv", "vis_km", "vis_miles", "pm2_5", "pm10", "co", "no2", "o3", "so2");
+
     /**
      * ============================================================
      * Step 5: Extract weather to csv file
@@ -28,6 +41,7 @@ public class ExtractWeatherData {
      */
     public static void extractWeatherToFile(
             LoadConfig config,
+            int configSrcId,
             String executionId,
             String dbSourceUrl,
             String dbOutputPath,
@@ -41,18 +55,12 @@ public class ExtractWeatherData {
         int successCount = 0;
         int failCount = 0;
         List<String> failedLocations = new ArrayList<>();
+        WeatherSources sources = null;
+        ExtractCheckpoint checkpoint = null;
 
         try {
-            // Delete old file if exists
-            try {
-                java.nio.file.Path filePath = java.nio.file.Paths.get(dbOutputPath);
-                if (java.nio.file.Files.exists(filePath)) {
-                    java.nio.file.Files.delete(filePath);
-                    System.out.println("  - Deleted old file: " + dbOutputPath);
-                }
-            } catch (Exception e) {
-                System.err.println("  - WARNING: Cannot delete old file: " + e.getMessage());
-            }
+            // An existing file (and manifest) stays in place until the new one is committed over it,
+            // a failed run leaves the previous good file untouched
 
             // Get list of locations from XML
             List<Location> locations = getLocationsFromConfig(config);
@@ -65,14 +73,19 @@ public class ExtractWeatherData {
             // Get API config
             Element api = LoadConfig.getElement(config.getXmlDoc(), "api");
             Element weather = LoadConfig.getChildElement(api, "weather");
-            String apiKey = LoadConfig.getValue(weather, "apiKey");
-            String baseUrl = LoadConfig.getValue(weather, "baseUrl");
-            int timeout = Integer.parseInt(LoadConfig.getValue(weather, "timeout"));
 
-            // Create HTTP Client
-            HttpClient client = HttpClient.newBuilder()
-                    .connectTimeout(Duration.ofMillis(timeout))
-                    .build();
+            // Max number of in-flight API calls (default 1 = sequential)
+            int maxConcurrency = parseIntOrDefault(LoadConfig.getValue(weather, "maxConcurrency"), 1);
+            System.out.println("  - Max concurrency: " + maxConcurrency);
+
+            // Providers from source_type, each with its own rate limit + retry/backoff + circuit breaker
+            sources = WeatherSources.fromConfig(config);
+            System.out.println("  - Routing        : " + sources.getStrategy());
+            for (WeatherSource source : sources.getSources()) {
+                RateLimiter limiter = source.getApiClient().getRateLimiter();
+                System.out.println("  - Source         : " + source.getName() + ", " +
+                        limiter.getCurrentRate() + " req/s (burst " + limiter.getBurstSize() + ")");
+            }
 
             // Create parent directory if it doesn't exist
             java.nio.file.Path filePath = java.nio.file.Paths.get(dbOutputPath);
@@ -80,55 +93,57 @@ public class ExtractWeatherData {
                 java.nio.file.Files.createDirectories(filePath.getParent());
             }
 
-            // Create CSV file and write header
-            try (BufferedWriter writer = new BufferedWriter(new FileWriter(dbOutputPath))) {
-                writer.write(getCsvHeader());
-                writer.newLine();
+            // Open checkpoint journal: locations done by an earlier run today are not fetched again
+            checkpoint = ExtractCheckpoint.open(dbOutputPath, executionId);
+            if (checkpoint.getCompletedCount() > 0) {
+                System.out.println("  - Resumed from checkpoint: " + checkpoint.getCompletedCount() +
+                        " location(s) already extracted (" + checkpoint.getJournalPath() + ")");
+            }
 
-                // Extract data for each location
-                for (Location location : locations) {
-                    try {
-                        System.out.println("  Processing: " + location.getName() + " (" + location.getCode() + ")");
-
-                        String url = buildApiUrl(baseUrl, apiKey, location.getApiName());
-
-                        HttpRequest request = HttpRequest.newBuilder()
-                                .uri(URI.create(url))
-                                .timeout(Duration.ofMillis(timeout))
-                                .GET()
-                                .build();
-
-                        HttpResponse<String> response = client.send(request,
-                                HttpResponse.BodyHandlers.ofString());
-
-                        if (response.statusCode() == 200) {
-                            String csvRow = parseWeatherResponse(response.body(), location, executionId);
-                            writer.write(csvRow);
-                            writer.newLine();
-                            successCount++;
-                            System.out.println("  ✓ Success");
-                        } else {
-                            System.err.println("  ✗ Failed: HTTP " + response.statusCode());
-                            failedLocations.add(location.getName() + " (" + location.getCode() +
-                                    ") - HTTP " + response.statusCode());
-                            failCount++;
-                        }
-
-                        Thread.sleep(100);
-
-                    } catch (Exception e) {
-                        System.err.println("  ✗ Error: " + e.getMessage());
+            // Fetch all locations concurrently, results come back in config order
+            List<FetchResult> results = fetchAllLocations(sources, checkpoint,
+                    maxConcurrency, locations, executionId);
+
+            // Write to a temp file, it only becomes dbOutputPath (+ manifest) on commit
+            RecordFormat format = getOutputFormat(config);
+            System.out.println("  - Output format  : " + format.getName());
+            try (RecordFileWriter writer = RecordFileWriter.open(filePath, format, getColumns(), getColumnTypes())) {
+
+                // Write rows in the same order as the locations in config
+                for (FetchResult result : results) {
+                    Location location = result.getLocation();
+                    if (result.isSuccess()) {
+                        writer.writeRow(result.getCsvRow());
+                        successCount++;
+                    } else {
                         failedLocations.add(location.getName() + " (" + location.getCode() +
-                                ") - " + e.getMessage());
+                                ") - " + result.getError());
                         failCount++;
                     }
                 }
+
+                // STRICT MODE: incomplete output is never moved into place
+                if (failCount == 0) {
+                    FileManifest manifest = writer.commit();
+                    System.out.println("  - Manifest: " + manifest.getRows() + " rows, sha256 " + manifest.getSha256());
+                }
             }
 
             System.out.println("\n[Step 5] Extract completed:");
             System.out.println("  - Success: " + successCount);
             System.out.println("  - Failed : " + failCount);
             System.out.println("  - File   : " + dbOutputPath);
+            for (WeatherSource source : sources.getSources()) {
+                WeatherApiClient client = source.getApiClient();
+                System.out.println("  - " + source.getName() + " API calls: " + client.getCallCount() +
+                        ", retries: " + client.getRetryCount() +
+                        ", cache hits: " + client.getCacheHits() +
+                        ", not modified: " + client.getNotModifiedCount() +
+                        String.format(", avg latency: %.1f ms, max latency: %d ms",
+                                client.getAvgLatencyMs(), client.getMaxLatencyMs()));
+            }
+
+            updateLogApiStats(controlDB, configSrcId, executionId, sources);
 
             // STRICT MODE: If even 1 fails, entire process = FAILED
             if (failCount > 0) {
@@ -140,29 +155,24 @@ public class ExtractWeatherData {
                 System.err.println("\n[Step 5] " + errorMsg);
 
                 // Update log to FAILED
-                updateLogFailed(controlDB, executionId, errorMsg);
+                updateLogFailed(controlDB, configSrcId, executionId, errorMsg);
+
+                // Keep the journal so the next run only fetches the failed locations
+                checkpoint.close();
+                System.out.println("[Step 5] Checkpoint kept: " + checkpoint.getJournalPath());
 
                 // Send error email with details
                 sendErrorEmail(executionId, errorMsg, successCount, failCount,
                         failedLocations, dbOutputPath);
-
-                // Delete incomplete file
-                try {
-                    java.nio.file.Path fileToDelete = java.nio.file.Paths.get(dbOutputPath);
-                    if (java.nio.file.Files.exists(fileToDelete)) {
-                        java.nio.file.Files.delete(fileToDelete);
-                        System.out.println("[Step 5] Deleted incomplete file: " + dbOutputPath);
-                    }
-                } catch (Exception e) {
-                    System.err.println("[Step 5] WARNING: Cannot delete incomplete file: " + e.getMessage());
-                }
+                System.out.println("[Step 5] Incomplete output discarded (temp file deleted): " + dbOutputPath);
 
                 // Throw exception to notify caller
                 throw new ExtractFailedException(errorMsg);
 
             } else {
-                // All successful
-                updateLogSuccess(controlDB, executionId, successCount);
+                // All successful, journal is no longer needed
+                checkpoint.delete();
+                updateLogSuccess(controlDB, configSrcId, executionId, successCount);
                 sendSuccessEmail(executionId, successCount, dbOutputPath);
             }
 
@@ -175,7 +185,17 @@ public class ExtractWeatherData {
             System.err.println("[Step 5] FAILED: System error during extract");
             e.printStackTrace();
 
-            updateLogFailed(controlDB, executionId, e.getMessage());
+            if (sources != null) {
+                updateLogApiStats(controlDB, configSrcId, executionId, sources);
+            }
+            if (checkpoint != null) {
+                try {
+                    checkpoint.close();
+                } catch (Exception ex) {
+                    System.err.println("[Step 5] WARNING: Cannot close checkpoint: " + ex.getMessage());
+                }
+            }
+            updateLogFailed(controlDB, configSrcId, executionId, e.getMessage());
 
             String subject = "✗ ERROR: Weather ETL - Extract Failed (System Error)";
             String body = String.format(
@@ -197,13 +217,144 @@ public class ExtractWeatherData {
         }
     }
 
+    /**
+     * Fetch all locations with at most maxConcurrency requests in flight.
+     * Each location runs on its own virtual thread, a semaphore bounds the concurrency.
+     * Locations already in the checkpoint are taken from it without calling the API,
+     * with their execution_id column set to this run's id.
+     * Returned list has the same order as the input locations.
+     */
+    private static List<FetchResult> fetchAllLocations(WeatherSources sources, ExtractCheckpoint checkpoint,
+                                                       int maxConcurrency,
+                                                       List<Location> locations, String executionId)
+            throws InterruptedException {
+        Semaphore permits = new Semaphore(Math.max(1, maxConcurrency));
+        List<Future<FetchResult>> futures = new ArrayList<>();
+
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < locations.size(); i++) {
+                Location location = locations.get(i);
+                List<WeatherSource> order = sources.orderFor(i);
+                String resumedRow = checkpoint.getCompletedRow(location.getCode());
+                if (resumedRow != null) {
+                    // The row belongs to this run's batch now (extract_time keeps the real fetch time)
+                    resumedRow = executionId + resumedRow.substring(resumedRow.indexOf(','));
+                    futures.add(CompletableFuture.completedFuture(FetchResult.success(location, resumedRow)));
+                    continue;
+                }
+
+                futures.add(executor.submit(() -> {
+                    permits.acquire();
+                    try {
+                        return fetchLocation(order, checkpoint, location, executionId);
+                    } finally {
+                        permits.release();
+                    }
+                }));
+            }
+        } // close() waits until every task has finished
+
+        List<FetchResult> results = new ArrayList<>();
+        for (int i = 0; i < futures.size(); i++) {
+            try {
+                results.add(futures.get(i).get());
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause() != null ? e.getCause() : e;
+                results.add(FetchResult.failed(locations.get(i), cause.getMessage()));
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Fetch one location from its primary provider, fail over to the next ones
+     * and convert the response to a canonical CSV row ending with source_system
+     * (retry, backoff and throttling are handled by each source's WeatherApiClient)
+     */
+    private static FetchResult fetchLocation(List<WeatherSource> order, ExtractCheckpoint checkpoint,
+                                             Location location, String executionId) {
+        String label = location.getName() + " (" + location.getCode() + ")";
+        System.out.println("  Processing: " + label);
+
+        String error = null;
+        for (WeatherSource source : order) {
+            try {
+                String body = source.fetch(location);
+                String extractTime = LocalDateTime.now().format(EXTRACT_TIME_FORMAT);
+                String csvRow = source.toCsvRow(body, location, executionId, extractTime) + "," + source.getName();
+                try {
+                    checkpoint.markSuccess(location.getCode(), executionId, csvRow);
+                } catch (Exception ex) {
+                    System.err.println("  - WARNING: Cannot write checkpoint: " + ex.getMessage());
+                }
+                System.out.println("  ✓ Success: " + label + " [" + source.getName() + "]");
+                return FetchResult.success(location, csvRow);
+
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                error = source.getName() + ": interrupted";
+                break;
+            } catch (Exception e) {
+                error = source.getName() + ": " + e.getMessage();
+                if (order.size() > 1) {
+                    System.err.println("  ! " + label + " - " + error + ", trying next source");
+                }
+            }
+        }
+
+        System.err.println("  ✗ Failed: " + label + " - " + error);
+        try {
+            checkpoint.markFailed(location.getCode(), executionId, error);
+        } catch (Exception ex) {
+            System.err.println("  - WARNING: Cannot write checkpoint: " + ex.getMessage());
+        }
+        return FetchResult.failed(location, error);
+    }
+
+    /**
+     * Parse int config value, fallback to default if empty or invalid
+     */
+    static int parseIntOrDefault(String value, int defaultValue) {
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (Exception e) {
+            return defaultValue;
+        }
+    }
+
+    /**
+     * Parse double config value, fallback to default if empty or invalid
+     */
+    static double parseDoubleOrDefault(String value, double defaultValue) {
+        try {
+            return Double.parseDouble(value.trim());
+        } catch (Exception e) {
+            return defaultValue;
+        }
+    }
+
     /**
      * Generate daily filename: weatherapi_yyyymmdd.csv
      */
     public static String generateDailyFileName(String dbOutputPath) {
+        return generateDailyFileName(dbOutputPath, java.time.LocalDate.now());
+    }
+
+    /**
+     * Generate filename of one day partition: weatherapi_yyyymmdd.csv
+     */
+    public static String generateDailyFileName(String dbOutputPath, java.time.LocalDate date) {
+        return generateDailyFileName(dbOutputPath, date, RecordFormat.CSV);
+    }
+
+    /**
+     * Generate filename of one day partition with the extension of the output format
+     * (weatherapi_yyyymmdd.csv / .csv.gz / .wxb)
+     */
+    public static String generateDailyFileName(String dbOutputPath, java.time.LocalDate date, RecordFormat format) {
         dbOutputPath = dbOutputPath.replace("\\", "/");
-        String dateStr = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd"));
-        String fileName = "weatherapi_" + dateStr + ".csv";
+        String dateStr = date.format(DateTimeFormatter.ofPattern("yyyyMMdd"));
+        String fileName = "weatherapi_" + dateStr + format.getExtension();
 
         if (dbOutputPath.endsWith("/")) {
             return dbOutputPath + fileName;
@@ -221,7 +372,7 @@ public class ExtractWeatherData {
     /**
      * Get list of locations from XML config
      */
-    private static List<Location> getLocationsFromConfig(LoadConfig config) {
+    static List<Location> getLocationsFromConfig(LoadConfig config) {
         List<Location> locations = new ArrayList<>();
         Element locationsElement = LoadConfig.getElement(config.getXmlDoc(), "locations");
 
@@ -242,7 +393,7 @@ public class ExtractWeatherData {
     /**
      * Build API URL with location name or coordinates
      */
-    private static String buildApiUrl(String baseUrl, String apiKey, String locationQuery) {
+    static String buildApiUrl(String baseUrl, String apiKey, String locationQuery) {
         String[] parts = baseUrl.split("\\?");
         String basePath = parts[0];
         return String.format("%s?key=%s&q=%s&aqi=yes",
@@ -252,7 +403,7 @@ public class ExtractWeatherData {
     /**
      * CSV Header
      */
-    private static String getCsvHeader() {
+    static String getCsvHeader() {
         return "execution_id," +
                 "location_name,location_code,region," +
                 "country,lat,lon,tz_id,localtime_epoch,localtime," +
@@ -264,110 +415,51 @@ public class ExtractWeatherData {
                 "is_day," +
                 "condition_text,condition_icon,condition_code," +  // icon ở đây
                 "aqi_us,aqi_gb,pm2_5,pm10,co,no2,o3,so2," +
-                "last_updated,extract_time";
+                "last_updated,extract_time," +
+                "source_system";
     }
 
-    /**
-     * Get full icon URL with https protocol
-     */
-    private static String getFullIconUrl(JsonObject condition) {
-        String icon = condition.get("icon").getAsString();
-        if (icon.startsWith("//")) {
-            return "https:" + icon;
-        }
-        return icon;
+    static String[] getColumns() {
+        return getCsvHeader().split(",");
     }
 
     /**
-     * Parse JSON response and create CSV row
+     * Column types for the binary output format
      */
-    private static String parseWeatherResponse(String jsonResponse, Location location, String executionId) {
-        JsonObject root = JsonParser.parseString(jsonResponse).getAsJsonObject();
-        JsonObject locationObj = root.getAsJsonObject("location");
-        JsonObject current = root.getAsJsonObject("current");
-        JsonObject condition = current.getAsJsonObject("condition");
-        JsonObject airQuality = current.getAsJsonObject("air_quality");
-
-        String extractTime = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"));
-
-        return String.format("%s,%s,%s,%s," +
-                        "%s,%.4f,%.4f,%s,%d,%s," +
-                        "%.1f,%.1f,%.1f,%.1f," +
-                        "%d,%.1f,%.1f,%d,%s," +
-                        "%.1f,%.1f," +
-                        "%.1f,%.2f,%.1f,%.2f," +
-                        "%d,%.1f,%.1f,%.1f," +
-                        "%d," +
-                        "\"%s\",\"%s\",%d," +  // text, icon URL, code
-                        "%d,%d,%.2f,%.2f,%.2f,%.2f,%.2f,%.2f," +
-                        "%s,%s",
-                executionId,
-                escapeComma(location.getName()),
-                location.getCode(),
-                location.getRegion(),
-                locationObj.get("country").getAsString(),
-                locationObj.get("lat").getAsDouble(),
-                locationObj.get("lon").getAsDouble(),
-                locationObj.get("tz_id").getAsString(),
-                locationObj.get("localtime_epoch").getAsLong(),
-                locationObj.get("localtime").getAsString(),
-                current.get("temp_c").getAsDouble(),
-                current.get("temp_f").getAsDouble(),
-                current.get("feelslike_c").getAsDouble(),
-                current.get("feelslike_f").getAsDouble(),
-                current.get("humidity").getAsInt(),
-                current.get("wind_kph").getAsDouble(),
-                current.get("wind_mph").getAsDouble(),
-                current.get("wind_degree").getAsInt(),
-                current.get("wind_dir").getAsString(),
-                current.get("gust_kph").getAsDouble(),
-                current.get("gust_mph").getAsDouble(),
-                current.get("pressure_mb").getAsDouble(),
-                current.get("pressure_in").getAsDouble(),
-                current.get("precip_mm").getAsDouble(),
-                current.get("precip_in").getAsDouble(),
-                current.get("cloud").getAsInt(),
-                current.get("uv").getAsDouble(),
-                current.get("vis_km").getAsDouble(),
-                current.get("vis_miles").getAsDouble(),
-                current.get("is_day").getAsInt(),
-                condition.get("text").getAsString(),
-                getFullIconUrl(condition),  // ← Dùng helper method
-                condition.get("code").getAsInt(),
-                airQuality.get("us-epa-index").getAsInt(),
-                airQuality.get("gb-defra-index").getAsInt(),
-                airQuality.get("pm2_5").getAsDouble(),
-                airQuality.get("pm10").getAsDouble(),
-                airQuality.get("co").getAsDouble(),
-                airQuality.get("no2").getAsDouble(),
-                airQuality.get("o3").getAsDouble(),
-                airQuality.get("so2").getAsDouble(),
-                current.get("last_updated").getAsString(),
-                extractTime
-        );
+    static RecordFormat.ColumnType[] getColumnTypes() {
+        String[] columns = getColumns();
+        RecordFormat.ColumnType[] types = new RecordFormat.ColumnType[columns.length];
+        for (int i = 0; i < columns.length; i++) {
+            if (LONG_COLUMNS.contains(columns[i])) {
+                types[i] = RecordFormat.ColumnType.LONG;
+            } else if (DOUBLE_COLUMNS.contains(columns[i])) {
+                types[i] = RecordFormat.ColumnType.DOUBLE;
+            } else {
+                types[i] = RecordFormat.ColumnType.STRING;
+            }
+        }
+        return types;
     }
 
     /**
-     * Escape comma in CSV
+     * <configSource><output_format>: csv (default), csv.gz or wxb
      */
-    private static String escapeComma(String value) {
-        if (value.contains(",")) {
-            return "\"" + value + "\"";
-        }
-        return value;
+    static RecordFormat getOutputFormat(LoadConfig config) {
+        Element configSource = LoadConfig.getElement(config.getXmlDoc(), "configSource");
+        return RecordFormat.fromName(LoadConfig.getValue(configSource, "output_format"));
     }
 
     /**
      * Update log status to SUCCESS
      */
-    private static void updateLogSuccess(DBConn controlDB, String executionId, int recordsCount) {
+    static void updateLogSuccess(DBConn controlDB, int configSrcId, String executionId, int recordsCount) {
         try {
             System.out.println("[Step 5] Updating log status to SUCCESS...");
 
             String sql = String.format(
                     "UPDATE log_src SET status='success'::src_status, end_time=NOW(), " +
-                            "records_extracted=%d, error_message=NULL WHERE execution_id='%s'",
-                    recordsCount, executionId
+                            "records_extracted=%d, error_message=NULL WHERE config_src_id=%d AND execution_id='%s'",
+                    recordsCount, configSrcId, executionId
             );
 
             controlDB.executeUpdate(sql);
@@ -377,10 +469,29 @@ public class ExtractWeatherData {
         }
     }
 
+    /**
+     * Save API call stats (calls, retries, latency) into log_src
+     */
+    private static void updateLogApiStats(DBConn controlDB, int configSrcId, String executionId,
+                                          WeatherSources sources) {
+        try {
+            String sql = String.format(java.util.Locale.ROOT,
+                    "UPDATE log_src SET api_calls=%d, retry_count=%d, cache_hits=%d, avg_latency_ms=%.2f, " +
+                            "max_latency_ms=%d WHERE config_src_id=%d AND execution_id='%s'",
+                    sources.getCallCount(), sources.getRetryCount(), sources.getCacheHits(),
+                    sources.getAvgLatencyMs(), sources.getMaxLatencyMs(), configSrcId, executionId
+            );
+
+            controlDB.executeUpdate(sql);
+        } catch (Exception e) {
+            System.err.println("[Step 5] WARNING: Cannot update API stats: " + e.getMessage());
+        }
+    }
+
     /**
      * Update log status to FAILED
      */
-    private static void updateLogFailed(DBConn controlDB, String executionId, String errorMessage) {
+    static void updateLogFailed(DBConn controlDB, int configSrcId, String executionId, String errorMessage) {
         try {
             System.out.println("[Step 5] Updating log status to FAILED...");
 
@@ -388,8 +499,8 @@ public class ExtractWeatherData {
 
             String sql = String.format(
                     "UPDATE log_src SET status='failed'::src_status, end_time=NOW(), " +
-                            "records_extracted=0, error_message='%s' WHERE execution_id='%s'",
-                    escapedError, executionId
+                            "records_extracted=0, error_message='%s' WHERE config_src_id=%d AND execution_id='%s'",
+                    escapedError, configSrcId, executionId
             );
 
             controlDB.executeUpdate(sql);
@@ -439,7 +550,7 @@ public class ExtractWeatherData {
             body.append("Execution ID: ").append(executionId).append("\n");
             body.append("Error Time: ").append(LocalDateTime.now()
                     .format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"))).append("\n");
-            body.append("Output File: ").append(outputFile).append(" (DELETED)\n");
+            body.append("Output File: ").append(outputFile).append(" (NOT WRITTEN)\n");
             body.append("Error Message: ").append(errorMessage).append("\n\n");
 
             body.append("--- SUMMARY ---\n");
@@ -453,7 +564,8 @@ public class ExtractWeatherData {
             }
 
             body.append("\n⚠️  STRICT MODE: Extract requires ALL locations to succeed.\n");
-            body.append("⚠️  Incomplete file has been DELETED.\n\n");
+            body.append("⚠️  Incomplete output has been discarded, no file was written.\n");
+            body.append("⚠️  Checkpoint kept: a rerun today only fetches the failed locations.\n\n");
 
             body.append("Please check immediately:\n");
             body.append("- Is the API key still valid?\n");
@@ -497,16 +609,25 @@ public class ExtractWeatherData {
      * Inner class to store extract info
      */
     public static class ExtractInfo {
+        private final int configSrcId;
         private final String executionId;
         private final String sourceUrl;
         private final String outputPath;
 
-        public ExtractInfo(String executionId, String sourceUrl, String outputPath) {
+        public ExtractInfo(int configSrcId, String executionId, String sourceUrl, String outputPath) {
+            this.configSrcId = configSrcId;
             this.executionId = executionId;
             this.sourceUrl = sourceUrl;
             this.outputPath = outputPath;
         }
 
+        /**
+         * config_src of the log entry, execution ids alone are not unique in log_src
+         */
+        public int getConfigSrcId() {
+            return configSrcId;
+        }
+
         public String getExecutionId() {
             return executionId;
         }
@@ -521,9 +642,48 @@ public class ExtractWeatherData {
     }
 
     /**
-     * Inner class to store location info
+     * Inner class to store result of fetching one location
+     */
+    static class FetchResult {
+        private final Location location;
+        private final String csvRow;
+        private final String error;
+
+        private FetchResult(Location location, String csvRow, String error) {
+            this.location = location;
+            this.csvRow = csvRow;
+            this.error = error;
+        }
+
+        static FetchResult success(Location location, String csvRow) {
+            return new FetchResult(location, csvRow, null);
+        }
+
+        static FetchResult failed(Location location, String error) {
+            return new FetchResult(location, null, error);
+        }
+
+        public boolean isSuccess() {
+            return csvRow != null;
+        }
+
+        public Location getLocation() {
+            return location;
+        }
+
+        public String getCsvRow() {
+            return csvRow;
+        }
+
+        public String getError() {
+            return error;
+        }
+    }
+
+    /**
+     * Inner class to store location info (public: WeatherSource plugins outside this package get it)
      */
-    static class Location {
+    public static class Location {
         private final String name;
         private final String apiName;
         private final String code;
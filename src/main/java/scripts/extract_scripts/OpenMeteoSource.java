@@ -0,0 +1,322 @@
+package scripts.extract_scripts;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.w3c.dom.Element;
+import utils.LoadConfig;
+
+import java.io.IOException;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Open-Meteo forecast API (config: <api><openMeteo>), no API key needed.
+ *
+ * Open-Meteo only accepts coordinates: apiName "lat,lon" is used as is,
+ * a city name is resolved once per run with the Open-Meteo geocoding API.
+ * Units are converted to the WeatherAPI columns (F, mph, inHg, inch, miles),
+ * the WMO weather code is mapped to the WeatherAPI condition (code, text, icon),
+ * air quality columns are empty.
+ */
+public class OpenMeteoSource implements WeatherSource {
+
+    public static final String NAME = "OpenMeteo";
+
+    private static final String CURRENT_FIELDS = "temperature_2m,relative_humidity_2m,apparent_temperature," +
+            "is_day,precipitation,weather_code,cloud_cover,pressure_msl,wind_speed_10m," +
+            "wind_direction_10m,wind_gusts_10m,uv_index,visibility";
+
+    private static final String[] COMPASS = {
+            "N", "NNE", "NE", "ENE", "E", "ESE", "SE", "SSE",
+            "S", "SSW", "SW", "WSW", "W", "WNW", "NW", "NNW"
+    };
+
+    private static final DateTimeFormatter LOCAL_TIME_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm");
+
+    private final String baseUrl;
+    private final String geocodeUrl;
+    private final String defaultCountry;
+    private final WeatherApiClient apiClient;
+
+    // location code -> resolved coordinates (filled by fetch, used by toCsvRow)
+    private final Map<String, Place> places = new ConcurrentHashMap<>();
+
+    public OpenMeteoSource(String baseUrl, String geocodeUrl, String defaultCountry, WeatherApiClient apiClient) {
+        this.baseUrl = baseUrl;
+        this.geocodeUrl = geocodeUrl;
+        this.defaultCountry = defaultCountry;
+        this.apiClient = apiClient;
+    }
+
+    public static OpenMeteoSource fromConfig(Element openMeteo) {
+        return new OpenMeteoSource(
+                LoadConfig.getValue(openMeteo, "baseUrl"),
+                LoadConfig.getValue(openMeteo, "geocodeUrl"),
+                LoadConfig.getValue(openMeteo, "defaultCountry"),
+                WeatherApiClient.fromConfig(openMeteo)
+        );
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public String fetch(ExtractWeatherData.Location location) throws IOException, InterruptedException {
+        Place place = resolve(location);
+        String url = String.format(Locale.ROOT,
+                "%s?latitude=%.4f&longitude=%.4f&current=%s&timezone=auto&timeformat=unixtime",
+                baseUrl, place.lat, place.lon, CURRENT_FIELDS);
+        return apiClient.get(url, NAME + " " + location.getName() + " (" + location.getCode() + ")");
+    }
+
+    /**
+     * "lat,lon" -> coordinates, otherwise first geocoding result (cached per location)
+     */
+    private Place resolve(ExtractWeatherData.Location location) throws IOException, InterruptedException {
+        Place cached = places.get(location.getCode());
+        if (cached != null) {
+            return cached;
+        }
+
+        Place place;
+        String[] parts = location.getApiName().split(",");
+        if (parts.length == 2 && isNumber(parts[0]) && isNumber(parts[1])) {
+            place = new Place(Double.parseDouble(parts[0].trim()), Double.parseDouble(parts[1].trim()), defaultCountry);
+        } else {
+            String url = geocodeUrl + "?count=1&format=json&name=" +
+                    URLEncoder.encode(location.getApiName(), StandardCharsets.UTF_8);
+            JsonObject body = JsonParser.parseString(
+                    apiClient.get(url, NAME + " geocode " + location.getApiName())).getAsJsonObject();
+            JsonArray results = body.has("results") ? body.getAsJsonArray("results") : null;
+            if (results == null || results.isEmpty()) {
+                throw new WeatherApiClient.ApiCallException("Location not found: " + location.getApiName());
+            }
+            JsonObject first = results.get(0).getAsJsonObject();
+            String country = first.has("country") ? first.get("country").getAsString() : defaultCountry;
+            place = new Place(first.get("latitude").getAsDouble(), first.get("longitude").getAsDouble(), country);
+        }
+
+        places.put(location.getCode(), place);
+        return place;
+    }
+
+    @Override
+    public String toCsvRow(String payload, ExtractWeatherData.Location location,
+                           String executionId, String extractTime) throws IOException {
+        JsonObject json;
+        try {
+            json = JsonParser.parseString(payload).getAsJsonObject();
+        } catch (RuntimeException e) {
+            throw new IOException("Invalid Open-Meteo response: " + e.getMessage(), e);
+        }
+        JsonObject current = json.getAsJsonObject("current");
+        if (current == null || !current.has("time")) {
+            throw new IOException("Open-Meteo response has no current data");
+        }
+
+        Place place = places.get(location.getCode());
+        String country = place != null ? place.country : defaultCountry;
+
+        long epoch = current.get("time").getAsLong();
+        int offsetSeconds = json.has("utc_offset_seconds") ? json.get("utc_offset_seconds").getAsInt() : 0;
+        String localTime = Instant.ofEpochSecond(epoch)
+                .atOffset(ZoneOffset.ofTotalSeconds(offsetSeconds))
+                .format(LOCAL_TIME_FORMAT);
+
+        Double tempC = number(current, "temperature_2m");
+        Double feelsC = number(current, "apparent_temperature");
+        Double windKph = number(current, "wind_speed_10m");
+        Double windDegree = number(current, "wind_direction_10m");
+        Double gustKph = number(current, "wind_gusts_10m");
+        Double pressureMb = number(current, "pressure_msl");
+        Double precipMm = number(current, "precipitation");
+        Double visibilityM = number(current, "visibility");
+        Double weatherCode = number(current, "weather_code");
+
+        StringBuilder row = new StringBuilder(512);
+        row.append(executionId).append(',');
+        row.append(escapeComma(location.getName())).append(',');
+        row.append(location.getCode()).append(',');
+        row.append(location.getRegion()).append(',');
+
+        row.append(escapeComma(country)).append(',');
+        row.append(fixed(number(json, "latitude"), 4)).append(',');
+        row.append(fixed(number(json, "longitude"), 4)).append(',');
+        row.append(json.has("timezone") ? json.get("timezone").getAsString() : "").append(',');
+        row.append(epoch).append(',');
+        row.append(localTime).append(',');
+
+        row.append(fixed(tempC, 1)).append(',');
+        row.append(fixed(tempC == null ? null : tempC * 9 / 5 + 32, 1)).append(',');
+        row.append(fixed(feelsC, 1)).append(',');
+        row.append(fixed(feelsC == null ? null : feelsC * 9 / 5 + 32, 1)).append(',');
+
+        row.append(integer(number(current, "relative_humidity_2m"))).append(',');
+        row.append(fixed(windKph, 1)).append(',');
+        row.append(fixed(windKph == null ? null : windKph / 1.609344, 1)).append(',');
+        row.append(integer(windDegree)).append(',');
+        row.append(windDegree == null ? "" : COMPASS[(int) Math.round(windDegree / 22.5) % 16]).append(',');
+
+        row.append(fixed(gustKph, 1)).append(',');
+        row.append(fixed(gustKph == null ? null : gustKph / 1.609344, 1)).append(',');
+
+        row.append(fixed(pressureMb, 1)).append(',');
+        row.append(fixed(pressureMb == null ? null : pressureMb * 0.02953, 2)).append(',');
+        row.append(fixed(precipMm, 1)).append(',');
+        row.append(fixed(precipMm == null ? null : precipMm / 25.4, 2)).append(',');
+
+        row.append(integer(number(current, "cloud_cover"))).append(',');
+        row.append(fixed(number(current, "uv_index"), 1)).append(',');
+        row.append(fixed(visibilityM == null ? null : visibilityM / 1000, 1)).append(',');
+        row.append(fixed(visibilityM == null ? null : visibilityM / 1609.344, 1)).append(',');
+
+        Double isDay = number(current, "is_day");
+        row.append(integer(isDay)).append(',');
+
+        // WeatherAPI condition, an unmapped WMO code leaves the condition empty
+        Condition condition = condition(weatherCode);
+        boolean day = isDay == null || isDay != 0;
+        row.append('"').append(condition == null ? "" : condition.text(day)).append("\",\"")
+                .append(condition == null ? "" : condition.iconUrl(day)).append("\",");
+        row.append(condition == null ? "" : String.valueOf(condition.code)).append(',');
+
+        // No air quality in the forecast API
+        row.append(",,,,,,,,");
+
+        row.append(localTime).append(',');
+        row.append(extractTime);
+
+        return row.toString();
+    }
+
+    @Override
+    public WeatherApiClient getApiClient() {
+        return apiClient;
+    }
+
+    private static Double number(JsonObject object, String name) {
+        JsonElement value = object.get(name);
+        return value == null || value.isJsonNull() ? null : value.getAsDouble();
+    }
+
+    private static String fixed(Double value, int decimals) {
+        return value == null ? "" : String.format(Locale.ROOT, "%." + decimals + "f", value);
+    }
+
+    private static String integer(Double value) {
+        return value == null ? "" : String.valueOf(Math.round(value));
+    }
+
+    private static boolean isNumber(String value) {
+        try {
+            Double.parseDouble(value.trim());
+            return true;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    private static String escapeComma(String value) {
+        if (value != null && value.contains(",")) {
+            return "\"" + value + "\"";
+        }
+        return value == null ? "" : value;
+    }
+
+    /**
+     * WeatherAPI condition (code, day/night text, icon number) of a WMO weather code, null if unknown
+     */
+    static Condition condition(Double wmoCode) {
+        return wmoCode == null ? null : WMO_CONDITIONS.get((int) Math.round(wmoCode));
+    }
+
+    /**
+     * One WeatherAPI condition, so both sources share the dim_weather_condition rows
+     */
+    static class Condition {
+        final int code;
+        final String dayText;
+        final String nightText;
+        final int icon;
+
+        Condition(int code, String dayText, String nightText, int icon) {
+            this.code = code;
+            this.dayText = dayText;
+            this.nightText = nightText;
+            this.icon = icon;
+        }
+
+        String text(boolean day) {
+            return day ? dayText : nightText;
+        }
+
+        /**
+         * Same URL as a WeatherAPI row (condition.icon with the https: prefix the transcoder adds),
+         * so both providers give dim_weather_condition the same row
+         */
+        String iconUrl(boolean day) {
+            return "https://cdn.weatherapi.com/weather/64x64/" + (day ? "day" : "night") + "/" + icon + ".png";
+        }
+    }
+
+    // WMO code -> nearest WeatherAPI condition (WeatherAPI has no hail and no dense drizzle)
+    private static final Map<Integer, Condition> WMO_CONDITIONS = new HashMap<>();
+
+    static {
+        wmo(0, 1000, "Sunny", "Clear", 113);
+        wmo(1, 1003, "Partly cloudy", "Partly cloudy", 116);
+        wmo(2, 1003, "Partly cloudy", "Partly cloudy", 116);
+        wmo(3, 1009, "Overcast", "Overcast", 122);
+        wmo(45, 1135, "Fog", "Fog", 248);
+        wmo(48, 1147, "Freezing fog", "Freezing fog", 260);
+        wmo(51, 1150, "Patchy light drizzle", "Patchy light drizzle", 263);
+        wmo(53, 1153, "Light drizzle", "Light drizzle", 266);
+        wmo(55, 1153, "Light drizzle", "Light drizzle", 266);
+        wmo(56, 1168, "Freezing drizzle", "Freezing drizzle", 281);
+        wmo(57, 1171, "Heavy freezing drizzle", "Heavy freezing drizzle", 284);
+        wmo(61, 1183, "Light rain", "Light rain", 296);
+        wmo(63, 1189, "Moderate rain", "Moderate rain", 302);
+        wmo(65, 1195, "Heavy rain", "Heavy rain", 308);
+        wmo(66, 1198, "Light freezing rain", "Light freezing rain", 311);
+        wmo(67, 1201, "Moderate or heavy freezing rain", "Moderate or heavy freezing rain", 314);
+        wmo(71, 1213, "Light snow", "Light snow", 326);
+        wmo(73, 1219, "Moderate snow", "Moderate snow", 332);
+        wmo(75, 1225, "Heavy snow", "Heavy snow", 338);
+        wmo(77, 1237, "Ice pellets", "Ice pellets", 350);
+        wmo(80, 1240, "Light rain shower", "Light rain shower", 353);
+        wmo(81, 1243, "Moderate or heavy rain shower", "Moderate or heavy rain shower", 356);
+        wmo(82, 1246, "Torrential rain shower", "Torrential rain shower", 359);
+        wmo(85, 1255, "Light snow showers", "Light snow showers", 368);
+        wmo(86, 1258, "Moderate or heavy snow showers", "Moderate or heavy snow showers", 371);
+        wmo(95, 1273, "Patchy light rain with thunder", "Patchy light rain with thunder", 386);
+        wmo(96, 1276, "Moderate or heavy rain with thunder", "Moderate or heavy rain with thunder", 389);
+        wmo(99, 1276, "Moderate or heavy rain with thunder", "Moderate or heavy rain with thunder", 389);
+    }
+
+    private static void wmo(int wmoCode, int code, String dayText, String nightText, int icon) {
+        WMO_CONDITIONS.put(wmoCode, new Condition(code, dayText, nightText, icon));
+    }
+
+    private static class Place {
+        private final double lat;
+        private final double lon;
+        private final String country;
+
+        Place(double lat, double lon, String country) {
+            this.lat = lat;
+            this.lon = lon;
+            this.country = country;
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package scripts.extract_scripts;
+
+import org.w3c.dom.Element;
+import utils.LoadConfig;
+
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Token bucket rate limiter shared by every API call of one extract run.
+ * - requestsPerSecond: refill rate of the bucket
+ * - burstSize        : max tokens that can be saved up
+ * On HTTP 429 all callers are paused (Retry-After) and the rate is halved,
+ * each successful call then slowly brings the rate back to the configured value.
+ */
+public class RateLimiter {
+
+    private static final Duration DEFAULT_RETRY_AFTER = Duration.ofSeconds(1);
+    private static final Duration MAX_RETRY_AFTER = Duration.ofSeconds(60);
+
+    private final double maxRate;
+    private final double minRate;
+    private final int burstSize;
+
+    private double rate;
+    private double tokens;
+    private long lastRefillNanos;
+    private long pausedUntilNanos;
+
+    public RateLimiter(double requestsPerSecond, int burstSize) {
+        if (requestsPerSecond <= 0) {
+            throw new IllegalArgumentException("requestsPerSecond must be > 0");
+        }
+        this.maxRate = requestsPerSecond;
+        this.minRate = Math.min(requestsPerSecond, 0.5);
+        this.burstSize = Math.max(1, burstSize);
+        this.rate = requestsPerSecond;
+        this.tokens = this.burstSize;
+        this.lastRefillNanos = System.nanoTime();
+        this.pausedUntilNanos = lastRefillNanos;
+    }
+
+    /**
+     * Build limiter from <api><weather><rateLimit> (defaults: 10 req/s, burst 5)
+     */
+    public static RateLimiter fromConfig(Element weather) {
+        Element rateLimit = LoadConfig.getChildElement(weather, "rateLimit");
+        double requestsPerSecond = ExtractWeatherData.parseDoubleOrDefault(LoadConfig.getValue(rateLimit, "requestsPerSecond"), 10);
+        int burstSize = (int) ExtractWeatherData.parseDoubleOrDefault(LoadConfig.getValue(rateLimit, "burstSize"), 5);
+        return new RateLimiter(requestsPerSecond, burstSize);
+    }
+
+    /**
+     * Block until a token is available (or the 429 pause is over)
+     */
+    public void acquire() throws InterruptedException {
+        while (true) {
+            long waitNanos;
+            synchronized (this) {
+                long now = System.nanoTime();
+                if (now < pausedUntilNanos) {
+                    waitNanos = pausedUntilNanos - now;
+                } else {
+                    refill(now);
+                    if (tokens >= 1) {
+                        tokens -= 1;
+                        return;
+                    }
+                    waitNanos = (long) ((1 - tokens) / rate * 1_000_000_000L);
+                }
+            }
+            // Sleep outside the lock so other callers are not blocked
+            TimeUnit.NANOSECONDS.sleep(Math.max(waitNanos, 1_000_000L));
+        }
+    }
+
+    /**
+     * Provider returned 429: pause every caller and halve the rate
+     */
+    public synchronized void onThrottled(Duration retryAfter) {
+        long now = System.nanoTime();
+        pausedUntilNanos = Math.max(pausedUntilNanos, now + retryAfter.toNanos());
+        rate = Math.max(minRate, rate / 2);
+        tokens = 0;
+        lastRefillNanos = now;
+    }
+
+    /**
+     * Successful call: recover 10% of the configured rate per call
+     */
+    public synchronized void onSuccess() {
+        if (rate < maxRate) {
+            rate = Math.min(maxRate, rate + maxRate * 0.1);
+        }
+    }
+
+    public synchronized double getCurrentRate() {
+        return rate;
+    }
+
+    public int getBurstSize() {
+        return burstSize;
+    }
+
+    private void refill(long now) {
+        double elapsedSeconds = (now - lastRefillNanos) / 1_000_000_000.0;
+        tokens = Math.min(burstSize, tokens + elapsedSeconds * rate);
+        lastRefillNanos = now;
+    }
+
+    /**
+     * Parse Retry-After header: either delay-seconds or an HTTP-date
+     */
+    public static Duration parseRetryAfter(Optional<String> header) {
+        if (header.isEmpty() || header.get().isBlank()) {
+            return DEFAULT_RETRY_AFTER;
+        }
+        String value = header.get().trim();
+        Duration delay;
+        try {
+            delay = Duration.ofSeconds(Long.parseLong(value));
+        } catch (NumberFormatException e) {
+            try {
+                ZonedDateTime at = ZonedDateTime.parse(value, DateTimeFormatter.RFC_1123_DATE_TIME);
+                delay = Duration.between(ZonedDateTime.now(at.getZone()), at);
+            } catch (Exception ex) {
+                delay = DEFAULT_RETRY_AFTER;
+            }
+        }
+        if (delay.isNegative() || delay.isZero()) {
+            return DEFAULT_RETRY_AFTER;
+        }
+        return delay.compareTo(MAX_RETRY_AFTER) > 0 ? MAX_RETRY_AFTER : delay;
+    }}
@@ -0,0 +1,394 @@
+package scripts.extract_scripts;
+
+import org.w3c.dom.Element;
+import utils.LoadConfig;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * On-disk HTTP response cache shared by every WeatherApiClient of a run.
+ *
+ * Key = request URL without the api key (host + endpoint + location query).
+ * Each entry is two files in the cache directory: <sha256>.body and <sha256>.meta
+ * (ETag, Last-Modified, expiry). Expiry comes from the payload itself:
+ * - WeatherAPI : current.last_updated_epoch + refreshMinutes (provider refreshes every 15 min)
+ * - Open-Meteo : current.time + current.interval
+ * - otherwise  : now + minTtlSeconds
+ * Fresh entries are served without a call, stale entries with a validator are
+ * revalidated with If-None-Match / If-Modified-Since (304 = reuse the body).
+ * The directory is bounded by maxEntries / maxSizeMb, least recently used first out.
+ *
+ * File I/O runs under a lock per entry (striped by file name, taken before the index lock),
+ * the shared LRU index is only locked for map updates, so fetches of different locations
+ * do not wait on each other's disk access.
+ */
+public class ResponseCache {
+
+    private static final Pattern LAST_UPDATED_EPOCH = Pattern.compile("\"last_updated_epoch\"\\s*:\\s*(\\d+)");
+    private static final Pattern CURRENT_TIME = Pattern.compile("\"time\"\\s*:\\s*(\\d+)");
+    private static final Pattern CURRENT_INTERVAL = Pattern.compile("\"interval\"\\s*:\\s*(\\d+)");
+    private static final Pattern API_KEY_PARAM = Pattern.compile("([?&])key=[^&]*&?");
+
+    private final Path directory;
+    private final int maxEntries;
+    private final long maxBytes;
+    private final Duration refreshInterval;
+    private final Duration minTtl;
+
+    private static final int LOCK_STRIPES = 64;
+
+    // file name -> body size, in LRU order (eldest first), guarded by indexLock
+    private final LinkedHashMap<String, Long> index = new LinkedHashMap<>(16, 0.75f, true);
+    private long totalBytes;
+    private final ReentrantLock indexLock = new ReentrantLock();
+    // Files of one entry are read / written under its stripe
+    private final ReentrantLock[] entryLocks = new ReentrantLock[LOCK_STRIPES];
+
+    public ResponseCache(Path directory, int maxEntries, long maxBytes,
+                         Duration refreshInterval, Duration minTtl) throws IOException {
+        this.directory = directory;
+        this.maxEntries = Math.max(1, maxEntries);
+        this.maxBytes = Math.max(1, maxBytes);
+        this.refreshInterval = refreshInterval;
+        this.minTtl = minTtl;
+        for (int i = 0; i < entryLocks.length; i++) {
+            entryLocks[i] = new ReentrantLock();
+        }
+        Files.createDirectories(directory);
+        loadIndex();
+    }
+
+    /**
+     * Build cache from <api><cache>, null when disabled
+     */
+    public static ResponseCache fromConfig(Element cache) throws IOException {
+        if (cache == null || !Boolean.parseBoolean(LoadConfig.getValue(cache, "enabled"))) {
+            return null;
+        }
+        String directory = LoadConfig.getValue(cache, "directory");
+        return new ResponseCache(
+                Paths.get(directory.isEmpty() ? "data/cache" : directory),
+                ExtractWeatherData.parseIntOrDefault(LoadConfig.getValue(cache, "maxEntries"), 1000),
+                ExtractWeatherData.parseIntOrDefault(LoadConfig.getValue(cache, "maxSizeMb"), 50) * 1024L * 1024L,
+                Duration.ofMinutes(ExtractWeatherData.parseIntOrDefault(LoadConfig.getValue(cache, "refreshMinutes"), 15)),
+                Duration.ofSeconds(ExtractWeatherData.parseIntOrDefault(LoadConfig.getValue(cache, "minTtlSeconds"), 60))
+        );
+    }
+
+    /**
+     * Rebuild LRU order from file times (meta file is touched on every hit)
+     */
+    private void loadIndex() throws IOException {
+        List<Path> metas = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*.meta")) {
+            for (Path meta : stream) {
+                metas.add(meta);
+            }
+        }
+        metas.sort((a, b) -> lastModified(a).compareTo(lastModified(b)));
+        for (Path meta : metas) {
+            String name = meta.getFileName().toString().replace(".meta", "");
+            Path body = directory.resolve(name + ".body");
+            if (!Files.exists(body)) {
+                Files.deleteIfExists(meta);
+                continue;
+            }
+            long size = Files.size(body);
+            index.put(name, size);
+            totalBytes += size;
+        }
+        deleteEntries(evict());
+    }
+
+    /**
+     * Cache key of a request: URL without the api key
+     */
+    public static String keyFor(String url) {
+        String key = API_KEY_PARAM.matcher(url).replaceFirst("$1");
+        return key.endsWith("?") || key.endsWith("&") ? key.substring(0, key.length() - 1) : key;
+    }
+
+    /**
+     * Entry for a key, or null if not cached
+     */
+    public Entry lookup(String key) {
+        String name = fileName(key);
+        ReentrantLock lock = entryLock(name);
+        lock.lock();
+        try {
+            indexLock.lock();
+            try {
+                // get() also moves the entry to the recently used end
+                if (index.get(name) == null) {
+                    return null;
+                }
+            } finally {
+                indexLock.unlock();
+            }
+
+            Properties meta = new Properties();
+            try (Reader reader = Files.newBufferedReader(directory.resolve(name + ".meta"), StandardCharsets.UTF_8)) {
+                meta.load(reader);
+            }
+            if (!key.equals(meta.getProperty("key"))) {
+                return null; // hash collision
+            }
+            String body = Files.readString(directory.resolve(name + ".body"), StandardCharsets.UTF_8);
+            Files.setLastModifiedTime(directory.resolve(name + ".meta"), FileTime.from(Instant.now()));
+            return new Entry(body,
+                    meta.getProperty("etag"),
+                    meta.getProperty("lastModified"),
+                    Instant.ofEpochMilli(Long.parseLong(meta.getProperty("expiresAt", "0"))));
+        } catch (Exception e) {
+            System.err.println("  - WARNING: Cannot read cache entry, ignored: " + e.getMessage());
+            remove(name);
+            return null;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Save a 200 response, expiry derived from the payload
+     */
+    public void store(String key, String body, String etag, String lastModified) {
+        String name = fileName(key);
+        List<String> evicted;
+        ReentrantLock lock = entryLock(name);
+        lock.lock();
+        try {
+            Path bodyPath = directory.resolve(name + ".body");
+            Path tmp = directory.resolve(name + ".body.tmp");
+            Files.writeString(tmp, body, StandardCharsets.UTF_8);
+            Files.move(tmp, bodyPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            writeMeta(name, key, etag, lastModified, expiryFor(body));
+            long size = Files.size(bodyPath);
+
+            indexLock.lock();
+            try {
+                Long previous = index.put(name, size);
+                totalBytes += size - (previous != null ? previous : 0);
+                evicted = evict();
+            } finally {
+                indexLock.unlock();
+            }
+        } catch (Exception e) {
+            System.err.println("  - WARNING: Cannot write cache entry: " + e.getMessage());
+            return;
+        } finally {
+            lock.unlock();
+        }
+        deleteEntries(evicted);
+    }
+
+    /**
+     * 304 Not Modified: keep the body, push the expiry forward
+     */
+    public void refresh(String key, Entry entry) {
+        String name = fileName(key);
+        ReentrantLock lock = entryLock(name);
+        lock.lock();
+        try {
+            writeMeta(name, key, entry.getEtag(), entry.getLastModified(), expiryFor(entry.getBody()));
+        } catch (Exception e) {
+            System.err.println("  - WARNING: Cannot refresh cache entry: " + e.getMessage());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * When the provider will have a newer observation than this payload
+     */
+    Instant expiryFor(String body) {
+        Instant now = Instant.now();
+        Instant expiry = null;
+
+        Matcher lastUpdated = LAST_UPDATED_EPOCH.matcher(body);
+        if (lastUpdated.find()) {
+            expiry = Instant.ofEpochSecond(Long.parseLong(lastUpdated.group(1))).plus(refreshInterval);
+        } else {
+            Matcher time = CURRENT_TIME.matcher(body);
+            Matcher interval = CURRENT_INTERVAL.matcher(body);
+            if (time.find() && interval.find()) {
+                expiry = Instant.ofEpochSecond(Long.parseLong(time.group(1)) + Long.parseLong(interval.group(1)));
+            }
+        }
+
+        Instant minExpiry = now.plus(minTtl);
+        return expiry == null || expiry.isBefore(minExpiry) ? minExpiry : expiry;
+    }
+
+    private void writeMeta(String name, String key, String etag, String lastModified, Instant expiresAt)
+            throws IOException {
+        Properties meta = new Properties();
+        meta.setProperty("key", key);
+        if (etag != null) {
+            meta.setProperty("etag", etag);
+        }
+        if (lastModified != null) {
+            meta.setProperty("lastModified", lastModified);
+        }
+        meta.setProperty("expiresAt", String.valueOf(expiresAt.toEpochMilli()));
+
+        Path tmp = directory.resolve(name + ".meta.tmp");
+        try (Writer writer = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+            meta.store(writer, null);
+        }
+        Files.move(tmp, directory.resolve(name + ".meta"),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Drop the eldest entries over the limits from the index (caller holds indexLock),
+     * returns them so their files are deleted after the lock is released
+     */
+    private List<String> evict() {
+        List<String> evicted = new ArrayList<>();
+        Iterator<Map.Entry<String, Long>> it = index.entrySet().iterator();
+        while ((index.size() > maxEntries || totalBytes > maxBytes) && it.hasNext()) {
+            Map.Entry<String, Long> eldest = it.next();
+            it.remove();
+            totalBytes -= eldest.getValue();
+            evicted.add(eldest.getKey());
+        }
+        return evicted;
+    }
+
+    /**
+     * Unreadable entry (caller holds its entry lock)
+     */
+    private void remove(String name) {
+        indexLock.lock();
+        try {
+            Long size = index.remove(name);
+            if (size != null) {
+                totalBytes -= size;
+            }
+        } finally {
+            indexLock.unlock();
+        }
+        deleteFiles(name);
+    }
+
+    /**
+     * Files of evicted entries; an entry stored again in the meantime is kept
+     */
+    private void deleteEntries(List<String> names) {
+        for (String name : names) {
+            ReentrantLock lock = entryLock(name);
+            lock.lock();
+            try {
+                if (!inIndex(name)) {
+                    deleteFiles(name);
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private boolean inIndex(String name) {
+        indexLock.lock();
+        try {
+            return index.containsKey(name);
+        } finally {
+            indexLock.unlock();
+        }
+    }
+
+    private void deleteFiles(String name) {
+        try {
+            Files.deleteIfExists(directory.resolve(name + ".body"));
+            Files.deleteIfExists(directory.resolve(name + ".meta"));
+        } catch (IOException e) {
+            System.err.println("  - WARNING: Cannot delete cache entry: " + e.getMessage());
+        }
+    }
+
+    private ReentrantLock entryLock(String name) {
+        return entryLocks[Math.floorMod(name.hashCode(), entryLocks.length)];
+    }
+
+    private static FileTime lastModified(Path path) {
+        try {
+            return Files.getLastModifiedTime(path);
+        } catch (IOException e) {
+            return FileTime.fromMillis(0);
+        }
+    }
+
+    private static String fileName(String key) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(key.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public int size() {
+        indexLock.lock();
+        try {
+            return index.size();
+        } finally {
+            indexLock.unlock();
+        }
+    }
+
+    /**
+     * One cached response
+     */
+    public static class Entry {
+        private final String body;
+        private final String etag;
+        private final String lastModified;
+        private final Instant expiresAt;
+
+        Entry(String body, String etag, String lastModified, Instant expiresAt) {
+            this.body = body;
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.expiresAt = expiresAt;
+        }
+
+        public boolean isFresh() {
+            return Instant.now().isBefore(expiresAt);
+        }
+
+        public String getBody() {
+            return body;
+        }
+
+        public String getEtag() {
+            return etag;
+        }
+
+        public String getLastModified() {
+            return lastModified;
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package scripts.extract_scripts;
+
+import org.w3c.dom.Element;
+import utils.LoadConfig;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Retry policy for API calls: exponential backoff with full jitter
+ * and a retry budget shared by the whole run.
+ * - maxAttempts : max calls for one request (1 = no retry)
+ * - baseDelayMs : backoff of the first retry
+ * - maxDelayMs  : upper bound of a single backoff
+ * - retryBudget : max retries of all requests together in one run
+ */
+public class RetryPolicy {
+
+    private final int maxAttempts;
+    private final long baseDelayMs;
+    private final long maxDelayMs;
+    private final AtomicInteger remainingBudget;
+
+    public RetryPolicy(int maxAttempts, long baseDelayMs, long maxDelayMs, int retryBudget) {
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.baseDelayMs = Math.max(1, baseDelayMs);
+        this.maxDelayMs = Math.max(this.baseDelayMs, maxDelayMs);
+        this.remainingBudget = new AtomicInteger(Math.max(0, retryBudget));
+    }
+
+    /**
+     * Build policy from <api><weather><retry> (defaults: 4 attempts, 500ms..8000ms, budget 30)
+     */
+    public static RetryPolicy fromConfig(Element weather) {
+        Element retry = LoadConfig.getChildElement(weather, "retry");
+        return new RetryPolicy(
+                ExtractWeatherData.parseIntOrDefault(LoadConfig.getValue(retry, "maxAttempts"), 4),
+                ExtractWeatherData.parseIntOrDefault(LoadConfig.getValue(retry, "baseDelayMs"), 500),
+                ExtractWeatherData.parseIntOrDefault(LoadConfig.getValue(retry, "maxDelayMs"), 8000),
+                ExtractWeatherData.parseIntOrDefault(LoadConfig.getValue(retry, "retryBudget"), 30)
+        );
+    }
+
+    /**
+     * Can the request be retried after the given attempt (1-based)?
+     * Takes one unit from the run budget when it returns true.
+     */
+    public boolean canRetry(int attempt) {
+        if (attempt >= maxAttempts) {
+            return false;
+        }
+        return remainingBudget.getAndUpdate(b -> b > 0 ? b - 1 : 0) > 0;
+    }
+
+    /**
+     * Backoff before the retry that follows the given attempt (1-based):
+     * random value in [0, min(maxDelay, baseDelay * 2^(attempt-1))]
+     */
+    public Duration backoff(int attempt) {
+        long cap = baseDelayMs << Math.min(attempt - 1, 20);
+        long bound = Math.min(maxDelayMs, cap);
+        return Duration.ofMillis(ThreadLocalRandom.current().nextLong(bound + 1));
+    }
+
+    /**
+     * HTTP statuses worth retrying: timeout, throttled, server errors
+     */
+    public static boolean isRetryableStatus(int statusCode) {
+        return statusCode == 408 || statusCode == 429 || statusCode >= 500;
+    }
+
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    public int getRemainingBudget() {
+        return remainingBudget.get();
+    }
+}
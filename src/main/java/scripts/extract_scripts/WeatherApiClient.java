@@ -0,0 +1,235 @@
+package scripts.extract_scripts;
+
+import org.w3c.dom.Element;
+import utils.LoadConfig;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * HTTP client used by the extract: every call goes through
+ * rate limiter -> circuit breaker (per host) -> retry with backoff.
+ * Also counts calls, retries and latency so they can be written to log_src.
+ * With a ResponseCache, fresh responses are served from disk and stale ones
+ * are revalidated with a conditional request.
+ */
+public class WeatherApiClient {
+
+    private final HttpClient http;
+    private final int timeout;
+    private final RateLimiter rateLimiter;
+    private final RetryPolicy retryPolicy;
+    private final int breakerThreshold;
+    private final Duration breakerOpenDuration;
+    private final Map<String, CircuitBreaker> breakers = new ConcurrentHashMap<>();
+    private ResponseCache cache;
+
+    // Stats for log_src
+    private final AtomicInteger callCount = new AtomicInteger();
+    private final AtomicInteger retryCount = new AtomicInteger();
+    private final AtomicLong totalLatencyMs = new AtomicLong();
+    private final AtomicLong maxLatencyMs = new AtomicLong();
+    private final AtomicInteger cacheHits = new AtomicInteger();
+    private final AtomicInteger notModifiedCount = new AtomicInteger();
+
+    public WeatherApiClient(int timeout, RateLimiter rateLimiter, RetryPolicy retryPolicy,
+                            int breakerThreshold, Duration breakerOpenDuration) {
+        this.http = HttpClient.newBuilder()
+                .connectTimeout(Duration.ofMillis(timeout))
+                .build();
+        this.timeout = timeout;
+        this.rateLimiter = rateLimiter;
+        this.retryPolicy = retryPolicy;
+        this.breakerThreshold = breakerThreshold;
+        this.breakerOpenDuration = breakerOpenDuration;
+    }
+
+    /**
+     * Build client from <api><weather> (timeout, rateLimit, retry, circuitBreaker)
+     */
+    public static WeatherApiClient fromConfig(Element weather) {
+        int timeout = Integer.parseInt(LoadConfig.getValue(weather, "timeout"));
+        Element breaker = LoadConfig.getChildElement(weather, "circuitBreaker");
+        int threshold = ExtractWeatherData.parseIntOrDefault(LoadConfig.getValue(breaker, "failureThreshold"), 5);
+        int openSeconds = ExtractWeatherData.parseIntOrDefault(LoadConfig.getValue(breaker, "openSeconds"), 30);
+
+        return new WeatherApiClient(
+                timeout,
+                RateLimiter.fromConfig(weather),
+                RetryPolicy.fromConfig(weather),
+                threshold,
+                Duration.ofSeconds(openSeconds)
+        );
+    }
+
+    /**
+     * GET url and return the body of a 200 response.
+     * Retryable failures (IO error, timeout, 408, 429, 5xx) are retried with backoff
+     * until maxAttempts or the run retry budget is used up.
+     */
+    public String get(String url, String label) throws IOException, InterruptedException {
+        String cacheKey = cache != null ? ResponseCache.keyFor(url) : null;
+        ResponseCache.Entry cached = cache != null ? cache.lookup(cacheKey) : null;
+        if (cached != null && cached.isFresh()) {
+            // Provider has not published a newer observation yet: no call at all
+            cacheHits.incrementAndGet();
+            return cached.getBody();
+        }
+
+        URI uri = URI.create(url);
+        HttpRequest.Builder builder = HttpRequest.newBuilder()
+                .uri(uri)
+                .timeout(Duration.ofMillis(timeout))
+                .GET();
+        if (cached != null && cached.getEtag() != null) {
+            builder.header("If-None-Match", cached.getEtag());
+        }
+        if (cached != null && cached.getLastModified() != null) {
+            builder.header("If-Modified-Since", cached.getLastModified());
+        }
+        HttpRequest request = builder.build();
+
+        CircuitBreaker breaker = breakers.computeIfAbsent(uri.getHost(),
+                host -> new CircuitBreaker(host, breakerThreshold, breakerOpenDuration));
+
+        for (int attempt = 1; ; attempt++) {
+            if (!breaker.allowRequest()) {
+                throw new IOException("Circuit breaker OPEN for host " + breaker.getName());
+            }
+
+            // The half-open trial is released on every way out (interrupt, runtime error),
+            // otherwise the breaker would reject this host for the rest of the run
+            String failure;
+            Duration wait;
+            try {
+                rateLimiter.acquire();
+
+                long start = System.nanoTime();
+                try {
+                    HttpResponse<String> response = http.send(request, HttpResponse.BodyHandlers.ofString());
+                    recordLatency(start);
+                    int status = response.statusCode();
+
+                    if (status == 200) {
+                        rateLimiter.onSuccess();
+                        breaker.onSuccess();
+                        if (cache != null) {
+                            cache.store(cacheKey, response.body(),
+                                    response.headers().firstValue("ETag").orElse(null),
+                                    response.headers().firstValue("Last-Modified").orElse(null));
+                        }
+                        return response.body();
+                    }
+
+                    if (status == 304 && cached != null) {
+                        // Not modified: reuse cached body, push its expiry forward
+                        rateLimiter.onSuccess();
+                        breaker.onSuccess();
+                        notModifiedCount.incrementAndGet();
+                        cache.refresh(cacheKey, cached);
+                        return cached.getBody();
+                    }
+
+                    if (!RetryPolicy.isRetryableStatus(status)) {
+                        // Client error (bad key, unknown location...) - retry will not help,
+                        // but the host itself is healthy
+                        breaker.onSuccess();
+                        throw new ApiCallException("HTTP " + status);
+                    }
+
+                    failure = "HTTP " + status;
+                    if (status == 429) {
+                        // Throttled: the rate limiter pause is the backoff
+                        Duration retryAfter = RateLimiter.parseRetryAfter(response.headers().firstValue("Retry-After"));
+                        rateLimiter.onThrottled(retryAfter);
+                        breaker.onSuccess();
+                        wait = Duration.ZERO;
+                    } else {
+                        breaker.onFailure();
+                        wait = retryPolicy.backoff(attempt);
+                    }
+
+                } catch (ApiCallException e) {
+                    throw e;
+                } catch (IOException e) {
+                    // Network error / timeout
+                    recordLatency(start);
+                    breaker.onFailure();
+                    failure = e.getClass().getSimpleName() + ": " + e.getMessage();
+                    wait = retryPolicy.backoff(attempt);
+                }
+            } finally {
+                breaker.releaseTrial();
+            }
+
+            if (!retryPolicy.canRetry(attempt)) {
+                throw new IOException(failure + " (after " + attempt + " attempt(s))");
+            }
+
+            retryCount.incrementAndGet();
+            System.err.println("  ! Retry " + attempt + "/" + (retryPolicy.getMaxAttempts() - 1) +
+                    ": " + label + " - " + failure + ", wait " + wait.toMillis() + " ms");
+            if (!wait.isZero()) {
+                TimeUnit.MILLISECONDS.sleep(wait.toMillis());
+            }
+        }
+    }
+
+    private void recordLatency(long startNanos) {
+        long ms = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+        callCount.incrementAndGet();
+        totalLatencyMs.addAndGet(ms);
+        maxLatencyMs.accumulateAndGet(ms, Math::max);
+    }
+
+    public void setCache(ResponseCache cache) {
+        this.cache = cache;
+    }
+
+    public int getCacheHits() {
+        return cacheHits.get();
+    }
+
+    public int getNotModifiedCount() {
+        return notModifiedCount.get();
+    }
+
+    public RateLimiter getRateLimiter() {
+        return rateLimiter;
+    }
+
+    public int getCallCount() {
+        return callCount.get();
+    }
+
+    public int getRetryCount() {
+        return retryCount.get();
+    }
+
+    public double getAvgLatencyMs() {
+        int calls = callCount.get();
+        return calls == 0 ? 0 : (double) totalLatencyMs.get() / calls;
+    }
+
+    public long getMaxLatencyMs() {
+        return maxLatencyMs.get();
+    }
+
+    /**
+     * Non-retryable API error (HTTP 4xx except 408/429)
+     */
+    static class ApiCallException extends IOException {
+        public ApiCallException(String message) {
+            super(message);
+        }
+    }
+}
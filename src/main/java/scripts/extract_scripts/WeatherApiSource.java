@@ -0,0 +1,54 @@
+package scripts.extract_scripts;
+
+import org.w3c.dom.Element;
+import utils.LoadConfig;
+
+import java.io.IOException;
+
+/**
+ * WeatherAPI.com current.json (config: <api><weather>)
+ */
+public class WeatherApiSource implements WeatherSource {
+
+    public static final String NAME = "WeatherAPI";
+
+    private final String baseUrl;
+    private final String apiKey;
+    private final WeatherApiClient apiClient;
+
+    public WeatherApiSource(String baseUrl, String apiKey, WeatherApiClient apiClient) {
+        this.baseUrl = baseUrl;
+        this.apiKey = apiKey;
+        this.apiClient = apiClient;
+    }
+
+    public static WeatherApiSource fromConfig(Element weather) {
+        return new WeatherApiSource(
+                LoadConfig.getValue(weather, "baseUrl"),
+                LoadConfig.getValue(weather, "apiKey"),
+                WeatherApiClient.fromConfig(weather)
+        );
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public String fetch(ExtractWeatherData.Location location) throws IOException, InterruptedException {
+        String url = ExtractWeatherData.buildApiUrl(baseUrl, apiKey, location.getApiName());
+        return apiClient.get(url, NAME + " " + location.getName() + " (" + location.getCode() + ")");
+    }
+
+    @Override
+    public String toCsvRow(String payload, ExtractWeatherData.Location location,
+                           String executionId, String extractTime) throws IOException {
+        return new WeatherRowTranscoder().transcode(payload, location, executionId, extractTime);
+    }
+
+    @Override
+    public WeatherApiClient getApiClient() {
+        return apiClient;
+    }
+}
@@ -0,0 +1,500 @@
+package scripts.extract_scripts;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Streaming JSON -> CSV transcoder for WeatherAPI responses
+ * (current.json, and history.json for backfill).
+ *
+ * Reads the response once with a pull parser (Gson JsonReader), keeps the
+ * needed values as their JSON text in a slot array and renders the CSV row
+ * into a reusable StringBuilder. Numbers are never boxed: the JSON literal
+ * is rounded HALF_UP on its decimal digits, which gives the same output
+ * as String.format("%.1f") / ("%.2f") but always with '.' as separator.
+ *
+ * Not thread safe - use one instance per thread / per response.
+ */
+public class WeatherRowTranscoder {
+
+    // location
+    private static final int COUNTRY = 0;
+    private static final int LAT = 1;
+    private static final int LON = 2;
+    private static final int TZ_ID = 3;
+    private static final int LOCALTIME_EPOCH = 4;
+    private static final int LOCALTIME = 5;
+    // current
+    private static final int TEMP_C = 6;
+    private static final int TEMP_F = 7;
+    private static final int FEELSLIKE_C = 8;
+    private static final int FEELSLIKE_F = 9;
+    private static final int HUMIDITY = 10;
+    private static final int WIND_KPH = 11;
+    private static final int WIND_MPH = 12;
+    private static final int WIND_DEGREE = 13;
+    private static final int WIND_DIR = 14;
+    private static final int GUST_KPH = 15;
+    private static final int GUST_MPH = 16;
+    private static final int PRESSURE_MB = 17;
+    private static final int PRESSURE_IN = 18;
+    private static final int PRECIP_MM = 19;
+    private static final int PRECIP_IN = 20;
+    private static final int CLOUD = 21;
+    private static final int UV = 22;
+    private static final int VIS_KM = 23;
+    private static final int VIS_MILES = 24;
+    private static final int IS_DAY = 25;
+    private static final int LAST_UPDATED = 26;
+    // current.condition
+    private static final int CONDITION_TEXT = 27;
+    private static final int CONDITION_ICON = 28;
+    private static final int CONDITION_CODE = 29;
+    // current.air_quality
+    private static final int AQI_US = 30;
+    private static final int AQI_GB = 31;
+    private static final int PM2_5 = 32;
+    private static final int PM10 = 33;
+    private static final int CO = 34;
+    private static final int NO2 = 35;
+    private static final int O3 = 36;
+    private static final int SO2 = 37;
+
+    private static final String[] FIELD_NAMES = {
+            "country", "lat", "lon", "tz_id", "localtime_epoch", "localtime",
+            "temp_c", "temp_f", "feelslike_c", "feelslike_f", "humidity",
+            "wind_kph", "wind_mph", "wind_degree", "wind_dir", "gust_kph", "gust_mph",
+            "pressure_mb", "pressure_in", "precip_mm", "precip_in",
+            "cloud", "uv", "vis_km", "vis_miles", "is_day", "last_updated",
+            "condition.text", "condition.icon", "condition.code",
+            "air_quality.us-epa-index", "air_quality.gb-defra-index", "air_quality.pm2_5", "air_quality.pm10",
+            "air_quality.co", "air_quality.no2", "air_quality.o3", "air_quality.so2"
+    };
+
+    private final String[] values = new String[FIELD_NAMES.length];
+    private final StringBuilder row = new StringBuilder(512);
+    private char[] digits = new char[32];
+
+    /**
+     * Convert one current.json response to a CSV row (same columns as ExtractWeatherData.getCsvHeader)
+     */
+    public String transcode(String json, ExtractWeatherData.Location location,
+                            String executionId, String extractTime) throws IOException {
+        java.util.Arrays.fill(values, null);
+
+        try (JsonReader reader = new JsonReader(new StringReader(json))) {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String name = reader.nextName();
+                if ("location".equals(name)) {
+                    readLocation(reader);
+                } else if ("current".equals(name)) {
+                    readCurrent(reader);
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+        }
+
+        return renderRow(location, executionId, extractTime, false);
+    }
+
+    /**
+     * Convert one history.json / forecast.json response to CSV rows, one row per hour.
+     * Hourly data has no "current" block: time/time_epoch of the hour are used as
+     * last_updated/localtime, air quality columns are left empty when not returned.
+     */
+    public List<String> transcodeHistory(String json, ExtractWeatherData.Location location,
+                                         String executionId, String extractTime) throws IOException {
+        java.util.Arrays.fill(values, null);
+        List<String[]> hours = new ArrayList<>();
+
+        try (JsonReader reader = new JsonReader(new StringReader(json))) {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String name = reader.nextName();
+                if ("location".equals(name)) {
+                    readLocation(reader);
+                } else if ("forecast".equals(name)) {
+                    readForecast(reader, hours);
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+        }
+
+        // Location block may come after the forecast block: merge it into every hour
+        String[] locationValues = java.util.Arrays.copyOf(values, LOCALTIME + 1);
+        List<String> rows = new ArrayList<>(hours.size());
+        for (String[] hour : hours) {
+            System.arraycopy(hour, 0, values, 0, values.length);
+            for (int i = COUNTRY; i <= TZ_ID; i++) {
+                values[i] = locationValues[i];
+            }
+            rows.add(renderRow(location, executionId, extractTime, true));
+        }
+        return rows;
+    }
+
+    private String renderRow(ExtractWeatherData.Location location, String executionId,
+                             String extractTime, boolean airQualityOptional) {
+        row.setLength(0);
+        row.append(executionId).append(',');
+        row.append(escapeComma(location.getName())).append(',');
+        row.append(location.getCode()).append(',');
+        row.append(location.getRegion()).append(',');
+
+        text(COUNTRY).append(',');
+        fixed(LAT, 4).append(',');
+        fixed(LON, 4).append(',');
+        text(TZ_ID).append(',');
+        integer(LOCALTIME_EPOCH).append(',');
+        text(LOCALTIME).append(',');
+
+        fixed(TEMP_C, 1).append(',');
+        fixed(TEMP_F, 1).append(',');
+        fixed(FEELSLIKE_C, 1).append(',');
+        fixed(FEELSLIKE_F, 1).append(',');
+
+        integer(HUMIDITY).append(',');
+        fixed(WIND_KPH, 1).append(',');
+        fixed(WIND_MPH, 1).append(',');
+        integer(WIND_DEGREE).append(',');
+        text(WIND_DIR).append(',');
+
+        fixed(GUST_KPH, 1).append(',');
+        fixed(GUST_MPH, 1).append(',');
+
+        fixed(PRESSURE_MB, 1).append(',');
+        fixed(PRESSURE_IN, 2).append(',');
+        fixed(PRECIP_MM, 1).append(',');
+        fixed(PRECIP_IN, 2).append(',');
+
+        integer(CLOUD).append(',');
+        fixed(UV, 1).append(',');
+        fixed(VIS_KM, 1).append(',');
+        fixed(VIS_MILES, 1).append(',');
+
+        integer(IS_DAY).append(',');
+
+        row.append('"');
+        text(CONDITION_TEXT).append("\",\"");
+        String icon = required(CONDITION_ICON);
+        if (icon.startsWith("//")) {
+            row.append("https:");
+        }
+        row.append(icon).append("\",");
+        integer(CONDITION_CODE).append(',');
+
+        if (airQualityOptional && values[AQI_US] == null && values[PM2_5] == null) {
+            row.append(",,,,,,,,");
+        } else {
+            integer(AQI_US).append(',');
+            integer(AQI_GB).append(',');
+            fixed(PM2_5, 2).append(',');
+            fixed(PM10, 2).append(',');
+            fixed(CO, 2).append(',');
+            fixed(NO2, 2).append(',');
+            fixed(O3, 2).append(',');
+            fixed(SO2, 2).append(',');
+        }
+
+        text(LAST_UPDATED).append(',');
+        row.append(extractTime);
+
+        return row.toString();
+    }
+
+    // ============================================================
+    // PULL PARSING
+    // ============================================================
+    private void readLocation(JsonReader reader) throws IOException {
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            switch (name) {
+                case "country": read(reader, COUNTRY); break;
+                case "lat": read(reader, LAT); break;
+                case "lon": read(reader, LON); break;
+                case "tz_id": read(reader, TZ_ID); break;
+                case "localtime_epoch": read(reader, LOCALTIME_EPOCH); break;
+                case "localtime": read(reader, LOCALTIME); break;
+                default: reader.skipValue();
+            }
+        }
+        reader.endObject();
+    }
+
+    private void readCurrent(JsonReader reader) throws IOException {
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (!readObservationField(reader, name)) {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+    }
+
+    /**
+     * forecast.forecastday[].hour[]: each hour is stored as a copy of the slot array
+     */
+    private void readForecast(JsonReader reader, List<String[]> hours) throws IOException {
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if (!"forecastday".equals(reader.nextName())) {
+                reader.skipValue();
+                continue;
+            }
+            reader.beginArray();
+            while (reader.hasNext()) {
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    if (!"hour".equals(reader.nextName())) {
+                        reader.skipValue();
+                        continue;
+                    }
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        java.util.Arrays.fill(values, LOCALTIME_EPOCH, values.length, null);
+                        readHour(reader);
+                        hours.add(values.clone());
+                    }
+                    reader.endArray();
+                }
+                reader.endObject();
+            }
+            reader.endArray();
+        }
+        reader.endObject();
+    }
+
+    private void readHour(JsonReader reader) throws IOException {
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if ("time".equals(name)) {
+                read(reader, LAST_UPDATED);
+                values[LOCALTIME] = values[LAST_UPDATED];
+            } else if ("time_epoch".equals(name)) {
+                read(reader, LOCALTIME_EPOCH);
+            } else if (!readObservationField(reader, name)) {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+    }
+
+    /**
+     * Fields shared by "current" and forecast "hour" objects
+     */
+    private boolean readObservationField(JsonReader reader, String name) throws IOException {
+        switch (name) {
+            case "temp_c": read(reader, TEMP_C); return true;
+            case "temp_f": read(reader, TEMP_F); return true;
+            case "feelslike_c": read(reader, FEELSLIKE_C); return true;
+            case "feelslike_f": read(reader, FEELSLIKE_F); return true;
+            case "humidity": read(reader, HUMIDITY); return true;
+            case "wind_kph": read(reader, WIND_KPH); return true;
+            case "wind_mph": read(reader, WIND_MPH); return true;
+            case "wind_degree": read(reader, WIND_DEGREE); return true;
+            case "wind_dir": read(reader, WIND_DIR); return true;
+            case "gust_kph": read(reader, GUST_KPH); return true;
+            case "gust_mph": read(reader, GUST_MPH); return true;
+            case "pressure_mb": read(reader, PRESSURE_MB); return true;
+            case "pressure_in": read(reader, PRESSURE_IN); return true;
+            case "precip_mm": read(reader, PRECIP_MM); return true;
+            case "precip_in": read(reader, PRECIP_IN); return true;
+            case "cloud": read(reader, CLOUD); return true;
+            case "uv": read(reader, UV); return true;
+            case "vis_km": read(reader, VIS_KM); return true;
+            case "vis_miles": read(reader, VIS_MILES); return true;
+            case "is_day": read(reader, IS_DAY); return true;
+            case "last_updated": read(reader, LAST_UPDATED); return true;
+            case "condition": readCondition(reader); return true;
+            case "air_quality": readAirQuality(reader); return true;
+            default:
+                return false;
+        }
+    }
+
+    private void readCondition(JsonReader reader) throws IOException {
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            switch (name) {
+                case "text": read(reader, CONDITION_TEXT); break;
+                case "icon": read(reader, CONDITION_ICON); break;
+                case "code": read(reader, CONDITION_CODE); break;
+                default: reader.skipValue();
+            }
+        }
+        reader.endObject();
+    }
+
+    private void readAirQuality(JsonReader reader) throws IOException {
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            switch (name) {
+                case "us-epa-index": read(reader, AQI_US); break;
+                case "gb-defra-index": read(reader, AQI_GB); break;
+                case "pm2_5": read(reader, PM2_5); break;
+                case "pm10": read(reader, PM10); break;
+                case "co": read(reader, CO); break;
+                case "no2": read(reader, NO2); break;
+                case "o3": read(reader, O3); break;
+                case "so2": read(reader, SO2); break;
+                default: reader.skipValue();
+            }
+        }
+        reader.endObject();
+    }
+
+    /**
+     * Keep the raw JSON text of a scalar (numbers stay as their literal)
+     */
+    private void read(JsonReader reader, int slot) throws IOException {
+        if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            values[slot] = null;
+        } else {
+            values[slot] = reader.nextString();
+        }
+    }
+
+    // ============================================================
+    // RENDERING
+    // ============================================================
+    private String required(int slot) {
+        String value = values[slot];
+        if (value == null) {
+            throw new IllegalStateException("Missing field in API response: " + FIELD_NAMES[slot]);
+        }
+        return value;
+    }
+
+    private StringBuilder text(int slot) {
+        return row.append(required(slot));
+    }
+
+    /**
+     * Integer column (%d): fractional literals are truncated like JsonElement.getAsInt()
+     */
+    private StringBuilder integer(int slot) {
+        String literal = required(slot);
+        if (isPlainInteger(literal)) {
+            return row.append(literal);
+        }
+        return row.append(new BigDecimal(literal).longValue());
+    }
+
+    /**
+     * Fixed-point column (%.Nf) with HALF_UP rounding on the decimal literal
+     */
+    private StringBuilder fixed(int slot, int decimals) {
+        appendFixed(row, required(slot), decimals);
+        return row;
+    }
+
+    void appendFixed(StringBuilder sb, String literal, int decimals) {
+        int len = literal.length();
+        int start = 0;
+        boolean negative = false;
+        if (len > 0 && (literal.charAt(0) == '-' || literal.charAt(0) == '+')) {
+            negative = literal.charAt(0) == '-';
+            start = 1;
+        }
+
+        int dot = -1;
+        for (int i = start; i < len; i++) {
+            char c = literal.charAt(i);
+            if (c == '.' && dot < 0) {
+                dot = i;
+            } else if (c < '0' || c > '9') {
+                // Exponent or unexpected text: slow path
+                sb.append(new BigDecimal(literal).setScale(decimals, RoundingMode.HALF_UP).toPlainString());
+                return;
+            }
+        }
+        if (len == start) {
+            throw new NumberFormatException("Empty number");
+        }
+
+        int intEnd = dot < 0 ? len : dot;
+        int fracStart = dot < 0 ? len : dot + 1;
+        int fracLen = len - fracStart;
+        int intLen = intEnd - start;
+
+        // digits = integer part + first `decimals` fraction digits (zero padded)
+        int count = intLen + decimals;
+        if (digits.length < count + 1) {
+            digits = new char[count + 1];
+        }
+        int n = 0;
+        for (int i = start; i < intEnd; i++) {
+            digits[n++] = literal.charAt(i);
+        }
+        for (int i = 0; i < decimals; i++) {
+            digits[n++] = i < fracLen ? literal.charAt(fracStart + i) : '0';
+        }
+
+        // HALF_UP: only the first dropped digit matters
+        boolean carry = fracLen > decimals && literal.charAt(fracStart + decimals) >= '5';
+        for (int i = n - 1; carry && i >= 0; i--) {
+            if (digits[i] == '9') {
+                digits[i] = '0';
+            } else {
+                digits[i]++;
+                carry = false;
+            }
+        }
+
+        if (negative) {
+            sb.append('-');
+        }
+        if (carry) {
+            sb.append('1');
+        }
+        int intDigits = n - decimals;
+        if (intDigits == 0) {
+            sb.append('0');
+        } else {
+            sb.append(digits, 0, intDigits);
+        }
+        if (decimals > 0) {
+            sb.append('.').append(digits, intDigits, decimals);
+        }
+    }
+
+    private static boolean isPlainInteger(String literal) {
+        int len = literal.length();
+        int start = len > 0 && literal.charAt(0) == '-' ? 1 : 0;
+        if (len == start) {
+            return false;
+        }
+        for (int i = start; i < len; i++) {
+            char c = literal.charAt(i);
+            if (c < '0' || c > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String escapeComma(String value) {
+        if (value.contains(",")) {
+            return "\"" + value + "\"";
+        }
+        return value;
+    }
+}
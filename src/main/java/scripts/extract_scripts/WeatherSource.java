@@ -0,0 +1,40 @@
+package scripts.extract_scripts;
+
+import java.io.IOException;
+
+/**
+ * One weather provider plugged into the extract.
+ *
+ * A source is split in two steps so the engine can journal / retry them separately:
+ * - fetch   : call the provider for one location and return the raw payload
+ * - toCsvRow: convert that payload into the canonical CSV row (getCsvHeader()
+ *             without the trailing source_system column, the engine appends getName())
+ *
+ * Implementations must be thread safe: fetch/toCsvRow are called from many
+ * virtual threads at once. Sources are created by WeatherSources.fromConfig; a plugin from
+ * any package (source_type = its class name) needs a public constructor taking its
+ * <api><source name="..."> element and can build its client with WeatherApiClient.fromConfig.
+ */
+public interface WeatherSource {
+
+    /**
+     * Value written to the source_system column (e.g. WeatherAPI)
+     */
+    String getName();
+
+    /**
+     * Call the provider for one location, return the raw response body
+     */
+    String fetch(ExtractWeatherData.Location location) throws IOException, InterruptedException;
+
+    /**
+     * Convert a raw response body into the canonical CSV row
+     */
+    String toCsvRow(String payload, ExtractWeatherData.Location location,
+                    String executionId, String extractTime) throws IOException;
+
+    /**
+     * HTTP client of this source (rate limit, retry, stats for log_src)
+     */
+    WeatherApiClient getApiClient();
+}
@@ -0,0 +1,166 @@
+package scripts.extract_scripts;
+
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+import utils.LoadConfig;
+
+import java.io.IOException;
+import java.lang.reflect.Constructor;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Providers selected by <configSource><source_type> (comma separated, in priority order):
+ * - weatherapi (or the legacy value "api") -> WeatherApiSource, config <api><weather>
+ * - openmeteo                               -> OpenMeteoSource,  config <api><openMeteo>
+ * - any other value is a class name implementing WeatherSource with a
+ *   public constructor (Element config), config <api><source name="...">
+ *
+ * <api><routing><strategy>:
+ * - roundrobin: location i starts on provider i % n (spreads quota over providers)
+ * - failover  : every location starts on the first provider
+ * In both cases a failed location is retried on the next providers in order.
+ */
+public class WeatherSources {
+
+    public static final String ROUND_ROBIN = "roundrobin";
+    public static final String FAILOVER = "failover";
+
+    private final List<WeatherSource> sources;
+    private final String strategy;
+
+    public WeatherSources(List<WeatherSource> sources, String strategy) {
+        if (sources.isEmpty()) {
+            throw new IllegalArgumentException("No weather source configured");
+        }
+        this.sources = sources;
+        this.strategy = FAILOVER.equalsIgnoreCase(strategy) ? FAILOVER : ROUND_ROBIN;
+    }
+
+    public static WeatherSources fromConfig(LoadConfig config) throws IOException {
+        Element configSource = LoadConfig.getElement(config.getXmlDoc(), "configSource");
+        Element api = LoadConfig.getElement(config.getXmlDoc(), "api");
+        Element routing = LoadConfig.getChildElement(api, "routing");
+
+        String sourceType = LoadConfig.getValue(configSource, "source_type");
+        if (sourceType.isEmpty()) {
+            sourceType = "weatherapi";
+        }
+
+        List<WeatherSource> sources = new ArrayList<>();
+        for (String type : sourceType.split(",")) {
+            sources.add(create(type.trim(), api));
+        }
+
+        // One on-disk response cache shared by every provider (keys include the host)
+        ResponseCache cache = ResponseCache.fromConfig(LoadConfig.getChildElement(api, "cache"));
+        if (cache != null) {
+            for (WeatherSource source : sources) {
+                source.getApiClient().setCache(cache);
+            }
+        }
+        return new WeatherSources(sources, LoadConfig.getValue(routing, "strategy"));
+    }
+
+    private static WeatherSource create(String type, Element api) {
+        switch (type.toLowerCase()) {
+            case "api":
+            case "weatherapi":
+                return WeatherApiSource.fromConfig(LoadConfig.getChildElement(api, "weather"));
+            case "openmeteo":
+                return OpenMeteoSource.fromConfig(LoadConfig.getChildElement(api, "openMeteo"));
+            default:
+                return createPlugin(type, api);
+        }
+    }
+
+    /**
+     * Custom provider: class name in source_type, config in <api><source name="class name">
+     */
+    private static WeatherSource createPlugin(String className, Element api) {
+        Element pluginConfig = null;
+        NodeList nodes = api.getElementsByTagName("source");
+        for (int i = 0; i < nodes.getLength(); i++) {
+            Element element = (Element) nodes.item(i);
+            if (className.equals(element.getAttribute("name"))) {
+                pluginConfig = element;
+            }
+        }
+
+        try {
+            Class<?> type = Class.forName(className);
+            if (!WeatherSource.class.isAssignableFrom(type)) {
+                throw new IllegalArgumentException(className + " does not implement WeatherSource");
+            }
+            Constructor<?> constructor = type.getConstructor(Element.class);
+            return (WeatherSource) constructor.newInstance(pluginConfig);
+        } catch (ClassNotFoundException e) {
+            throw new IllegalArgumentException("Unknown source_type: " + className, e);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalArgumentException("Cannot create weather source " + className + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Providers to try for the location at position index, first = primary
+     */
+    public List<WeatherSource> orderFor(int index) {
+        int start = ROUND_ROBIN.equals(strategy) ? index % sources.size() : 0;
+        List<WeatherSource> order = new ArrayList<>(sources.size());
+        for (int i = 0; i < sources.size(); i++) {
+            order.add(sources.get((start + i) % sources.size()));
+        }
+        return order;
+    }
+
+    public List<WeatherSource> getSources() {
+        return sources;
+    }
+
+    public String getStrategy() {
+        return strategy;
+    }
+
+    public int getCallCount() {
+        int total = 0;
+        for (WeatherSource source : sources) {
+            total += source.getApiClient().getCallCount();
+        }
+        return total;
+    }
+
+    public int getRetryCount() {
+        int total = 0;
+        for (WeatherSource source : sources) {
+            total += source.getApiClient().getRetryCount();
+        }
+        return total;
+    }
+
+    public int getCacheHits() {
+        int total = 0;
+        for (WeatherSource source : sources) {
+            total += source.getApiClient().getCacheHits() + source.getApiClient().getNotModifiedCount();
+        }
+        return total;
+    }
+
+    public double getAvgLatencyMs() {
+        double totalLatency = 0;
+        int calls = 0;
+        for (WeatherSource source : sources) {
+            WeatherApiClient client = source.getApiClient();
+            totalLatency += client.getAvgLatencyMs() * client.getCallCount();
+            calls += client.getCallCount();
+        }
+        return calls == 0 ? 0 : totalLatency / calls;
+    }
+
+    public long getMaxLatencyMs() {
+        long max = 0;
+        for (WeatherSource source : sources) {
+            max = Math.max(max, source.getApiClient().getMaxLatencyMs());
+        }
+        return max;
+    }
+}
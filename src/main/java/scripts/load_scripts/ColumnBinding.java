@@ -0,0 +1,220 @@
+package scripts.load_scripts;
+
+import utils.RecordFileReader;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Declarative mapping of one target column to the extract file, compiled once per file.
+ *
+ * - column("a", "b"): first non-empty value of the source columns a, b (renamed columns)
+ * - constant(v): same value for every row
+ * - value(slot): value computed per row by the loader (payload, batch id...)
+ * - asDouble / asLong / asInt: typed read (no parsing for the binary format)
+ * - ifBlank(v): v when the cell is empty or the column is missing from the file
+ *
+ * compile() resolves the names against the file header into index arrays, so reading
+ * a row is an array walk without name lookups; missing columns are reported once.
+ * A typed cell that is not blank but is not a valid number is bound as null and
+ * reported to the InvalidValueHandler given to bind().
+ */
+public class ColumnBinding {
+
+    private enum Kind { COLUMN, CONSTANT, VALUE }
+
+    private enum Type { STRING, DOUBLE, LONG, INT }
+
+    private final Kind kind;
+    private final String[] sources;
+    private final Object constant;
+    private final int slot;
+    private Type type = Type.STRING;
+    private Object blankValue;
+
+    private ColumnBinding(Kind kind, String[] sources, Object constant, int slot) {
+        this.kind = kind;
+        this.sources = sources;
+        this.constant = constant;
+        this.slot = slot;
+    }
+
+    public static ColumnBinding column(String... sources) {
+        return new ColumnBinding(Kind.COLUMN, sources, null, -1);
+    }
+
+    public static ColumnBinding constant(Object value) {
+        return new ColumnBinding(Kind.CONSTANT, new String[0], value, -1);
+    }
+
+    public static ColumnBinding value(int slot) {
+        return new ColumnBinding(Kind.VALUE, new String[0], null, slot);
+    }
+
+    public ColumnBinding asDouble() {
+        type = Type.DOUBLE;
+        return this;
+    }
+
+    public ColumnBinding asLong() {
+        type = Type.LONG;
+        return this;
+    }
+
+    public ColumnBinding asInt() {
+        type = Type.INT;
+        return this;
+    }
+
+    public ColumnBinding ifBlank(Object value) {
+        blankValue = value;
+        return this;
+    }
+
+    /**
+     * Receives typed cells that could not be converted
+     */
+    public interface InvalidValueHandler {
+        void invalid(String table, String column, String sourceColumn, String value, String type);
+    }
+
+    /**
+     * Target table with one binding per column, in column order
+     */
+    public static class TableMapping {
+        private final String table;
+        private final List<String> columns = new ArrayList<>();
+        private final List<ColumnBinding> bindings = new ArrayList<>();
+        private String jsonColumn;
+
+        public TableMapping(String table) {
+            this.table = table;
+        }
+
+        public TableMapping map(String column, ColumnBinding binding) {
+            columns.add(column);
+            bindings.add(binding);
+            return this;
+        }
+
+        /**
+         * Column written as jsonb (needs a cast in INSERT mode)
+         */
+        public TableMapping json(String column) {
+            jsonColumn = column;
+            return this;
+        }
+
+        public String getTable() {
+            return table;
+        }
+
+        public StagingLoadPipeline.Table toTable() {
+            return new StagingLoadPipeline.Table(table, columns.toArray(new String[0]), jsonColumn);
+        }
+
+        /**
+         * Resolve the bindings against the header of an opened file
+         */
+        public Plan compile(RecordFileReader reader) {
+            return new Plan(reader, table, columns.toArray(new String[0]), bindings.toArray(new ColumnBinding[0]));
+        }
+    }
+
+    /**
+     * Bindings resolved to column indexes for one file
+     */
+    public static class Plan {
+        private final String table;
+        private final String[] targets;
+        private final ColumnBinding[] bindings;
+        private final String[] header;
+        private final int[][] indexes;
+        private final List<String> missing = new ArrayList<>();
+
+        private Plan(RecordFileReader reader, String table, String[] targets, ColumnBinding[] bindings) {
+            this.table = table;
+            this.targets = targets;
+            this.bindings = bindings;
+            this.header = reader.getColumns();
+            this.indexes = new int[bindings.length][];
+            for (int b = 0; b < bindings.length; b++) {
+                List<Integer> present = new ArrayList<>();
+                for (String source : bindings[b].sources) {
+                    int index = reader.indexOf(source);
+                    if (index >= 0) present.add(index);
+                }
+                if (bindings[b].kind == Kind.COLUMN && present.isEmpty()) {
+                    missing.add(String.join("|", bindings[b].sources));
+                }
+                indexes[b] = present.stream().mapToInt(Integer::intValue).toArray();
+            }
+        }
+
+        /**
+         * Source columns not in the file (their targets get null or the ifBlank value)
+         */
+        public List<String> getMissingColumns() {
+            return missing;
+        }
+
+        /**
+         * Values of the current row in target column order
+         *
+         * @param invalid gets the typed cells that were bound as null, may be null
+         */
+        public Object[] bind(RecordFileReader reader, Object[] rowValues, InvalidValueHandler invalid) {
+            Object[] row = new Object[bindings.length];
+            for (int b = 0; b < bindings.length; b++) {
+                ColumnBinding binding = bindings[b];
+                switch (binding.kind) {
+                    case CONSTANT:
+                        row[b] = binding.constant;
+                        break;
+                    case VALUE:
+                        row[b] = rowValues[binding.slot];
+                        break;
+                    default:
+                        row[b] = read(reader, b, invalid);
+                }
+            }
+            return row;
+        }
+
+        private Object read(RecordFileReader reader, int b, InvalidValueHandler invalid) {
+            ColumnBinding binding = bindings[b];
+            // First source column with a value (renamed / fallback columns)
+            int column = -1;
+            for (int index : indexes[b]) {
+                if (!reader.isBlank(index)) {
+                    column = index;
+                    break;
+                }
+            }
+            if (column < 0) {
+                return binding.blankValue;
+            }
+            Object value;
+            switch (binding.type) {
+                case DOUBLE:
+                    Double d = reader.getDouble(column);
+                    value = d != null && Double.isFinite(d) ? d : null;
+                    break;
+                case LONG:
+                    value = reader.getLong(column);
+                    break;
+                case INT:
+                    Long l = reader.getLong(column);
+                    value = l != null && l == l.intValue() ? l.intValue() : null;
+                    break;
+                default:
+                    return reader.getString(column);
+            }
+            if (value == null && invalid != null) {
+                invalid.invalid(table, targets[b], header[column], reader.getString(column),
+                        binding.type.name().toLowerCase());
+            }
+            return value;
+        }
+    }
+}
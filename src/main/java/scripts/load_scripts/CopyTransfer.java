@@ -0,0 +1,135 @@
+package scripts.load_scripts;
+
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyIn;
+import org.postgresql.copy.CopyOut;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Moves the result of a query from one database into a table of another without
+ * turning it into Java rows:
+ * COPY (SELECT ...) TO STDOUT on the source, COPY ... FROM STDIN on the target.
+ *
+ * A virtual thread reads the source COPY into chunks of CHUNK_BYTES and puts them in a
+ * bounded pipe (<warehouseLoad><pipeChunks>), the caller's thread writes them to the target,
+ * so both connections stream at the same time and memory stays at pipeChunks x CHUNK_BYTES.
+ *
+ * Text format (default) lets PostgreSQL convert between column types. Binary
+ * (<warehouseLoad><copyFormat>binary</copyFormat>) skips text parsing but is only correct when both
+ * sides have the same column types, the caller checks that per table (transfer(..., binary)).
+ */
+public class CopyTransfer {
+
+    private static final int CHUNK_BYTES = 64 * 1024;
+    // End of the source data (compared by reference)
+    private static final byte[] END = new byte[0];
+
+    private final boolean binary;
+    private final int pipeChunks;
+
+    public CopyTransfer(boolean binary, int pipeChunks) {
+        this.binary = binary;
+        this.pipeChunks = Math.max(1, pipeChunks);
+    }
+
+    /**
+     * Binary format configured (used only for tables whose column types match)
+     */
+    public boolean isBinary() {
+        return binary;
+    }
+
+    /**
+     * Stream the rows of select (source) into table (columns) on the target, inside the
+     * target's current transaction; returns the rows written
+     */
+    public long transfer(Connection source, String select, Connection target, String table, String columns,
+                         boolean binary) throws SQLException {
+        String format = binary ? " (FORMAT binary)" : "";
+        CopyOut copyOut = source.unwrap(PGConnection.class).getCopyAPI()
+                .copyOut("COPY (" + select + ") TO STDOUT" + format);
+        BlockingQueue<byte[]> pipe = new ArrayBlockingQueue<>(pipeChunks);
+        SQLException[] readFailure = {null};
+
+        Thread reader = Thread.ofVirtual().name("copy-out-" + table).start(() -> {
+            try {
+                byte[] chunk = new byte[CHUNK_BYTES];
+                int length = 0;
+                byte[] data;
+                // One message per row from the server, sent on in chunks
+                while ((data = copyOut.readFromCopy()) != null) {
+                    if (length > 0 && length + data.length > CHUNK_BYTES) {
+                        pipe.put(Arrays.copyOf(chunk, length));
+                        length = 0;
+                    }
+                    if (data.length >= CHUNK_BYTES) {
+                        pipe.put(data);
+                    } else {
+                        System.arraycopy(data, 0, chunk, length, data.length);
+                        length += data.length;
+                    }
+                }
+                if (length > 0) {
+                    pipe.put(Arrays.copyOf(chunk, length));
+                }
+            } catch (SQLException e) {
+                readFailure[0] = e;
+            } catch (InterruptedException e) {
+                // the writer failed
+                return;
+            } finally {
+                cancel(copyOut);
+            }
+            try {
+                pipe.put(END);
+            } catch (InterruptedException e) {
+                // the writer failed
+            }
+        });
+
+        CopyIn copyIn = null;
+        try {
+            copyIn = target.unwrap(PGConnection.class).getCopyAPI()
+                    .copyIn("COPY " + table + " (" + columns + ") FROM STDIN" + format);
+            byte[] chunk;
+            while ((chunk = pipe.take()) != END) {
+                copyIn.writeToCopy(chunk, 0, chunk.length);
+            }
+            reader.join();
+            if (readFailure[0] != null) {
+                throw new SQLException("Reading from source failed: " + readFailure[0].getMessage(), readFailure[0]);
+            }
+            return copyIn.endCopy();
+
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Transfer into " + table + " interrupted", e);
+        } finally {
+            if (copyIn != null && copyIn.isActive()) {
+                copyIn.cancelCopy();
+            }
+            // The source connection is only usable again once its COPY is cancelled
+            reader.interrupt();
+            try {
+                reader.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private static void cancel(CopyOut copyOut) {
+        try {
+            if (copyOut.isActive()) {
+                copyOut.cancelCopy();
+            }
+        } catch (SQLException e) {
+            System.err.println("⚠️ Failed to cancel COPY TO STDOUT: " + e.getMessage());
+        }
+    }
+}
@@ -2,12 +2,18 @@ package scripts.load_scripts;
 
 import utils.DBConn;
 import utils.EmailSender;
+import utils.FactPartitions;
 import utils.LoadConfig;
 import org.w3c.dom.Element;
 
 import java.sql.*;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 public class LoadToDataWarehouse {
 
@@ -17,7 +23,6 @@ public class LoadToDataWarehouse {
     private static String executionId;
 
     private static final DateTimeFormatter dtf = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
-    private static final DateTimeFormatter dtf_date = DateTimeFormatter.ofPattern("yyyy-MM-dd");
 
     // ✅ STATIC BLOCK FOR DEBUG
     static {
@@ -76,7 +81,7 @@ public class LoadToDataWarehouse {
             System.out.println("[DEBUG] Username: " + username);
             System.out.println("[DEBUG] Password: " + (password.isEmpty() ? "EMPTY!" : "***"));
 
-            DBConn db = new DBConn(url, username, password);
+            DBConn db = DBConn.fromConfig(control);
 
             // Test connection
             db.executeQuery("SELECT 1", rs -> {
@@ -123,7 +128,7 @@ public class LoadToDataWarehouse {
             System.out.println("[DEBUG] Username: " + username);
             System.out.println("[DEBUG] Password: " + (password.isEmpty() ? "EMPTY!" : "***"));
 
-            DBConn db = new DBConn(url, username, password);
+            DBConn db = DBConn.fromConfig(staging);
 
             // Test connection
             db.executeQuery("SELECT 1", rs -> {
@@ -170,7 +175,7 @@ public class LoadToDataWarehouse {
             System.out.println("[DEBUG] Username: " + username);
             System.out.println("[DEBUG] Password: " + (password.isEmpty() ? "EMPTY!" : "***"));
 
-            DBConn db = new DBConn(url, username, password);
+            DBConn db = DBConn.fromConfig(warehouse);
 
             // Test connection
             db.executeQuery("SELECT 1", rs -> {
@@ -380,7 +385,7 @@ public class LoadToDataWarehouse {
      * Step 7: Load data to warehouse
      * ============================================================
      */
-    private static int loadToWarehouse(String execId) throws Exception {
+    private static int loadToWarehouse(String execId, CopyTransfer transfer) throws Exception {
         System.out.println("[Step 7] Starting Load to Warehouse...");
         int total = 0;
 
@@ -390,12 +395,12 @@ public class LoadToDataWarehouse {
             connWarehouse.setAutoCommit(false);
 
             // 1. DIMENSION TABLES: Load/Merge Incremental
-            total += loadDimensionIncremental(connWarehouse, connStaging, "dim_location", "location_id");
-            total += loadDimensionIncremental(connWarehouse, connStaging, "dim_weather_condition", "condition_id");
+            total += loadDimensionIncremental(connWarehouse, connStaging, transfer, "dim_location", "location_id");
+            total += loadDimensionIncremental(connWarehouse, connStaging, transfer, "dim_weather_condition", "condition_id");
 
             // 2. FACT TABLES: Load today's data only (Incremental/Daily Refresh)
-            total += loadFactDailyIncremental(connWarehouse, connStaging, "fact_weather_daily", "observation_date");
-            total += loadFactDailyIncremental(connWarehouse, connStaging, "fact_air_quality_daily", "observation_time");
+            total += loadFactDailyIncremental(connWarehouse, connStaging, transfer, "fact_weather_daily");
+            total += loadFactDailyIncremental(connWarehouse, connStaging, transfer, "fact_air_quality_daily");
 
             connWarehouse.commit();
             System.out.println("[Step 7] Warehouse load completed. Total records: " + total);
@@ -403,106 +408,70 @@ public class LoadToDataWarehouse {
         return total;
     }
 
+    /**
+     * <warehouseLoad>: COPY format and pipe size of the staging -> warehouse transfer
+     */
+    private static CopyTransfer newTransfer(LoadConfig config) {
+        Element warehouseLoad = LoadConfig.getElement(config.getXmlDoc(), "warehouseLoad");
+        String pipeChunks = LoadConfig.getValue(warehouseLoad, "pipeChunks");
+        return new CopyTransfer("binary".equalsIgnoreCase(LoadConfig.getValue(warehouseLoad, "copyFormat")),
+                pipeChunks.isEmpty() ? 16 : Integer.parseInt(pipeChunks));
+    }
+
     /**
      * ============================================================
      * Load fact table with daily incremental strategy
      * ============================================================
+     * Today's rows are selected and replaced by a range on observation_time, so a monthly
+     * partitioned fact table (utils.FactPartitions) only touches the partition of this month:
+     * the rows are deleted from and copied into that partition directly.
      */
-    private static int loadFactDailyIncremental(Connection warehouse, Connection staging,
-                                                String tableName, String dateColumnName) throws SQLException {
-
-        String todayDate = LocalDateTime.now().format(dtf_date);
-        int totalRows = 0;
+    private static int loadFactDailyIncremental(Connection warehouse, Connection staging, CopyTransfer transfer,
+                                                String tableName) throws SQLException {
 
-        System.out.print(" Loading  " + tableName + " : ");
+        LocalDate today = LocalDate.now();
 
-        String whereClause;
-        if (dateColumnName.equals("observation_time")) {
-            whereClause = String.format("DATE(%s) = CAST(? AS DATE)", dateColumnName);
-        } else {
-            whereClause = String.format("%s = CAST(? AS DATE)", dateColumnName);
-        }
+        String target = FactPartitions.targetTable(warehouse, tableName, today);
+        System.out.print(" Loading  " + target + " : ");
 
         // Delete today's data in warehouse (to handle re-run)
         try (Statement delStmt = warehouse.createStatement()) {
-            String castedDate = "'" + todayDate + "'::DATE";
-            String deleteSql;
-            if (dateColumnName.equals("observation_time")) {
-                deleteSql = String.format("DELETE FROM %s WHERE DATE(%s) = %s", tableName, dateColumnName, castedDate);
-            } else {
-                deleteSql = String.format("DELETE FROM %s WHERE %s = %s", tableName, dateColumnName, castedDate);
-            }
-
-            int deletedRows = delStmt.executeUpdate(deleteSql);
+            delStmt.executeUpdate("DELETE FROM " + target + " WHERE " + FactPartitions.dayRange(today));
         }
 
         String columns = getColumnList(staging, tableName);
-        String placeholders = columns.replaceAll("[^,]+", "?");
-        String insertSql = "INSERT INTO " + tableName + " (" + columns + ") VALUES (" + placeholders + ")";
-        String selectSql = "SELECT " + columns + " FROM " + tableName + " WHERE " + whereClause;
-
-        try (PreparedStatement ps = warehouse.prepareStatement(insertSql);
-             PreparedStatement sel = staging.prepareStatement(selectSql)) {
-
-            sel.setString(1, todayDate);
-
-            int batch = 0;
-            try (ResultSet rs = sel.executeQuery()) {
-                while (rs.next()) {
-                    for (int i = 1; i <= rs.getMetaData().getColumnCount(); i++) {
-                        ps.setObject(i, rs.getObject(i));
-                    }
-                    ps.addBatch();
-                    batch++;
-
-                    if (batch >= 5000) {
-                        totalRows += ps.executeBatch().length;
-                        batch = 0;
-                    }
-                }
-                if (batch > 0) totalRows += ps.executeBatch().length;
-            }
-        }
+        long totalRows = transfer.transfer(staging,
+                "SELECT " + columns + " FROM " + tableName + " WHERE " + FactPartitions.dayRange(today),
+                warehouse, target, columns, useBinary(transfer, staging, warehouse, tableName));
 
         System.out.println(totalRows + " rows.");
-        return totalRows;
+        return (int) totalRows;
     }
 
     /**
      * ============================================================
      * Load dimension table with incremental strategy
      * ============================================================
+     * COPY cannot skip existing keys: the staging rows are copied into a temp table,
+     * then inserted with ON CONFLICT DO NOTHING.
      */
-    private static int loadDimensionIncremental(Connection warehouse, Connection staging,
+    private static int loadDimensionIncremental(Connection warehouse, Connection staging, CopyTransfer transfer,
                                                 String tableName, String pkColumnName) throws SQLException {
 
         System.out.print(" Loading  " + tableName + " : ");
-        int totalRows = 0;
 
         String columns = getColumnList(staging, tableName);
-        String placeholders = columns.replaceAll("[^,]+", "?");
+        String copyTable = "copy_" + tableName;
+        int totalRows;
 
-        String insertSql = "INSERT INTO " + tableName + " (" + columns + ") VALUES (" + placeholders + ") ON CONFLICT (" + pkColumnName + ") DO NOTHING";
+        try (Statement stmt = warehouse.createStatement()) {
+            stmt.execute("CREATE TEMP TABLE " + copyTable + " (LIKE " + tableName + " INCLUDING DEFAULTS) ON COMMIT DROP");
+            long copied = transfer.transfer(staging, "SELECT " + columns + " FROM " + tableName,
+                    warehouse, copyTable, columns, useBinary(transfer, staging, warehouse, tableName));
 
-        try (PreparedStatement ps = warehouse.prepareStatement(insertSql);
-             Statement sel = staging.createStatement()) {
-
-            try (ResultSet rs = sel.executeQuery("SELECT " + columns + " FROM " + tableName)) {
-                int batch = 0;
-                while (rs.next()) {
-                    for (int i = 1; i <= rs.getMetaData().getColumnCount(); i++) {
-                        ps.setObject(i, rs.getObject(i));
-                    }
-                    ps.addBatch();
-                    batch++;
-
-                    if (batch >= 5000) {
-                        totalRows += ps.executeBatch().length;
-                        batch = 0;
-                    }
-                }
-                if (batch > 0) totalRows += ps.executeBatch().length;
-            }
+            totalRows = stmt.executeUpdate("INSERT INTO " + tableName + " (" + columns + ") " +
+                    "SELECT " + columns + " FROM " + copyTable + " ON CONFLICT (" + pkColumnName + ") DO NOTHING");
+            System.out.print(copied + " copied, ");
         }
 
         System.out.println(totalRows + " rows.");
@@ -515,20 +484,65 @@ public class LoadToDataWarehouse {
      * ============================================================
      */
     private static String getColumnList(Connection conn, String tableName) throws SQLException {
-        String sql =
-                "SELECT string_agg('\"' || column_name || '\"', ',') " +
-                        "FROM information_schema.columns " +
-                        "WHERE table_name = ? AND table_schema = current_schema()";
+        StringBuilder columns = new StringBuilder();
+        for (String column : getColumnTypes(conn, tableName).keySet()) {
+            if (columns.length() > 0) columns.append(',');
+            columns.append('"').append(column).append('"');
+        }
+        return columns.toString();
+    }
 
+    /**
+     * Column name -> full type (with length / precision) in table order
+     */
+    private static Map<String, String> getColumnTypes(Connection conn, String tableName) throws SQLException {
+        String sql =
+                "SELECT c.column_name, format_type(a.atttypid, a.atttypmod) " +
+                        "FROM information_schema.columns c " +
+                        "JOIN pg_attribute a ON a.attrelid = to_regclass(quote_ident(c.table_schema) || '.' || quote_ident(c.table_name)) " +
+                        "   AND a.attname = c.column_name " +
+                        "WHERE c.table_name = ? AND c.table_schema = current_schema() " +
+                        "ORDER BY c.ordinal_position";
+
+        Map<String, String> types = new LinkedHashMap<>();
         try (PreparedStatement ps = conn.prepareStatement(sql)) {
             ps.setString(1, tableName);
             try (ResultSet rs = ps.executeQuery()) {
-                if (rs.next() && rs.getString(1) != null)
-                    return rs.getString(1);
+                while (rs.next()) {
+                    types.put(rs.getString(1), rs.getString(2));
+                }
             }
         }
 
-        throw new SQLException("Cannot get columns for table: " + tableName);
+        if (types.isEmpty()) {
+            throw new SQLException("Cannot get columns for table: " + tableName);
+        }
+        return types;
+    }
+
+    /**
+     * Binary COPY sends each value in the source type's wire format: an int4 / int8 or
+     * numeric / float8 difference fails, timestamp / timestamptz is silently reinterpreted.
+     * It is only used when every staging column has the same type in the warehouse.
+     */
+    private static boolean useBinary(CopyTransfer transfer, Connection staging, Connection warehouse,
+                                     String tableName) throws SQLException {
+        if (!transfer.isBinary()) {
+            return false;
+        }
+        Map<String, String> warehouseTypes = getColumnTypes(warehouse, tableName);
+        List<String> mismatches = new ArrayList<>();
+        for (Map.Entry<String, String> column : getColumnTypes(staging, tableName).entrySet()) {
+            String warehouseType = warehouseTypes.get(column.getKey());
+            if (!column.getValue().equals(warehouseType)) {
+                mismatches.add(column.getKey() + " " + column.getValue() + " -> " + warehouseType);
+            }
+        }
+        if (mismatches.isEmpty()) {
+            return true;
+        }
+        System.out.print("(text COPY, column types differ: " + String.join(", ", mismatches) + ") ");
+        return false;
     }
 
     /**
@@ -585,8 +599,11 @@ public class LoadToDataWarehouse {
             // Step 6: Prepare warehouse load process
             executionId = prepareWarehouseLoadProcess();
 
+            // Step 6b: Month partitions of the facts (create ahead, retention)
+            new FactPartitions(config).maintain(warehouseDB);
+
             // Step 7: Load data to warehouse
-            int total = loadToWarehouse(executionId);
+            int total = loadToWarehouse(executionId, newTransfer(config));
 
             // Step 8: Update log status
             updateProcessLogStatus(executionId, "success", total, 0,
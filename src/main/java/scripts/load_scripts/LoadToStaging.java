@@ -5,23 +5,33 @@ import com.google.gson.JsonObject;
 import org.w3c.dom.Element;
 import utils.DBConn;
 import utils.EmailSender;
+import utils.FileManifest;
 import utils.LoadConfig;
+import utils.RecordFileReader;
+import utils.RecordFormat;
+import utils.StagingBatchLog;
 
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileReader;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
-import java.sql.Connection;
-import java.sql.PreparedStatement;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.sql.SQLException;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import static scripts.load_scripts.ColumnBinding.column;
+import static scripts.load_scripts.ColumnBinding.constant;
+import static scripts.load_scripts.ColumnBinding.value;
 
 public class LoadToStaging {
 
@@ -61,21 +71,13 @@ public class LoadToStaging {
         try {
             // 1. Control DB
             Element control = LoadConfig.getElement(config.getXmlDoc(), "control");
-            controlDB = new DBConn(
-                    LoadConfig.getValue(control, "url"),
-                    LoadConfig.getValue(control, "username"),
-                    LoadConfig.getValue(control, "password")
-            );
+            controlDB = DBConn.fromConfig(control);
             System.out.println("[Step 2] Connected to Control DB");
 
             // 2. Staging DB
             Element database = LoadConfig.getElement(config.getXmlDoc(), "database");
             Element staging = LoadConfig.getChildElement(database, "staging");
-            stagingDB = new DBConn(
-                    LoadConfig.getValue(staging, "url"),
-                    LoadConfig.getValue(staging, "username"),
-                    LoadConfig.getValue(staging, "password")
-            );
+            stagingDB = DBConn.fromConfig(staging);
             System.out.println("[Step 2] Connected to Staging DB");
 
         } catch (Exception e) {
@@ -120,12 +122,21 @@ public class LoadToStaging {
      * Step 4: Verify Input File
      * ============================================================
      */
-    public static File verifyInputFile() {
+    public static File verifyInputFile(LoadConfig config) {
         System.out.println("[Step 4] Verifying input CSV file...");
         String dateStr = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd"));
 
-        String csvPath = "data/weatherapi_" + dateStr + ".csv";
+        // Extract output format decides the extension, content is detected by RecordFileReader
+        String csvPath = "data/weatherapi_" + dateStr + RecordFormat.CSV.getExtension();
         File file = new File(csvPath);
+        for (RecordFormat format : RecordFormat.values()) {
+            File candidate = new File("data/weatherapi_" + dateStr + format.getExtension());
+            if (candidate.exists()) {
+                csvPath = candidate.getPath();
+                file = candidate;
+                break;
+            }
+        }
 
         if (!file.exists()) {
             handleError("ERROR: Input File Missing",
@@ -134,9 +145,39 @@ public class LoadToStaging {
             return null; // Unreachable
         }
         System.out.println("[Step 4] File found: " + file.getName());
+
+        try {
+            verifyManifest(config, file);
+        } catch (Exception e) {
+            handleError("ERROR: Input File Incomplete",
+                    "File " + csvPath + " failed manifest verification, nothing was loaded.\n" + e.getMessage(), e);
+            return null; // Unreachable
+        }
         return file;
     }
 
+    /**
+     * Manifest is written by the extract only after the file is complete
+     */
+    static void verifyManifest(LoadConfig config, File file) throws Exception {
+        Element load = LoadConfig.getElement(config.getXmlDoc(), "load");
+        String requireValue = LoadConfig.getValue(load, "requireManifest");
+        boolean requireManifest = requireValue.isEmpty() || Boolean.parseBoolean(requireValue);
+
+        FileManifest manifest = FileManifest.readFor(file.toPath());
+        if (manifest == null) {
+            if (requireManifest) {
+                throw new Exception("Manifest not found: " + FileManifest.pathFor(file.toPath()) +
+                        " (file may still be written or extract crashed)");
+            }
+            System.out.println("[Step 4] WARNING: No manifest for " + file.getName() + ", loading without verification");
+        } else {
+            manifest.verify(file.toPath());
+            System.out.println("[Step 4] Manifest verified: " + file.getName() + ", " + manifest.getRows() +
+                    " rows, sha256 " + manifest.getSha256());
+        }
+    }
+
     /**
      * ============================================================
      * Step 5: Prepare Load (Create Log)
@@ -145,50 +186,57 @@ public class LoadToStaging {
     public static String prepareLoadProcess(String csvPath) {
         System.out.println("[Step 5] Creating process log...");
         try {
-            String processName = "LOD_STG_" + LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd"));
-            String getConfigSql = String.format(
-                    "SELECT get_or_create_config_loadstaging('%s', 'load_staging', '%s', 'staging', 'raw_weather_tables')",
-                    processName, csvPath
-            );
-
-            final int[] configId = {0};
-            controlDB.executeQuery(getConfigSql, rs -> {
-                if (rs.next()) configId[0] = rs.getInt(1);
-            });
-
-            if (configId[0] == 0) {
-                throw new Exception("Failed to get config_process ID");
-            }
-
-            String createLogSql = "SELECT create_new_loadstaging_log(" + configId[0] + ")";
-            final String[] execId = {null};
-            controlDB.executeQuery(createLogSql, rs -> {
-                if (rs.next()) execId[0] = rs.getString(1);
-            });
-
-            if (execId[0] == null) {
-                throw new Exception("Failed to create execution log");
-            }
-
-            System.out.println("[Step 5] Created execution ID: " + execId[0]);
-            return execId[0];
-
+            return createLoadLog(csvPath);
         } catch (Exception e) {
             handleError("ERROR: Prepare Load Failed", "Failed to create log entry.", e);
             return null; // Unreachable
         }
     }
 
+    /**
+     * Execution ids are numbered per day by the control DB, so concurrent loads take turns here
+     */
+    static synchronized String createLoadLog(String csvPath) throws Exception {
+        String processName = "LOD_STG_" + LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd"));
+        String getConfigSql = String.format(
+                "SELECT get_or_create_config_loadstaging('%s', 'load_staging', '%s', 'staging', 'raw_weather_tables')",
+                processName, csvPath
+        );
+
+        final int[] configId = {0};
+        controlDB.executeQuery(getConfigSql, rs -> {
+            if (rs.next()) configId[0] = rs.getInt(1);
+        });
+
+        if (configId[0] == 0) {
+            throw new Exception("Failed to get config_process ID");
+        }
+
+        String createLogSql = "SELECT create_new_loadstaging_log(" + configId[0] + ")";
+        final String[] execId = {null};
+        controlDB.executeQuery(createLogSql, rs -> {
+            if (rs.next()) execId[0] = rs.getString(1);
+        });
+
+        if (execId[0] == null) {
+            throw new Exception("Failed to create execution log");
+        }
+
+        System.out.println("[Step 5] Created execution ID: " + execId[0]);
+        return execId[0];
+    }
+
     /**
      * ============================================================
      * Step 6: Truncate Raw Tables
      * ============================================================
      */
-    public static void truncateRawTables() {
+    public static void truncateRawTables(LoadConfig config) {
         System.out.println("[Step 6] Truncating RAW tables...");
         try {
             String sql = "TRUNCATE TABLE raw_weather_location, raw_weather_condition, " +
-                    "raw_air_quality, raw_weather_observation RESTART IDENTITY CASCADE";
+                    "raw_air_quality, raw_weather_observation" +
+                    (isPayloadStore(config) ? ", raw_payload" : "") + " RESTART IDENTITY CASCADE";
             stagingDB.executeUpdate(sql);
             System.out.println("[Step 6] Raw tables truncated successfully.");
         } catch (Exception e) {
@@ -197,174 +245,410 @@ public class LoadToStaging {
         }
     }
 
+    /**
+     * ============================================================
+     * Step 6 (incremental): Create this batch's partitions
+     * ============================================================
+     * Raw tables are LIST partitioned on load_batch_id (database/sql/staging_incremental.sql),
+     * earlier batches stay until the retention policy drops them.
+     */
+    public static void createBatchPartitions(LoadConfig config, String loadExecId) {
+        System.out.println("[Step 6] Creating RAW partitions for batch " + loadExecId + "...");
+        try {
+            createPartitions(config, loadExecId);
+            System.out.println("[Step 6] Partitions ready.");
+        } catch (Exception e) {
+            handleError("ERROR: Create Partitions Failed",
+                    "Cannot create staging partitions for " + loadExecId +
+                            ". Was database/sql/staging_incremental.sql applied?", e);
+        }
+    }
+
+    static void createPartitions(LoadConfig config, String loadExecId) throws SQLException {
+        for (String table : rawTableNames(isPayloadStore(config))) {
+            String partition = StagingBatchLog.partitionName(table, loadExecId);
+            stagingDB.executeUpdate("CREATE TABLE IF NOT EXISTS " + partition + " PARTITION OF " + table +
+                    " FOR VALUES IN ('" + loadExecId.replace("'", "''") + "')");
+        }
+    }
+
+    private static List<String> rawTableNames(boolean payloadStore) {
+        List<String> names = new ArrayList<>(List.of(
+                "raw_weather_location", "raw_weather_condition", "raw_air_quality", "raw_weather_observation"));
+        if (payloadStore) {
+            names.add("raw_payload");
+        }
+        return names;
+    }
+
+    static void dropBatchPartitions(LoadConfig config, String loadBatchId) throws SQLException {
+        for (String table : rawTableNames(isPayloadStore(config))) {
+            stagingDB.executeUpdate("DROP TABLE IF EXISTS " + StagingBatchLog.partitionName(table, loadBatchId));
+        }
+    }
+
     /**
      * ============================================================
      * Step 7: Load Data Logic
      * ============================================================
+     * <load><mode>copy</mode> (default) streams chunks with COPY FROM STDIN,
+     * if that fails the whole file is reloaded with batched INSERT (mode insert).
+     * The file is parsed once, each raw table is written by its own thread and
+     * connection (StagingLoadPipeline), all of them commit or none.
+     * With <payloadStore>true</payloadStore> the row JSON is written once to raw_payload
+     * (key = SHA-256 of the JSON) and the four raw tables only keep payload_hash.
+     * With <typedStaging>true</typedStaging> measurements are parsed here and stored as
+     * numbers, invalid cells are loaded as NULL and logged in raw_cell_error.
+     * Malformed rows go to raw_reject, <load><maxRejects> fails the load (see StagingRejects).
+     */
+    public static int loadDataToStaging(File file, String loadExecId, LoadConfig config, StagingRejects rejects) {
+        Element load = LoadConfig.getElement(config.getXmlDoc(), "load");
+        String mode = LoadConfig.getValue(load, "mode");
+        boolean copy = mode.isEmpty() || "copy".equalsIgnoreCase(mode);
+        String chunkValue = LoadConfig.getValue(load, "copyChunkRows");
+        int copyChunkRows = chunkValue.isEmpty() ? 5000 : Integer.parseInt(chunkValue);
+        String queueValue = LoadConfig.getValue(load, "queueChunks");
+        int queueChunks = queueValue.isEmpty() ? 4 : Integer.parseInt(queueValue);
+        boolean twoPhaseCommit = Boolean.parseBoolean(LoadConfig.getValue(load, "twoPhaseCommit"));
+        boolean payloadStore = isPayloadStore(config);
+        boolean incremental = isIncremental(config);
+        boolean typed = isTypedStaging(config);
+
+        if (copy) {
+            try {
+                return loadDataToStaging(file, loadExecId, true, copyChunkRows, queueChunks, twoPhaseCommit,
+                        payloadStore, incremental, typed, rejects);
+            } catch (StagingRejects.ThresholdExceededException e) {
+                throw e; // same rows with INSERT
+            } catch (RuntimeException e) {
+                System.err.println("⚠️ COPY load failed (" + e.getMessage() + "), falling back to batched INSERT...");
+            }
+        }
+        return loadDataToStaging(file, loadExecId, false, 100, queueChunks, twoPhaseCommit, payloadStore,
+                incremental, typed, rejects);
+    }
+
+    /**
+     * Reject collector for one load, limit from <load><maxRejects>
      */
-    public static int loadDataToStaging(File file, String loadExecId) {
-        System.out.println("[Step 7] Loading data into Staging...");
+    public static StagingRejects newRejects(LoadConfig config, String loadExecId) {
+        Element load = LoadConfig.getElement(config.getXmlDoc(), "load");
+        return new StagingRejects(loadExecId, LoadConfig.getValue(load, "maxRejects"));
+    }
 
-        Connection conn = null;
-        PreparedStatement psLoc = null, psCond = null, psAir = null, psObs = null;
+    /**
+     * <load><incremental>: append every load into its own partition instead of truncating
+     */
+    public static boolean isIncremental(LoadConfig config) {
+        Element load = LoadConfig.getElement(config.getXmlDoc(), "load");
+        return Boolean.parseBoolean(LoadConfig.getValue(load, "incremental"));
+    }
 
-        // SQL Definitions
-        String sqlLoc = "INSERT INTO raw_weather_location (name, region, country, lat, lon, tz_id, \"localtime\", localtime_epoch, source_system, batch_id, raw_payload) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?::jsonb)";
-        String sqlCond = "INSERT INTO raw_weather_condition (code, text, icon, source_system, batch_id, raw_payload) VALUES (?, ?, ?, ?, ?, ?::jsonb)";
-        String sqlAir = "INSERT INTO raw_air_quality (co, no2, o3, so2, pm2_5, pm10, us_epa_index, gb_defra_index, source_system, batch_id, raw_payload) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?::jsonb)";
-        String sqlObs = "INSERT INTO raw_weather_observation (last_updated, is_day, temp_c, temp_f, feelslike_c, feelslike_f, humidity, cloud, vis_km, vis_miles, uv, gust_mph, gust_kph, wind_mph, wind_kph, wind_degree, wind_dir, pressure_mb, pressure_in, precip_mm, precip_in, location_name, source_system, batch_id, raw_payload) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?::jsonb)";
+    /**
+     * <load><payloadStore>: raw JSON once in raw_payload instead of in every raw table
+     */
+    public static boolean isPayloadStore(LoadConfig config) {
+        Element load = LoadConfig.getElement(config.getXmlDoc(), "load");
+        return Boolean.parseBoolean(LoadConfig.getValue(load, "payloadStore"));
+    }
+
+    /**
+     * <load><typedStaging>: measurements stored as numbers (database/sql/staging_typed.sql)
+     */
+    public static boolean isTypedStaging(LoadConfig config) {
+        Element load = LoadConfig.getElement(config.getXmlDoc(), "load");
+        return Boolean.parseBoolean(LoadConfig.getValue(load, "typedStaging"));
+    }
+
+    // Per-row values of ColumnBinding.value(slot)
+    private static final int PAYLOAD = 0;      // JSON, or its hash in payload store mode
+    private static final int PAYLOAD_JSON = 1;
+    private static final int LOAD_BATCH = 2;
+
+    /**
+     * Raw tables and where each column comes from in the extract file.
+     * Older files miss some columns (e.g. 20251118 has no country/lat/lon/condition_icon),
+     * those get null or their ifBlank default; renamed columns are listed as alternatives.
+     * Typed staging parses the measurements (decimal / integer), otherwise they stay text.
+     */
+    private static List<ColumnBinding.TableMapping> rawTableMappings(boolean payloadStore, boolean incremental,
+                                                                     boolean typed) {
+        List<ColumnBinding.TableMapping> tables = new ArrayList<>();
+        tables.add(new ColumnBinding.TableMapping("raw_weather_location")
+                .map("name", column("location_name"))
+                .map("region", column("region"))
+                .map("country", constant("Vietnam"))
+                .map("lat", column("lat").asDouble())
+                .map("lon", column("lon").asDouble())
+                .map("tz_id", column("tz_id"))
+                .map("localtime", column("localtime"))
+                .map("localtime_epoch", column("localtime_epoch").asLong().ifBlank(0L)));
+        tables.add(new ColumnBinding.TableMapping("raw_weather_condition")
+                .map("code", column("condition_code"))
+                .map("text", column("condition_text"))
+                .map("icon", column("condition_icon", "icon")));
+        tables.add(new ColumnBinding.TableMapping("raw_air_quality")
+                .map("co", decimal(typed, "co"))
+                .map("no2", decimal(typed, "no2"))
+                .map("o3", decimal(typed, "o3"))
+                .map("so2", decimal(typed, "so2"))
+                .map("pm2_5", decimal(typed, "pm2_5"))
+                .map("pm10", decimal(typed, "pm10"))
+                .map("us_epa_index", integer(typed, "aqi_us"))
+                .map("gb_defra_index", integer(typed, "aqi_gb")));
+        tables.add(new ColumnBinding.TableMapping("raw_weather_observation")
+                .map("last_updated", column("last_updated"))
+                .map("is_day", column("is_day").asInt().ifBlank(0))
+                .map("temp_c", decimal(typed, "temp_c"))
+                .map("temp_f", decimal(typed, "temp_f"))
+                .map("feelslike_c", decimal(typed, "feels_like_c"))
+                .map("feelslike_f", decimal(typed, "feels_like_f"))
+                .map("humidity", integer(typed, "humidity"))
+                .map("cloud", integer(typed, "cloud"))
+                .map("vis_km", decimal(typed, "vis_km"))
+                .map("vis_miles", decimal(typed, "vis_miles"))
+                .map("uv", decimal(typed, "uv"))
+                .map("gust_mph", decimal(typed, "gust_mph"))
+                .map("gust_kph", decimal(typed, "gust_kph"))
+                .map("wind_mph", decimal(typed, "wind_mph"))
+                .map("wind_kph", decimal(typed, "wind_kph"))
+                .map("wind_degree", integer(typed, "wind_degree"))
+                .map("wind_dir", column("wind_dir"))
+                .map("pressure_mb", decimal(typed, "pressure_mb"))
+                .map("pressure_in", decimal(typed, "pressure_in"))
+                .map("precip_mm", decimal(typed, "precip_mm"))
+                .map("precip_in", decimal(typed, "precip_in"))
+                .map("location_name", column("location_name")));
+
+        // Common tail: source (files from before multi-provider extract have none), batch, payload
+        for (ColumnBinding.TableMapping table : tables) {
+            table.map("source_system", column("source_system").ifBlank("WeatherAPI"))
+                    .map("batch_id", column("execution_id"));
+            if (payloadStore) {
+                table.map("payload_hash", value(PAYLOAD));
+            } else {
+                table.map("raw_payload", value(PAYLOAD)).json("raw_payload");
+            }
+        }
+        if (payloadStore) {
+            tables.add(new ColumnBinding.TableMapping("raw_payload")
+                    .map("payload_hash", value(PAYLOAD))
+                    .map("payload", value(PAYLOAD_JSON))
+                    .map("batch_id", column("execution_id"))
+                    .json("payload"));
+        }
+        // Partition key
+        if (incremental) {
+            for (ColumnBinding.TableMapping table : tables) {
+                table.map("load_batch_id", value(LOAD_BATCH));
+            }
+        }
+        return tables;
+    }
+
+    private static ColumnBinding decimal(boolean typed, String source) {
+        return typed ? column(source).asDouble() : column(source);
+    }
+
+    private static ColumnBinding integer(boolean typed, String source) {
+        return typed ? column(source).asInt() : column(source);
+    }
+
+    private static int loadDataToStaging(File file, String loadExecId, boolean copy, int chunkRows,
+                                         int queueChunks, boolean twoPhaseCommit, boolean payloadStore,
+                                         boolean incremental, boolean typed, StagingRejects rejects) {
+        List<ColumnBinding.TableMapping> mappings = rawTableMappings(payloadStore, incremental, typed);
+        List<StagingLoadPipeline.Table> tables = new ArrayList<>();
+        for (ColumnBinding.TableMapping mapping : mappings) {
+            tables.add(mapping.toTable());
+        }
+        System.out.println("[Step 7] Loading data into Staging (" + (copy ? "COPY" : "INSERT") +
+                ", " + tables.size() + " writers" + (twoPhaseCommit ? ", two-phase commit" : "") +
+                (payloadStore ? ", payload store" : "") + (typed ? ", typed" : "") + ")...");
+
+        StagingLoadPipeline pipeline = new StagingLoadPipeline(stagingDB, tables, copy, chunkRows,
+                queueChunks, twoPhaseCommit, loadExecId);
+        rejects.clear();
+        Set<String> storedPayloads = new HashSet<>();
+        MessageDigest sha256;
+        try {
+            sha256 = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
 
         int count = 0;
-        try (BufferedReader br = new BufferedReader(new FileReader(file, StandardCharsets.UTF_8))) {
-            conn = stagingDB.getConnection();
-            conn.setAutoCommit(false);
-
-            psLoc = conn.prepareStatement(sqlLoc);
-            psCond = conn.prepareStatement(sqlCond);
-            psAir = conn.prepareStatement(sqlAir);
-            psObs = conn.prepareStatement(sqlObs);
-
-            String line;
-            Map<String, Integer> map = new HashMap<>();
-
-            // Header processing
-            if ((line = br.readLine()) != null) {
-                if (line.startsWith("\uFEFF")) line = line.substring(1);
-                String[] headers = line.split(",");
-                for (int i = 0; i < headers.length; i++) map.put(headers[i].trim(), i);
+        try (RecordFileReader reader = RecordFileReader.open(file.toPath())) {
+            System.out.println("  -> Format: " + reader.getFormat().getName());
+
+            // Header -> index plans, once per file
+            ColumnBinding.Plan[] plans = new ColumnBinding.Plan[mappings.size()];
+            Set<String> missing = new LinkedHashSet<>();
+            for (int t = 0; t < plans.length; t++) {
+                plans[t] = mappings.get(t).compile(reader);
+                missing.addAll(plans[t].getMissingColumns());
             }
+            if (!missing.isEmpty()) {
+                System.out.println("  -> Columns not in file (loaded as null/default): " + String.join(", ", missing));
+            }
+            int payloadTable = payloadStore ? plans.length - 1 : -1;
+            // Key of the location and observation rows
+            int locationName = reader.indexOf("location_name");
+
+            pipeline.start();
 
+            String[] columns = reader.getColumns();
             Gson gson = new Gson();
+            Object[] rowValues = new Object[3];
+            rowValues[LOAD_BATCH] = loadExecId;
+
+            long row = 0;
+            while (reader.next()) {
+                rejects.setRow(++row);
+                if (reader.getFieldCount() != columns.length) {
+                    rejects.rejectRow(reader.getLineNumber(), null, "Expected " + columns.length + " values, got " +
+                            reader.getFieldCount(), reader.formatRow());
+                    continue;
+                }
+                if (reader.isBlank(locationName)) {
+                    rejects.rejectRow(reader.getLineNumber(), "location_name", "Missing location_name", reader.formatRow());
+                    continue;
+                }
 
-            while ((line = br.readLine()) != null) {
+                Object[][] values = new Object[plans.length][];
                 try {
-                    String[] row = line.split(",(?=(?:[^\"]*\"[^\"]*\")*[^\"]*$)", -1);
-                    for (int i = 0; i < row.length; i++) row[i] = row[i].replaceAll("^\"|\"$", "");
-
-                    String extractBatchId = safeGet(row, map, "execution_id");
-                    String source = "WeatherAPI";
-
                     JsonObject json = new JsonObject();
-                    for (String h : map.keySet()) {
-                        String val = safeGet(row, map, h);
-                        if (val != null) json.addProperty(h, val);
+                    for (int i = 0; i < columns.length; i++) {
+                        String val = reader.getString(i);
+                        if (val != null) json.addProperty(columns[i], val);
                     }
                     json.addProperty("load_execution_id", loadExecId);
                     String jsonStr = gson.toJson(json);
+                    rowValues[PAYLOAD] = jsonStr;
+                    rowValues[PAYLOAD_JSON] = jsonStr;
+
+                    boolean newPayload = false;
+                    if (payloadStore) {
+                        String hash = HexFormat.of().formatHex(sha256.digest(jsonStr.getBytes(StandardCharsets.UTF_8)));
+                        newPayload = storedPayloads.add(hash);
+                        rowValues[PAYLOAD] = hash; // raw tables only reference the payload
+                    }
 
-                    // --- 1. LOCATION ---
-                    psLoc.setString(1, safeGet(row, map, "location_name"));
-                    psLoc.setString(2, safeGet(row, map, "region"));
-                    psLoc.setString(3, "Vietnam");
-                    try { psLoc.setDouble(4, Double.parseDouble(safeGet(row, map, "lat"))); } catch (Exception e) { psLoc.setObject(4, null); }
-                    try { psLoc.setDouble(5, Double.parseDouble(safeGet(row, map, "lon"))); } catch (Exception e) { psLoc.setObject(5, null); }
-                    psLoc.setString(6, safeGet(row, map, "tz_id"));
-                    psLoc.setString(7, safeGet(row, map, "localtime"));
-                    try {
-                        String val = safeGet(row, map, "localtime_epoch");
-                        psLoc.setLong(8, val != null ? Long.parseLong(val) : 0);
-                    } catch (Exception e) { psLoc.setObject(8, null); }
-                    psLoc.setString(9, source);
-                    psLoc.setString(10, extractBatchId);
-                    psLoc.setString(11, jsonStr);
-                    psLoc.addBatch();
-
-                    // --- 2. CONDITION ---
-                    psCond.setString(1, safeGet(row, map, "condition_code"));
-                    psCond.setString(2, safeGet(row, map, "condition_text"));
-                    String iconVal = safeGet(row, map, "condition_icon");
-                    if (iconVal == null) iconVal = safeGet(row, map, "icon");
-                    psCond.setString(3, iconVal);
-                    psCond.setString(4, source);
-                    psCond.setString(5, extractBatchId);
-                    psCond.setString(6, jsonStr);
-                    psCond.addBatch();
-
-                    // --- 3. AIR QUALITY ---
-                    psAir.setString(1, safeGet(row, map, "co"));
-                    psAir.setString(2, safeGet(row, map, "no2"));
-                    psAir.setString(3, safeGet(row, map, "o3"));
-                    psAir.setString(4, safeGet(row, map, "so2"));
-                    psAir.setString(5, safeGet(row, map, "pm2_5"));
-                    psAir.setString(6, safeGet(row, map, "pm10"));
-                    psAir.setString(7, safeGet(row, map, "aqi_us"));
-                    psAir.setString(8, safeGet(row, map, "aqi_gb"));
-                    psAir.setString(9, source);
-                    psAir.setString(10, extractBatchId);
-                    psAir.setString(11, jsonStr);
-                    psAir.addBatch();
-
-                    // --- 4. OBSERVATION ---
-                    int idx = 1;
-                    psObs.setString(idx++, safeGet(row, map, "last_updated"));
-                    try {
-                        String val = safeGet(row, map, "is_day");
-                        psObs.setInt(idx++, val != null ? Integer.parseInt(val) : 0);
-                    } catch (Exception e) { psObs.setObject(idx - 1, null); }
-                    psObs.setString(idx++, safeGet(row, map, "temp_c"));
-                    psObs.setString(idx++, safeGet(row, map, "temp_f"));
-                    psObs.setString(idx++, safeGet(row, map, "feels_like_c"));
-                    psObs.setString(idx++, safeGet(row, map, "feels_like_f"));
-                    psObs.setString(idx++, safeGet(row, map, "humidity"));
-                    psObs.setString(idx++, safeGet(row, map, "cloud"));
-                    psObs.setString(idx++, safeGet(row, map, "vis_km"));
-                    psObs.setString(idx++, safeGet(row, map, "vis_miles"));
-                    psObs.setString(idx++, safeGet(row, map, "uv"));
-                    psObs.setString(idx++, safeGet(row, map, "gust_mph"));
-                    psObs.setString(idx++, safeGet(row, map, "gust_kph"));
-                    psObs.setString(idx++, safeGet(row, map, "wind_mph"));
-                    psObs.setString(idx++, safeGet(row, map, "wind_kph"));
-                    psObs.setString(idx++, safeGet(row, map, "wind_degree"));
-                    psObs.setString(idx++, safeGet(row, map, "wind_dir"));
-                    psObs.setString(idx++, safeGet(row, map, "pressure_mb"));
-                    psObs.setString(idx++, safeGet(row, map, "pressure_in"));
-                    psObs.setString(idx++, safeGet(row, map, "precip_mm"));
-                    psObs.setString(idx++, safeGet(row, map, "precip_in"));
-                    psObs.setString(idx++, safeGet(row, map, "location_name"));
-                    psObs.setString(idx++, source);
-                    psObs.setString(idx++, extractBatchId);
-                    psObs.setString(idx++, jsonStr);
-                    psObs.addBatch();
-
-                    count++;
-                    if (count % 100 == 0) {
-                        psLoc.executeBatch();
-                        psCond.executeBatch();
-                        psAir.executeBatch();
-                        psObs.executeBatch();
-                        System.out.println("  -> Processed " + count + " rows...");
+                    for (int t = 0; t < plans.length; t++) {
+                        if (t == payloadTable && !newPayload) {
+                            continue; // already written for an identical row
+                        }
+                        values[t] = plans[t].bind(reader, rowValues, typed ? rejects : null);
                     }
                 } catch (Exception e) {
-                    System.err.println("  ⚠️ Skip row error: " + e.toString());
+                    rejects.rejectRow(reader.getLineNumber(), null, e.toString(), reader.formatRow());
+                    continue;
+                }
+
+                pipeline.add(values);
+                count++;
+                if (count % chunkRows == 0) {
+                    System.out.println("  -> Processed " + count + " rows...");
                 }
             }
 
-            // Execute remaining batches
-            psLoc.executeBatch();
-            psCond.executeBatch();
-            psAir.executeBatch();
-            psObs.executeBatch();
-            conn.commit();
+            rejects.checkThreshold(row);
+
+            // Wait for all writers, then commit all four tables
+            pipeline.finish();
 
             System.out.println("[Step 7] Successfully inserted " + count + " rows.");
+            pipeline.close(); // give the writer connections back first
+            writeRejects(rejects, copy);
             return count;
 
+        } catch (StagingRejects.ThresholdExceededException e) {
+            pipeline.abort();
+            System.err.println("Transaction rolled back: " + e.getMessage());
+            pipeline.close();
+            writeRejects(rejects, copy);
+            throw e;
         } catch (Exception e) {
-            try {
-                if (conn != null) {
-                    conn.rollback();
-                    System.err.println("Transaction rolled back due to error.");
-                }
-            } catch (SQLException ex) {
-                System.err.println("Rollback failed: " + ex.getMessage());
-            }
+            pipeline.abort();
+            System.err.println("Transaction rolled back due to error.");
             throw new RuntimeException("Load data failed: " + e.getMessage(), e);
         } finally {
-            try { if (psLoc != null) psLoc.close(); } catch (SQLException ex) {}
-            try { if (psCond != null) psCond.close(); } catch (SQLException ex) {}
-            try { if (psAir != null) psAir.close(); } catch (SQLException ex) {}
-            try { if (psObs != null) psObs.close(); } catch (SQLException ex) {}
-            try { if (conn != null) conn.close(); } catch (SQLException ex) {}
+            pipeline.close();
+        }
+    }
+
+    private static void writeRejects(StagingRejects rejects, boolean copy) {
+        if (rejects.getRejectedRowCount() > 0) {
+            System.out.println("  -> " + rejects.getRejectedRowCount() + " row(s) rejected, see " +
+                    StagingRejects.REJECT_TABLE);
+        }
+        if (rejects.getCellErrorCount() > 0) {
+            System.out.println("  -> " + rejects.getCellErrorCount() + " invalid value(s) loaded as NULL, see " +
+                    StagingRejects.CELL_ERROR_TABLE);
+        }
+        try {
+            rejects.write(stagingDB, copy);
+        } catch (SQLException e) {
+            // Not critical, the counts are in the load log
+            System.err.println("⚠️ Warning: Cannot write rejects: " + e.getMessage());
+        }
+    }
+
+    /**
+     * ============================================================
+     * Step 7b (incremental): Register batch & apply retention
+     * ============================================================
+     * <load><retentionDays> (default 30): partitions of older batches are dropped,
+     * 0 keeps everything.
+     */
+    public static void registerBatchAndApplyRetention(LoadConfig config, String loadExecId, int count,
+                                                      File file, String sha256) {
+        System.out.println("[Step 7b] Registering staging batch " + loadExecId + "...");
+        try {
+            new StagingBatchLog(controlDB).markLoaded(loadExecId, file.getName(), sha256, count);
+        } catch (Exception e) {
+            handleError("ERROR: Register Staging Batch Failed",
+                    "Batch " + loadExecId + " is loaded but not registered, Transform will not pick it up.", e);
+        }
+        applyRetention(config);
+    }
+
+    /**
+     * Drop partitions of batches older than <retentionDays>, best effort
+     */
+    static synchronized void applyRetention(LoadConfig config) {
+        StagingBatchLog batchLog = new StagingBatchLog(controlDB);
+        Element load = LoadConfig.getElement(config.getXmlDoc(), "load");
+        String retentionValue = LoadConfig.getValue(load, "retentionDays");
+        int retentionDays = retentionValue.isEmpty() ? 30 : Integer.parseInt(retentionValue);
+        if (retentionDays <= 0) {
+            return;
+        }
+        try {
+            for (String batchId : batchLog.expiredBatches(retentionDays)) {
+                if (!StagingBatchLog.TRANSFORMED.equals(batchLog.getStatus(batchId))) {
+                    System.err.println("⚠️ Warning: Batch " + batchId + " expired before it was transformed");
+                }
+                dropBatchPartitions(config, batchId);
+                StagingRejects.deleteBatch(stagingDB, batchId);
+                batchLog.markDropped(batchId);
+                System.out.println("  -> Retention: dropped partitions of " + batchId);
+            }
+        } catch (Exception e) {
+            System.err.println("⚠️ Warning: Retention failed: " + e.getMessage());
+            // Not critical, retried on the next load
+        }
+    }
+
+    /**
+     * Incremental: SHA-256 of the input (from its manifest), null if there is no manifest
+     */
+    static String fileChecksum(File file) {
+        try {
+            FileManifest manifest = FileManifest.readFor(file.toPath());
+            return manifest == null ? null : manifest.getSha256();
+        } catch (Exception e) {
+            return null;
         }
     }
 
@@ -373,27 +657,17 @@ public class LoadToStaging {
      * Step 8: Update Log & Archive
      * ============================================================
      */
-    public static void updateLogAndArchive(String execId, int count, File file) {
+    public static void updateLogAndArchive(String execId, int count, int rejected, File file) {
         System.out.println("[Step 8] Updating logs and archiving file...");
         try {
             // Update Log
             String sql = "SELECT update_loadstaging_log_status(?, ?::process_status, ?, ?, ?)";
-            controlDB.executeQuery(sql, rs -> {}, execId, "success", count, 0, "Loaded successfully");
+            controlDB.executeQuery(sql, rs -> {}, execId, "success", count, rejected,
+                    rejected == 0 ? "Loaded successfully"
+                            : "Loaded successfully, " + rejected + " row(s) rejected (" + StagingRejects.REJECT_TABLE + ")");
             System.out.println("  -> Log updated to SUCCESS");
 
-            // Archive File
-            String archiveDir = "data/archive/";
-            File dir = new File(archiveDir);
-            if (!dir.exists()) {
-                dir.mkdirs();
-                System.out.println("  -> Created archive directory: " + archiveDir);
-            }
-
-            Path source = file.toPath();
-            Path dest = Paths.get(archiveDir + file.getName());
-
-            Files.move(source, dest, StandardCopyOption.REPLACE_EXISTING);
-            System.out.println("  -> File archived to: " + dest.toString());
+            archiveFile(file);
 
         } catch (Exception e) {
             System.err.println("⚠️ Warning: Post-processing failed (Log/Archive): " + e.getMessage());
@@ -401,16 +675,59 @@ public class LoadToStaging {
         }
     }
 
+    /**
+     * Move file + manifest to archive/ next to the input file
+     */
+    static void archiveFile(File file) throws Exception {
+        File parent = file.getAbsoluteFile().getParentFile();
+        String archiveDir = new File(parent, "archive").getPath() + File.separator;
+        File dir = new File(archiveDir);
+        if (!dir.exists()) {
+            dir.mkdirs();
+            System.out.println("  -> Created archive directory: " + archiveDir);
+        }
+
+        Path source = file.toPath();
+        Path dest = Paths.get(archiveDir + file.getName());
+
+        Files.move(source, dest, StandardCopyOption.REPLACE_EXISTING);
+        System.out.println("  -> File archived to: " + dest.toString());
+
+        Path manifest = FileManifest.pathFor(source);
+        if (Files.exists(manifest)) {
+            Files.move(manifest, FileManifest.pathFor(dest), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Log status FAILED and (incremental) remove the batch's partitions
+     */
+    static void markLoadFailed(LoadConfig config, String loadExecId, int rejected, Exception e) {
+        System.err.println("\n[ERROR] Data load failed, updating log status...");
+        try {
+            String sql = "SELECT update_loadstaging_log_status(?, ?::process_status, ?, ?, ?)";
+            controlDB.executeQuery(sql, rs -> {}, loadExecId, "failed", 0, rejected,
+                    "Load failed: " + e.getMessage());
+            System.err.println("Log status updated to FAILED");
+        } catch (Exception ex) {
+            System.err.println("⚠️ Failed to update log status: " + ex.getMessage());
+        }
+        if (isIncremental(config)) {
+            try {
+                dropBatchPartitions(config, loadExecId);
+            } catch (Exception ex) {
+                System.err.println("⚠️ Failed to drop partitions of " + loadExecId + ": " + ex.getMessage());
+            }
+        }
+    }
+
+    static DBConn getControlDB() {
+        return controlDB;
+    }
+
     // ============================================================
     // UTILS
     // ============================================================
-    private static String safeGet(String[] row, Map<String, Integer> map, String colName) {
-        Integer index = map.get(colName);
-        if (index == null || index >= row.length) return null;
-        String value = row[index];
-        return (value == null || value.trim().isEmpty()) ? null : value.trim();
-    }
-
     /**
      * Handle error: log, send email, and exit with code 1
      */
@@ -442,8 +759,12 @@ public class LoadToStaging {
     }
 
     private static void printUsage() {
-        System.out.println("Usage: java LoadToStaging <config_path>");
+        System.out.println("Usage: java LoadToStaging <config_path> [--scan | --watch]");
+        System.out.println("  (no option) : load today's file data/weatherapi_<yyyyMMdd>.*");
+        System.out.println("  --scan      : load every unprocessed file of <load><inputDirectory> (incremental mode)");
+        System.out.println("  --watch     : --scan, then keep loading new files as they appear");
         System.out.println("Example: java LoadToStaging config/config.xml");
+        System.out.println("Example: java LoadToStaging config/config.xml --scan");
     }
 
     /**
@@ -457,7 +778,18 @@ public class LoadToStaging {
         System.out.println("║  Process Started                       ║");
         System.out.println("╚════════════════════════════════════════╝\n");
 
-        String configPath = (args.length > 0) ? args[0] : "config/config.xml";
+        String configPath = "config/config.xml";
+        String ingestMode = null;
+        for (String arg : args) {
+            if ("--scan".equals(arg) || "--watch".equals(arg)) {
+                ingestMode = arg;
+            } else if (arg.startsWith("--")) {
+                printUsage();
+                System.exit(1);
+            } else {
+                configPath = arg;
+            }
+        }
         System.out.println("Config Path: " + configPath);
         System.out.println("Start Time: " + LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss")));
         System.out.println();
@@ -469,38 +801,70 @@ public class LoadToStaging {
             // Step 2: Connect DBs
             connectDBs(config);
 
+            // Multi-file ingestion: every unprocessed file, one batch each
+            if (ingestMode != null) {
+                if (!isIncremental(config)) {
+                    handleError("ERROR: Multi-file Load Needs Incremental Mode",
+                            ingestMode + " loads several files into staging, set <load><incremental>true</incremental> " +
+                                    "(each load would truncate the previous one otherwise).", null);
+                }
+                StagingIngestor ingestor = new StagingIngestor(config);
+                if ("--watch".equals(ingestMode)) {
+                    ingestor.watch();
+                    System.exit(0);
+                }
+                int failed = ingestor.scan();
+                if (failed > 0) {
+                    handleError("ERROR: Multi-file Load Incomplete",
+                            failed + " file(s) failed, they stay in the input directory for the next run.", null);
+                }
+                System.out.println("\nExiting with code 0 (Success)");
+                System.exit(0);
+            }
+
             // Step 3: Check status (may exit with 0 if already loaded)
-            checkTodayLoadSuccess();
+            // Incremental mode loads several files per day, duplicates are detected by checksum
+            boolean incremental = isIncremental(config);
+            if (!incremental) {
+                checkTodayLoadSuccess();
+            }
 
             // Step 4: Verify File
-            File csvFile = verifyInputFile();
+            File csvFile = verifyInputFile(config);
+            String sha256 = fileChecksum(csvFile);
+            if (incremental && sha256 != null && new StagingBatchLog(controlDB).isFileLoaded(sha256)) {
+                System.out.println("[Step 4] File " + csvFile.getName() + " is already in staging, stopping process.");
+                System.exit(0);
+            }
 
             // Step 5: Prepare Process Log
             String loadExecId = prepareLoadProcess(csvFile.getAbsolutePath());
 
-            // Step 6: Truncate Raw
-            truncateRawTables();
+            // Step 6: Truncate Raw (or new partitions in incremental mode)
+            if (incremental) {
+                createBatchPartitions(config, loadExecId);
+            } else {
+                truncateRawTables(config);
+            }
 
             // Step 7: Execute Load
             int loadedCount = 0;
+            StagingRejects rejects = newRejects(config, loadExecId);
             try {
-                loadedCount = loadDataToStaging(csvFile, loadExecId);
+                loadedCount = loadDataToStaging(csvFile, loadExecId, config, rejects);
             } catch (Exception e) {
                 // If load fails, update log to FAILED before exiting
-                System.err.println("\n[ERROR] Data load failed, updating log status...");
-                try {
-                    String sql = "SELECT update_loadstaging_log_status(?, ?::process_status, ?, ?, ?)";
-                    controlDB.executeQuery(sql, rs -> {}, loadExecId, "failed", 0, 0,
-                            "Load failed: " + e.getMessage());
-                    System.err.println("Log status updated to FAILED");
-                } catch (Exception ex) {
-                    System.err.println("⚠️ Failed to update log status: " + ex.getMessage());
-                }
+                markLoadFailed(config, loadExecId, rejects.getRejectedRowCount(), e);
                 throw e; // Re-throw to main catch for handleError
             }
 
+            // Step 7b: Track batch for Transform, drop expired partitions
+            if (incremental) {
+                registerBatchAndApplyRetention(config, loadExecId, loadedCount, csvFile, sha256);
+            }
+
             // Step 8: Update Log & Archive
-            updateLogAndArchive(loadExecId, loadedCount, csvFile);
+            updateLogAndArchive(loadExecId, loadedCount, rejects.getRejectedRowCount(), csvFile);
 
             // ========== SUCCESS ==========
             System.out.println("\n╔════════════════════════════════════════╗");
@@ -508,6 +872,8 @@ public class LoadToStaging {
             System.out.println("║    Status: SUCCESS                     ║");
             System.out.println("╚════════════════════════════════════════╝");
             System.out.println("Rows Loaded: " + loadedCount);
+            System.out.println("Rows Rejected: " + rejects.getRejectedRowCount());
+            System.out.println("Pool " + stagingDB.getPoolStats());
             System.out.println("End Time: " + LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss")));
             System.out.println("\nExiting with code 0 (Success)");
 
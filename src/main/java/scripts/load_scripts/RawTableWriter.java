@@ -0,0 +1,187 @@
+package scripts.load_scripts;
+
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyIn;
+import org.postgresql.copy.CopyManager;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+/**
+ * Writes rows into one raw_* staging table inside the transaction of the connection it is given.
+ *
+ * - COPY: rows are encoded in COPY text format into a buffer and sent with
+ *   COPY ... FROM STDIN once a chunk is full (one round trip, no per-row parse/plan)
+ * - INSERT: PreparedStatement batches, executed once a chunk is full
+ *
+ * StagingLoadPipeline gives each table its own writer thread and its own connection
+ * (autocommit off), so the tables are written in parallel. The writer never commits:
+ * once every writer has flushed its last chunk (and with <twoPhaseCommit> run PREPARE
+ * TRANSACTION), the pipeline commits all connections, or rolls all of them back if
+ * any writer failed.
+ */
+public abstract class RawTableWriter implements AutoCloseable {
+
+    protected final String table;
+    protected final String[] columns;
+    protected final int chunkSize;
+    private int pending;
+    private long written;
+
+    protected RawTableWriter(String table, String[] columns, int chunkSize) {
+        this.table = table;
+        this.columns = columns;
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * @param jsonColumn column that gets a ::jsonb cast in INSERT mode (COPY converts by column type)
+     */
+    public static RawTableWriter open(Connection conn, boolean copy, String table, String[] columns,
+                                      String jsonColumn, int chunkSize) throws SQLException {
+        if (copy) {
+            return new CopyWriter(conn, table, columns, chunkSize);
+        }
+        return new InsertWriter(conn, table, columns, jsonColumn, chunkSize);
+    }
+
+    /**
+     * Queue one row (values in column order), true when the chunk is full and flush() is due
+     */
+    public boolean add(Object... values) throws SQLException {
+        if (values.length != columns.length) {
+            throw new IllegalArgumentException(table + ": expected " + columns.length + " values, got " + values.length);
+        }
+        append(values);
+        pending++;
+        return pending >= chunkSize;
+    }
+
+    /**
+     * Send all queued rows to the server
+     */
+    public void flush() throws SQLException {
+        if (pending == 0) {
+            return;
+        }
+        send();
+        written += pending;
+        pending = 0;
+    }
+
+    public long getWritten() {
+        return written;
+    }
+
+    protected String columnList() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < columns.length; i++) {
+            if (i > 0) sb.append(", ");
+            sb.append('"').append(columns[i]).append('"');
+        }
+        return sb.toString();
+    }
+
+    protected abstract void append(Object[] values) throws SQLException;
+
+    protected abstract void send() throws SQLException;
+
+    @Override
+    public void close() throws SQLException {
+    }
+
+    // ============================================================
+    // COPY ... FROM STDIN (text format)
+    // ============================================================
+    private static class CopyWriter extends RawTableWriter {
+        private final CopyManager copyManager;
+        private final String sql;
+        private final StringBuilder buffer = new StringBuilder(256 * 1024);
+
+        CopyWriter(Connection conn, String table, String[] columns, int chunkSize) throws SQLException {
+            super(table, columns, chunkSize);
+            this.copyManager = conn.unwrap(PGConnection.class).getCopyAPI();
+            this.sql = "COPY " + table + " (" + columnList() + ") FROM STDIN";
+        }
+
+        @Override
+        protected void append(Object[] values) {
+            for (int i = 0; i < values.length; i++) {
+                if (i > 0) buffer.append('\t');
+                Object value = values[i];
+                if (value == null) {
+                    buffer.append("\\N");
+                } else {
+                    escape(value.toString());
+                }
+            }
+            buffer.append('\n');
+        }
+
+        private void escape(String value) {
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                switch (c) {
+                    case '\\': buffer.append("\\\\"); break;
+                    case '\t': buffer.append("\\t"); break;
+                    case '\n': buffer.append("\\n"); break;
+                    case '\r': buffer.append("\\r"); break;
+                    default: buffer.append(c);
+                }
+            }
+        }
+
+        @Override
+        protected void send() throws SQLException {
+            byte[] data = buffer.toString().getBytes(StandardCharsets.UTF_8);
+            buffer.setLength(0);
+
+            CopyIn copyIn = copyManager.copyIn(sql);
+            try {
+                copyIn.writeToCopy(data, 0, data.length);
+                copyIn.endCopy();
+            } finally {
+                if (copyIn.isActive()) {
+                    copyIn.cancelCopy();
+                }
+            }
+        }
+    }
+
+    // ============================================================
+    // Batched INSERT (fallback)
+    // ============================================================
+    private static class InsertWriter extends RawTableWriter {
+        private final PreparedStatement ps;
+
+        InsertWriter(Connection conn, String table, String[] columns, String jsonColumn, int chunkSize) throws SQLException {
+            super(table, columns, chunkSize);
+            StringBuilder params = new StringBuilder();
+            for (int i = 0; i < columns.length; i++) {
+                if (i > 0) params.append(", ");
+                params.append(columns[i].equals(jsonColumn) ? "?::jsonb" : "?");
+            }
+            this.ps = conn.prepareStatement("INSERT INTO " + table + " (" + columnList() + ") VALUES (" + params + ")");
+        }
+
+        @Override
+        protected void append(Object[] values) throws SQLException {
+            for (int i = 0; i < values.length; i++) {
+                ps.setObject(i + 1, values[i]);
+            }
+            ps.addBatch();
+        }
+
+        @Override
+        protected void send() throws SQLException {
+            ps.executeBatch();
+        }
+
+        @Override
+        public void close() throws SQLException {
+            ps.close();
+        }
+    }
+}
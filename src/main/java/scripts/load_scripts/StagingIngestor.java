@@ -0,0 +1,246 @@
+package scripts.load_scripts;
+
+import org.w3c.dom.Element;
+import utils.EmailSender;
+import utils.FileManifest;
+import utils.LoadConfig;
+import utils.RecordFormat;
+import utils.StagingBatchLog;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * Multi-file ingestion for LoadToStaging (--scan / --watch, incremental mode only).
+ *
+ * - scan: every weatherapi_YYYYMMDD.{csv,csv.gz,wxb} in <load><inputDirectory> with a valid
+ *   manifest is loaded, oldest first, up to <parallelFiles> at a time, then archived;
+ *   a file without manifest is skipped while younger than <manifestGraceMinutes> (still being
+ *   written), older ones predate manifests and are loaded with a warning; a manifest that does
+ *   not match its file fails the file
+ * - watch: scan, then wait on a WatchService for new manifests (the extract writes the
+ *   manifest last) and scan again; a periodic rescan retries failed and stale claims
+ *
+ * Each file is claimed in the control DB (staging_file_claim) before loading, so several
+ * loaders can share one directory; content already in staging (same SHA-256) is only archived.
+ */
+public class StagingIngestor {
+
+    private static final Pattern INPUT_FILE = Pattern.compile("weatherapi_\\d{8}(" +
+            String.join("|", Arrays.stream(RecordFormat.values())
+                    .map(f -> Pattern.quote(f.getExtension())).toArray(String[]::new)) + ")");
+
+    private final LoadConfig config;
+    private final Path inputDirectory;
+    private final int parallelFiles;
+    private final int claimTimeoutMinutes;
+    private final int rescanMinutes;
+    private final boolean requireManifest;
+    private final int manifestGraceMinutes;
+    private final String owner;
+    private final StagingBatchLog batchLog;
+
+    public StagingIngestor(LoadConfig config) {
+        this.config = config;
+        Element load = LoadConfig.getElement(config.getXmlDoc(), "load");
+        String dir = LoadConfig.getValue(load, "inputDirectory");
+        this.inputDirectory = Paths.get(dir.isEmpty() ? "data" : dir);
+        this.parallelFiles = intValue(load, "parallelFiles", 2);
+        this.claimTimeoutMinutes = intValue(load, "claimTimeoutMinutes", 60);
+        this.rescanMinutes = intValue(load, "rescanMinutes", 15);
+        String requireValue = LoadConfig.getValue(load, "requireManifest");
+        this.requireManifest = requireValue.isEmpty() || Boolean.parseBoolean(requireValue);
+        this.manifestGraceMinutes = intValue(load, "manifestGraceMinutes", 60);
+        this.owner = ManagementFactory.getRuntimeMXBean().getName();
+        this.batchLog = new StagingBatchLog(LoadToStaging.getControlDB());
+    }
+
+    private static int intValue(Element parent, String tag, int defaultValue) {
+        String value = LoadConfig.getValue(parent, tag);
+        return value.isEmpty() ? defaultValue : Integer.parseInt(value);
+    }
+
+    /**
+     * Load every unprocessed file once, returns the number of files that failed
+     */
+    public int scan() {
+        List<File> files = findInputFiles();
+        System.out.println("[Scan] " + files.size() + " input file(s) in " + inputDirectory.toAbsolutePath());
+        if (files.isEmpty()) {
+            return 0;
+        }
+
+        Semaphore permits = new Semaphore(Math.max(1, parallelFiles));
+        List<Future<Boolean>> futures = new ArrayList<>();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (File file : files) {
+                futures.add(executor.submit(() -> {
+                    permits.acquire();
+                    try {
+                        return loadFile(file);
+                    } finally {
+                        permits.release();
+                    }
+                }));
+            }
+        }
+
+        int failed = 0;
+        StringBuilder summary = new StringBuilder();
+        for (int i = 0; i < files.size(); i++) {
+            try {
+                if (!futures.get(i).get()) {
+                    failed++;
+                    summary.append("✗ ").append(files.get(i).getName()).append("\n");
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                failed++;
+            } catch (ExecutionException e) {
+                failed++;
+                summary.append("✗ ").append(files.get(i).getName()).append(": ")
+                        .append(e.getCause().getMessage()).append("\n");
+            }
+        }
+
+        LoadToStaging.applyRetention(config);
+        System.out.println("[Scan] Done: " + (files.size() - failed) + " ok, " + failed + " failed");
+        if (failed > 0) {
+            System.err.print(summary);
+        }
+        return failed;
+    }
+
+    /**
+     * Scan, then keep loading new files as the extract publishes them (runs until killed)
+     */
+    public void watch() throws IOException, InterruptedException {
+        try (WatchService watcher = FileSystems.getDefault().newWatchService()) {
+            inputDirectory.toFile().mkdirs();
+            inputDirectory.register(watcher, StandardWatchEventKinds.ENTRY_CREATE);
+            System.out.println("[Watch] Watching " + inputDirectory.toAbsolutePath() + " (Ctrl+C to stop)");
+
+            scanAndNotify();
+            while (true) {
+                WatchKey key = watcher.poll(rescanMinutes, TimeUnit.MINUTES);
+                if (key != null) {
+                    boolean relevant = false;
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                        String name = String.valueOf(event.context());
+                        relevant |= event.kind() == StandardWatchEventKinds.OVERFLOW || name.endsWith(".manifest");
+                    }
+                    if (!key.reset()) {
+                        throw new IOException("Input directory is no longer accessible: " + inputDirectory);
+                    }
+                    if (!relevant) {
+                        continue;
+                    }
+                }
+                scanAndNotify();
+            }
+        } catch (ClosedWatchServiceException e) {
+            // shutting down
+        }
+    }
+
+    private void scanAndNotify() {
+        int failed = scan();
+        if (failed > 0) {
+            EmailSender.sendEmail("Weather ETL - Load Watch: " + failed + " file(s) failed",
+                    failed + " file(s) in " + inputDirectory.toAbsolutePath() +
+                            " failed to load, they are retried on the next scan.");
+        }
+    }
+
+    /**
+     * Candidate files, oldest day first (file names carry the date)
+     */
+    List<File> findInputFiles() {
+        File[] files = inputDirectory.toFile().listFiles((dir, name) -> INPUT_FILE.matcher(name).matches());
+        if (files == null) {
+            return new ArrayList<>();
+        }
+        Arrays.sort(files, (a, b) -> a.getName().compareTo(b.getName()));
+        return new ArrayList<>(Arrays.asList(files));
+    }
+
+    /**
+     * Steps 4-8 for one file, false if it failed (it stays in place for the next run)
+     */
+    boolean loadFile(File file) {
+        try {
+            if (requireManifest && FileManifest.readFor(file.toPath()) == null) {
+                long ageMinutes = (System.currentTimeMillis() - file.lastModified()) / 60_000;
+                if (ageMinutes < manifestGraceMinutes) {
+                    // Usually still being written, the manifest comes last
+                    System.out.println("[Scan] Skip " + file.getName() + ": no manifest yet");
+                    return true;
+                }
+                System.out.println("[Scan] WARNING: No manifest for " + file.getName() + " (" + ageMinutes +
+                        " min old, written before manifests), loading without verification");
+            } else {
+                LoadToStaging.verifyManifest(config, file);
+            }
+        } catch (Exception e) {
+            // Size, checksum or row count differ from the manifest: never load it
+            System.err.println("[Scan] ✗ " + file.getName() + " failed manifest verification: " + e.getMessage());
+            return false;
+        }
+
+        String sha256 = LoadToStaging.fileChecksum(file);
+        String loadExecId = null;
+        StagingRejects rejects = null;
+        try {
+            if (sha256 != null && batchLog.isFileLoaded(sha256)) {
+                System.out.println("[Scan] " + file.getName() + " is already in staging, archiving only");
+                LoadToStaging.archiveFile(file);
+                return true;
+            }
+            if (!batchLog.claimFile(file.getName(), sha256, owner, claimTimeoutMinutes)) {
+                System.out.println("[Scan] " + file.getName() + " is claimed by another loader, skipping");
+                return true;
+            }
+
+            loadExecId = LoadToStaging.createLoadLog(file.getAbsolutePath());
+            LoadToStaging.createPartitions(config, loadExecId);
+            rejects = LoadToStaging.newRejects(config, loadExecId);
+            int count = LoadToStaging.loadDataToStaging(file, loadExecId, config, rejects);
+            batchLog.markLoaded(loadExecId, file.getName(), sha256, count);
+            LoadToStaging.updateLogAndArchive(loadExecId, count, rejects.getRejectedRowCount(), file);
+            batchLog.finishClaim(file.getName(), StagingBatchLog.LOADED, loadExecId);
+            System.out.println("[Scan] ✓ " + file.getName() + ": " + count + " rows (" + loadExecId + ")");
+            return true;
+
+        } catch (Exception e) {
+            System.err.println("[Scan] ✗ " + file.getName() + ": " + e.getMessage());
+            if (loadExecId != null) {
+                LoadToStaging.markLoadFailed(config, loadExecId, rejects == null ? 0 : rejects.getRejectedRowCount(), e);
+            }
+            try {
+                batchLog.finishClaim(file.getName(), "failed", loadExecId);
+            } catch (Exception ex) {
+                System.err.println("⚠️ Failed to release claim of " + file.getName() + ": " + ex.getMessage());
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,282 @@
+package scripts.load_scripts;
+
+import utils.DBConn;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Parse once, write in parallel: the calling thread reads the file and queues chunks
+ * of rows, one writer thread per raw_* table drains its own bounded queue into its
+ * own connection (COPY or INSERT, see RawTableWriter).
+ *
+ * All-or-nothing across the connections:
+ * - phase 1: every writer flushes its last chunk (and with two-phase commit runs PREPARE TRANSACTION)
+ * - phase 2: only when all writers succeeded the coordinator commits every connection,
+ *   otherwise all of them are rolled back
+ * Without two-phase commit a crash between the commits of phase 2 can leave some tables
+ * loaded; with it the prepared transactions survive the crash and are listed on the next run
+ * (needs max_prepared_transactions > 0 on the staging server).
+ */
+public class StagingLoadPipeline {
+
+    public static class Table {
+        final String name;
+        final String[] columns;
+        final String jsonColumn;
+
+        public Table(String name, String[] columns, String jsonColumn) {
+            this.name = name;
+            this.columns = columns;
+            this.jsonColumn = jsonColumn;
+        }
+    }
+
+    static final String GID_PREFIX = "lod_stg_";
+    private static final List<Object[]> END = Collections.emptyList();
+
+    private final DBConn db;
+    private final List<Table> tables;
+    private final boolean copy;
+    private final int chunkRows;
+    private final boolean twoPhaseCommit;
+    private final String transactionId;
+
+    private final List<Connection> connections = new ArrayList<>();
+    private final List<BlockingQueue<List<Object[]>>> queues = new ArrayList<>();
+    private final List<List<Object[]>> chunks = new ArrayList<>();
+    private final List<Future<Long>> writers = new ArrayList<>();
+    private final List<String> prepared = Collections.synchronizedList(new ArrayList<>());
+    private ExecutorService executor;
+    private volatile Throwable failure;
+
+    public StagingLoadPipeline(DBConn db, List<Table> tables, boolean copy, int chunkRows, int queueChunks,
+                               boolean twoPhaseCommit, String transactionId) {
+        this.db = db;
+        this.tables = tables;
+        this.copy = copy;
+        this.chunkRows = chunkRows;
+        this.twoPhaseCommit = twoPhaseCommit;
+        this.transactionId = transactionId.replaceAll("[^A-Za-z0-9_]", "_");
+        for (int i = 0; i < tables.size(); i++) {
+            queues.add(new ArrayBlockingQueue<>(Math.max(1, queueChunks)));
+            chunks.add(new ArrayList<>(chunkRows));
+        }
+    }
+
+    /**
+     * Open one connection per table and start the writers
+     */
+    public void start() throws SQLException {
+        if (twoPhaseCommit) {
+            warnPreparedLeftovers();
+        }
+        for (int i = 0; i < tables.size(); i++) {
+            Connection conn = db.getConnection();
+            conn.setAutoCommit(false);
+            connections.add(conn);
+        }
+
+        executor = Executors.newVirtualThreadPerTaskExecutor();
+        for (int i = 0; i < tables.size(); i++) {
+            final int index = i;
+            writers.add(executor.submit(() -> runWriter(index)));
+        }
+    }
+
+    /**
+     * Queue one parsed row, values[i] are the column values of table i
+     * (null = nothing for that table, only allowed after the first table)
+     */
+    public void add(Object[][] values) throws SQLException, InterruptedException {
+        for (int i = 0; i < tables.size(); i++) {
+            if (values[i] != null) {
+                chunks.get(i).add(values[i]);
+            }
+        }
+        if (chunks.get(0).size() >= chunkRows) {
+            dispatch();
+        }
+    }
+
+    private void dispatch() throws SQLException, InterruptedException {
+        checkFailure();
+        for (int i = 0; i < tables.size(); i++) {
+            queues.get(i).put(chunks.get(i));
+            chunks.set(i, new ArrayList<>(chunkRows));
+        }
+    }
+
+    /**
+     * Send the rest, wait for all writers (phase 1) and commit or roll back all connections (phase 2)
+     */
+    public void finish() throws SQLException, InterruptedException {
+        try {
+            if (!chunks.get(0).isEmpty()) {
+                dispatch();
+            }
+        } finally {
+            for (BlockingQueue<List<Object[]>> queue : queues) {
+                queue.put(END);
+            }
+        }
+
+        SQLException error = null;
+        for (int i = 0; i < writers.size(); i++) {
+            try {
+                long rows = writers.get(i).get();
+                System.out.println("  -> " + tables.get(i).name + ": " + rows + " rows written");
+            } catch (ExecutionException e) {
+                if (error == null) {
+                    error = new SQLException(tables.get(i).name + ": " + e.getCause().getMessage(), e.getCause());
+                }
+            }
+        }
+        if (error != null) {
+            throw error;
+        }
+
+        // Phase 2: everything is written (and prepared), commit all
+        for (int i = 0; i < connections.size(); i++) {
+            Connection conn = connections.get(i);
+            if (twoPhaseCommit) {
+                conn.setAutoCommit(true);
+                try (Statement st = conn.createStatement()) {
+                    st.execute("COMMIT PREPARED '" + gid(i) + "'");
+                }
+                prepared.remove(gid(i));
+            } else {
+                conn.commit();
+            }
+        }
+    }
+
+    /**
+     * Roll back every connection (prepared or not) and stop the writers
+     */
+    public void abort() {
+        if (failure == null) {
+            failure = new SQLException("Load aborted");
+        }
+        for (BlockingQueue<List<Object[]>> queue : queues) {
+            queue.clear();
+            queue.offer(END);
+        }
+        for (Future<Long> writer : writers) {
+            try {
+                writer.get();
+            } catch (Exception e) {
+                // already reported by finish() or the caller
+            }
+        }
+        for (int i = 0; i < connections.size(); i++) {
+            Connection conn = connections.get(i);
+            try {
+                if (prepared.contains(gid(i))) {
+                    conn.setAutoCommit(true);
+                    try (Statement st = conn.createStatement()) {
+                        st.execute("ROLLBACK PREPARED '" + gid(i) + "'");
+                    }
+                } else if (!conn.getAutoCommit()) {
+                    conn.rollback();
+                }
+            } catch (SQLException e) {
+                System.err.println("Rollback failed for " + tables.get(i).name + ": " + e.getMessage());
+            }
+        }
+    }
+
+    public void close() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+        for (Connection conn : connections) {
+            try { conn.close(); } catch (SQLException ex) {}
+        }
+        connections.clear();
+    }
+
+    private long runWriter(int index) throws Exception {
+        Table table = tables.get(index);
+        Connection conn = connections.get(index);
+        BlockingQueue<List<Object[]>> queue = queues.get(index);
+
+        boolean ended = false;
+        try (RawTableWriter writer = RawTableWriter.open(conn, copy, table.name, table.columns,
+                table.jsonColumn, Integer.MAX_VALUE)) {
+            while (true) {
+                List<Object[]> chunk = queue.take();
+                if (chunk == END) {
+                    ended = true;
+                    break;
+                }
+                if (failure != null) {
+                    throw new SQLException("Stopped after failure of another writer");
+                }
+                for (Object[] row : chunk) {
+                    writer.add(row);
+                }
+                writer.flush();
+            }
+            if (failure != null) {
+                throw new SQLException("Stopped after failure of another writer");
+            }
+
+            if (twoPhaseCommit) {
+                try (Statement st = conn.createStatement()) {
+                    st.execute("PREPARE TRANSACTION '" + gid(index) + "'");
+                }
+                prepared.add(gid(index));
+            }
+            return writer.getWritten();
+        } catch (Exception e) {
+            if (failure == null) {
+                failure = e;
+            }
+            // Keep draining until END so the reader never blocks on a full queue
+            while (!ended) {
+                ended = queue.take() == END;
+            }
+            throw e;
+        }
+    }
+
+    private void checkFailure() throws SQLException {
+        Throwable f = failure;
+        if (f != null) {
+            throw new SQLException("Writer failed: " + f.getMessage(), f);
+        }
+    }
+
+    private String gid(int index) {
+        return GID_PREFIX + transactionId + "_" + tables.get(index).name;
+    }
+
+    /**
+     * Prepared transactions of a crashed run keep their locks until resolved by hand
+     */
+    private void warnPreparedLeftovers() {
+        String sql = "SELECT gid FROM pg_prepared_xacts WHERE database = current_database() AND gid LIKE '" +
+                GID_PREFIX + "%'";
+        try {
+            db.executeQuery(sql, rs -> {
+                while (rs.next()) {
+                    System.err.println("⚠️ Warning: Prepared transaction left by an earlier load: " + rs.getString(1) +
+                            " (COMMIT PREPARED or ROLLBACK PREPARED it)");
+                }
+            });
+        } catch (SQLException e) {
+            System.err.println("⚠️ Warning: Cannot check prepared transactions: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package scripts.load_scripts;
+
+import utils.DBConn;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * What the load of one file could not take as is (see database/sql/staging_reject.sql):
+ * - rejected rows (raw_reject): malformed line or missing key, the row is not loaded and is
+ *   kept with its line number, column and reason; counted as failed in the load log
+ * - invalid cells (raw_cell_error, <load><typedStaging>): the cell is loaded as NULL and its
+ *   raw text is kept with the data row number, table and column
+ *
+ * <load><maxRejects> fails the load when more rows are rejected: a row count ("100") or a
+ * percentage of the rows read ("1%"); empty = no limit.
+ */
+public class StagingRejects implements ColumnBinding.InvalidValueHandler {
+
+    static final String REJECT_TABLE = "raw_reject";
+    static final String CELL_ERROR_TABLE = "raw_cell_error";
+    private static final String[] REJECT_COLUMNS = {"load_batch_id", "line_number", "column_name",
+            "reason", "raw_line"};
+    private static final String[] CELL_ERROR_COLUMNS = {"load_batch_id", "row_number", "table_name",
+            "column_name", "source_column", "raw_value", "expected_type"};
+    // More than this is a broken file, the counts are still exact
+    private static final int MAX_STORED = 100_000;
+
+    /**
+     * Too many rejected rows, the load is rolled back (not retried with INSERT)
+     */
+    public static class ThresholdExceededException extends RuntimeException {
+        ThresholdExceededException(String message) {
+            super(message);
+        }
+    }
+
+    private final String loadBatchId;
+    private final long maxRows;
+    private final double maxPercent;
+    private final List<Object[]> rejectedRows = new ArrayList<>();
+    private final List<Object[]> cellErrors = new ArrayList<>();
+    private long row;
+    private int rejectedRowCount;
+    private long cellErrorCount;
+
+    /**
+     * @param maxRejects value of <load><maxRejects>: "", "100" or "1%"
+     */
+    public StagingRejects(String loadBatchId, String maxRejects) {
+        this.loadBatchId = loadBatchId;
+        String limit = maxRejects == null ? "" : maxRejects.trim();
+        if (limit.isEmpty()) {
+            maxRows = -1;
+            maxPercent = -1;
+        } else if (limit.endsWith("%")) {
+            maxRows = -1;
+            maxPercent = Double.parseDouble(limit.substring(0, limit.length() - 1).trim());
+        } else {
+            maxRows = Long.parseLong(limit);
+            maxPercent = -1;
+        }
+    }
+
+    /**
+     * Forget everything collected (the file is loaded again, e.g. INSERT after a failed COPY)
+     */
+    public void clear() {
+        rejectedRows.clear();
+        cellErrors.clear();
+        row = 0;
+        rejectedRowCount = 0;
+        cellErrorCount = 0;
+    }
+
+    /**
+     * Data row (1 = first row after the header) the next errors belong to
+     */
+    public void setRow(long row) {
+        this.row = row;
+    }
+
+    /**
+     * Reject the current row, fails as soon as a row count limit is exceeded
+     */
+    public void rejectRow(long lineNumber, String column, String reason, String rawLine) {
+        rejectedRowCount++;
+        if (rejectedRows.size() < MAX_STORED) {
+            rejectedRows.add(new Object[]{loadBatchId, lineNumber, column, reason, rawLine});
+        }
+        if (maxRows >= 0 && rejectedRowCount > maxRows) {
+            throw new ThresholdExceededException(rejectedRowCount + " rejected rows, more than maxRejects " + maxRows +
+                    " (last: line " + lineNumber + ", " + reason + ")");
+        }
+    }
+
+    @Override
+    public void invalid(String table, String column, String sourceColumn, String value, String type) {
+        cellErrorCount++;
+        if (cellErrors.size() < MAX_STORED) {
+            cellErrors.add(new Object[]{loadBatchId, row, table, column, sourceColumn, value, type});
+        }
+    }
+
+    /**
+     * Percentage limit, checked once all rows are read
+     */
+    public void checkThreshold(long rowsRead) {
+        if (maxPercent >= 0 && rowsRead > 0 && rejectedRowCount * 100.0 / rowsRead > maxPercent) {
+            throw new ThresholdExceededException(rejectedRowCount + " of " + rowsRead + " rows rejected, more than maxRejects " +
+                    maxPercent + "%");
+        }
+    }
+
+    public int getRejectedRowCount() {
+        return rejectedRowCount;
+    }
+
+    public long getCellErrorCount() {
+        return cellErrorCount;
+    }
+
+    /**
+     * Write the collected rows and cells in their own transaction (kept even when the load is rolled back)
+     */
+    public void write(DBConn db, boolean copy) throws SQLException {
+        write(db, copy, REJECT_TABLE, REJECT_COLUMNS, rejectedRows);
+        write(db, copy, CELL_ERROR_TABLE, CELL_ERROR_COLUMNS, cellErrors);
+    }
+
+    private static void write(DBConn db, boolean copy, String table, String[] columns, List<Object[]> rows)
+            throws SQLException {
+        if (rows.isEmpty()) {
+            return;
+        }
+        try (Connection conn = db.getConnection()) {
+            conn.setAutoCommit(false);
+            try (RawTableWriter writer = RawTableWriter.open(conn, copy, table, columns, null, Integer.MAX_VALUE)) {
+                for (Object[] values : rows) {
+                    writer.add(values);
+                }
+                writer.flush();
+                conn.commit();
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Retention: remove the rejects of a dropped batch (tables that do not exist are skipped)
+     */
+    static void deleteBatch(DBConn db, String loadBatchId) throws SQLException {
+        for (String table : new String[]{REJECT_TABLE, CELL_ERROR_TABLE}) {
+            final boolean[] exists = {false};
+            db.executeQuery("SELECT to_regclass(?) IS NOT NULL", rs -> exists[0] = rs.next() && rs.getBoolean(1), table);
+            if (exists[0]) {
+                db.executeUpdate("DELETE FROM " + table + " WHERE load_batch_id = ?", loadBatchId);
+            }
+        }
+    }
+}
@@ -0,0 +1,246 @@
+package scripts.transform_scripts;
+
+import utils.DBConn;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the transform steps as a dependency graph.
+ *
+ * - isolated steps: own pooled connection, autocommit, up to <transform><parallelSteps> at a time;
+ *   they only write scratch tables (stg_*__<exec id>), so nothing is visible before the commit
+ * - commit steps: one after another on the caller's connection (one transaction), each as soon
+ *   as the steps it depends on are done, so publishing a table and its dimension upsert overlap
+ *   with the isolated steps still running
+ *
+ * The caller commits or rolls back its connection, that is the only commit boundary of the run.
+ * When a step fails the statements still running in isolated steps are cancelled on the server
+ * and run() waits for those steps to end before it throws.
+ */
+public class TransformDag {
+
+    private static class Step {
+        final String name;
+        final boolean isolated;
+        final String[] sql;
+        final List<String> after;
+        boolean started;
+        boolean done;
+        int rows;
+        long millis;
+
+        Step(String name, boolean isolated, String[] sql, List<String> after) {
+            this.name = name;
+            this.isolated = isolated;
+            this.sql = sql;
+            this.after = after;
+        }
+    }
+
+    private final DBConn db;
+    private final int parallelSteps;
+    private final Map<String, Step> steps = new LinkedHashMap<>();
+    // Statements of the isolated steps in flight, cancelled when the run fails
+    private final Set<Statement> isolatedStatements = ConcurrentHashMap.newKeySet();
+    private volatile boolean aborted;
+    private static final long CANCEL_RETRY_MILLIS = 100;
+
+    public TransformDag(DBConn db, int parallelSteps) {
+        this.db = db;
+        this.parallelSteps = Math.max(1, parallelSteps);
+    }
+
+    /**
+     * Step on its own connection (statements run in order, rows = last statement)
+     */
+    public void isolated(String name, List<String> after, String... sql) {
+        add(new Step(name, true, sql, after));
+    }
+
+    /**
+     * Step inside the caller's transaction
+     */
+    public void onCommit(String name, List<String> after, String... sql) {
+        add(new Step(name, false, sql, after));
+    }
+
+    private void add(Step step) {
+        for (String dependency : step.after) {
+            Step before = steps.get(dependency);
+            if (before == null) {
+                throw new IllegalArgumentException(step.name + ": unknown step " + dependency + " (add it first)");
+            }
+            if (step.isolated && !before.isolated) {
+                throw new IllegalArgumentException(step.name + ": an isolated step cannot wait for a commit step");
+            }
+        }
+        steps.put(step.name, step);
+    }
+
+    /**
+     * Run all steps, returns the rows written by the commit steps
+     */
+    public int run(Connection conn) throws SQLException, InterruptedException {
+        long start = System.currentTimeMillis();
+        Semaphore permits = new Semaphore(parallelSteps);
+        ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+        CompletionService<Step> completed = new ExecutorCompletionService<>(executor);
+        int pending = 0;
+        int rows = 0;
+        boolean finished = false;
+
+        try {
+            while (true) {
+                // Start every isolated step whose dependencies are done
+                for (Step step : steps.values()) {
+                    if (step.isolated && !step.started && ready(step)) {
+                        step.started = true;
+                        pending++;
+                        completed.submit(() -> {
+                            permits.acquire();
+                            try {
+                                if (aborted) {
+                                    throw new SQLException(step.name + ": run aborted");
+                                }
+                                try (Connection own = db.getConnection()) {
+                                    execute(own, step);
+                                    return step;
+                                }
+                            } finally {
+                                permits.release();
+                            }
+                        });
+                    }
+                }
+
+                // Then one ready commit step on the caller's connection
+                Step next = null;
+                for (Step step : steps.values()) {
+                    if (!step.isolated && !step.started && ready(step)) {
+                        next = step;
+                        break;
+                    }
+                }
+                if (next != null) {
+                    next.started = true;
+                    execute(conn, next);
+                    next.done = true;
+                    rows += next.rows;
+                    continue;
+                }
+
+                if (pending == 0) {
+                    break;
+                }
+                // Nothing to do until an isolated step finishes
+                try {
+                    completed.take().get().done = true;
+                    pending--;
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    throw cause instanceof SQLException ? (SQLException) cause
+                            : new SQLException(cause.getMessage(), cause);
+                }
+            }
+            finished = true;
+        } finally {
+            if (!finished) {
+                abort(executor);
+            }
+            // Returns only once every isolated step has ended, so the caller can clean up after them
+            executor.close();
+        }
+
+        for (Step step : steps.values()) {
+            if (!step.done) {
+                throw new SQLException("Step " + step.name + " never ran (dependency cycle?)");
+            }
+        }
+        long stepMillis = steps.values().stream().mapToLong(s -> s.millis).sum();
+        System.out.println("  > Steps: " + stepMillis + " ms in total, " + (System.currentTimeMillis() - start) +
+                " ms wall time");
+        return rows;
+    }
+
+    private boolean ready(Step step) {
+        for (String dependency : step.after) {
+            if (!steps.get(dependency).done) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Stop the isolated steps and wait for them: no further statement starts, running ones are
+     * cancelled on the server (interrupting the thread does not stop a JDBC call). A statement
+     * that passed the aborted check just before the flag was set may start after a cancel, so
+     * the cancel is repeated until every step has ended.
+     */
+    private void abort(ExecutorService executor) {
+        aborted = true;
+        executor.shutdown();
+        boolean interrupted = false;
+        while (true) {
+            cancelRunning();
+            try {
+                if (executor.awaitTermination(CANCEL_RETRY_MILLIS, TimeUnit.MILLISECONDS)) {
+                    break;
+                }
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void cancelRunning() {
+        for (Statement stmt : isolatedStatements) {
+            try {
+                stmt.cancel();
+            } catch (SQLException e) {
+                System.err.println("⚠️ Failed to cancel a transform step: " + e.getMessage());
+            }
+        }
+    }
+
+    private void execute(Connection conn, Step step) throws SQLException {
+        long start = System.currentTimeMillis();
+        try (Statement stmt = conn.createStatement()) {
+            if (step.isolated) {
+                isolatedStatements.add(stmt);
+            }
+            try {
+                for (String sql : step.sql) {
+                    // No new statement once the run is aborted (abort() cancels the one in flight)
+                    if (step.isolated && aborted) {
+                        throw new SQLException("run aborted");
+                    }
+                    step.rows = stmt.executeUpdate(sql);
+                }
+            } finally {
+                isolatedStatements.remove(stmt);
+            }
+        } catch (SQLException e) {
+            throw new SQLException(step.name + ": " + e.getMessage(), e);
+        }
+        step.millis = System.currentTimeMillis() - start;
+        System.out.println("  > " + step.name + ": " + step.rows + " rows (" + step.millis + " ms)");
+    }
+}
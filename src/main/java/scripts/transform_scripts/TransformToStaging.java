@@ -2,15 +2,22 @@ package scripts.transform_scripts;
 
 import utils.DBConn;
 import utils.EmailSender;
+import utils.FactPartitions;
 import utils.LoadConfig;
+import utils.StagingBatchLog;
 import org.w3c.dom.Element;
 
 import java.sql.Connection;
-import java.sql.PreparedStatement;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 public class TransformToStaging {
 
@@ -36,16 +43,52 @@ public class TransformToStaging {
             controlDB = connectControlDB(config);
             stagingDB = connectStagingDB(config);
 
-            checkTodayProcessSuccess();
+            // Incremental staging: only batches not transformed yet, several runs per day are fine
+            // Delta transform: batches after the high-water mark of each raw table
+            boolean delta = isDeltaTransform(config);
+            if (delta && !isIncremental(config)) {
+                throw new IllegalStateException("<transform><mode>delta</mode> needs <load><incremental>true</incremental>");
+            }
+            Map<String, List<String>> batches = null;
+            Set<String> allBatches = new LinkedHashSet<>();
+            StagingBatchLog batchLog = new StagingBatchLog(controlDB);
+            if (isIncremental(config)) {
+                batches = new LinkedHashMap<>();
+                List<String> pending = delta ? null : batchLog.pendingBatches();
+                for (String table : RAW_TABLES) {
+                    batches.put(table, delta ? batchLog.batchesAfterWatermark(table) : pending);
+                    allBatches.addAll(batches.get(table));
+                }
+                if (allBatches.isEmpty()) {
+                    System.out.println("Không có batch mới trong staging. Dừng tiến trình.");
+                    System.exit(0);
+                }
+                System.out.println("[Incremental] Pending batches: " + allBatches);
+            } else {
+                checkTodayProcessSuccess();
+            }
 
             // Log process
             execId = prepareTransformProcess();
 
+            // Month partitions of the facts (create ahead, retention), before the transaction locks them
+            new FactPartitions(config).maintain(stagingDB);
+
             // Thực hiện Transform
-            int totalRows = transformData(execId);
+            int totalRows = transformData(execId, isPayloadStore(config), isTypedStaging(config), delta,
+                    parallelSteps(config), batches);
+            if (batches != null) {
+                batchLog.markTransformed(new ArrayList<>(allBatches));
+            }
+            if (delta) {
+                for (String table : RAW_TABLES) {
+                    batchLog.advanceWatermark(table, batches.get(table));
+                }
+            }
 
             updateProcessLogStatus(execId, "success", totalRows, 0, "Transform Success");
             System.out.println("\nTRANSFORM COMPLETED SUCCESSFULLY");
+            System.out.println("Pool " + stagingDB.getPoolStats());
             System.exit(0);
 
         } catch (Exception e) {
@@ -57,25 +100,52 @@ public class TransformToStaging {
         }
     }
 
-    private static int transformData(String execId) throws Exception {
+    /**
+     * Delta mode (<transform><mode>delta</mode>): stg_* are not truncated, rows of the new batches
+     * are upserted and only inserted keys or keys whose hash_key changed are written (tagged with
+     * this run's transform_exec_id); the dimension and fact upserts then read only those rows.
+     * See database/sql/staging_delta_transform.sql.
+     *
+     * Steps run as a DAG (TransformDag): the four raw-to-staging SELECTs are independent and run in
+     * parallel into scratch tables (stg_*__<exec id>), up to <transform><parallelSteps> at a time; publishing
+     * them into stg_* and the dim/fact upserts run in one transaction, each once its inputs are done,
+     * so one commit (or rollback) still covers staging, dimensions and facts.
+     */
+    private static int transformData(String execId, boolean payloadStore, boolean typed, boolean delta,
+                                     int parallelSteps, Map<String, List<String>> batches) throws Exception {
         System.out.println("[Process] Starting Data Transformation...");
         Connection conn = null;
-        int totalUpdated = 0;
 
         try {
             conn = stagingDB.getConnection();
             conn.setAutoCommit(false);
-
-            // --- PHASE 1: RAW TO STAGING ---
-            System.out.println("\n--- [PHASE 1] RAW TO STAGING ---");
+            TransformDag dag = new TransformDag(stagingDB, parallelSteps);
+
+            // --- PHASE 1: RAW TO STAGING (scratch tables built in parallel) ---
+
+            // Payload store: the row JSON is in raw_payload, raw tables only keep payload_hash
+            String payload = payloadStore ? "p.payload" : "r.raw_payload";
+            String payloadJoin = payloadStore ? "LEFT JOIN raw_payload p ON p.payload_hash = r.payload_hash " : "";
+            if (payloadStore && batches != null) {
+                payloadJoin = "LEFT JOIN raw_payload p ON p.payload_hash = r.payload_hash AND p.load_batch_id = r.load_batch_id ";
+            }
+            // Delta: rows touched by this run
+            String execLiteral = "'" + execId.replace("'", "''") + "'";
+            String execColumn = delta ? ", transform_exec_id" : "";
+            String execValue = delta ? ", " + execLiteral : "";
+            String changed = delta ? "WHERE transform_exec_id = " + execLiteral + " " : "";
+            String changedS = delta ? "WHERE s.transform_exec_id = " + execLiteral + " " : "";
 
             // 1.1 Location
-            totalUpdated += executeSQL(conn, "Staging Location",
-                    "TRUNCATE TABLE stg_location",
-                    "INSERT INTO stg_location (location_id, city, region, country, lat, lon, tz_id, \"localtime\", localtime_epoch, record_status, hash_key, source_system, batch_id) " +
+            String locationColumns = "location_id, city, region, country, lat, lon, tz_id, \"localtime\", localtime_epoch, " +
+                    "record_status, hash_key, source_system, batch_id" + execColumn;
+            stagingStep(dag, delta, execId, "Location", "stg_location", "location_id", locationColumns,
                             "SELECT DISTINCT ON (r.name) r.name, r.name, r.region, r.country, CAST(r.lat AS float8), CAST(r.lon AS float8), " +
 
-                            "   r.localtime AS tz_id, " +
+                            "   r.tz_id, " +
+
+                            (typed ?
+                            "   to_timestamp(r.localtime_epoch) AS \"localtime\", r.localtime_epoch, " :
 
                             "   CASE WHEN TRIM(r.localtime_epoch) ~ '^[0-9]+$' AND TRIM(r.localtime_epoch) != '' " +
                             "       THEN to_timestamp(CAST(TRIM(r.localtime_epoch) AS double precision)) " +
@@ -85,40 +155,38 @@ public class TransformToStaging {
                             "   CASE WHEN TRIM(r.localtime_epoch) ~ '^[0-9]+$' AND TRIM(r.localtime_epoch) != '' " +
                             "       THEN CAST(TRIM(r.localtime_epoch) AS BIGINT) " +
                             "       ELSE NULL " +
-                            "   END AS localtime_epoch, " +
+                            "   END AS localtime_epoch, ") +
 
                             "   'pending', " +
-                            "   MD5(CONCAT(r.name, r.region, r.country, r.lat, r.lon, r.localtime)), " +
-                            "   r.source_system, r.batch_id " +
-                            "FROM raw_weather_location r " +
+                            // Chỉ thuộc tính mô tả, localtime đổi mỗi lần extract
+                            "   MD5(CONCAT(r.name, r.region, r.country, r.lat, r.lon, r.tz_id)), " +
+                            "   r.source_system, r.batch_id" + execValue + " " +
+                            "FROM raw_weather_location r " + batchFilter(batches, "raw_weather_location") +
                             "ORDER BY r.name, r.batch_id DESC");
 
             // 1.2 Condition
-            totalUpdated += executeSQL(conn, "Staging Condition",
-                    "TRUNCATE TABLE stg_weather_condition",
-                    "INSERT INTO stg_weather_condition (condition_id, code, text, icon, record_status, hash_key, source_system, batch_id) " +
+            String conditionColumns = "condition_id, code, text, icon, record_status, hash_key, source_system, batch_id" + execColumn;
+            stagingStep(dag, delta, execId, "Condition", "stg_weather_condition", "condition_id", conditionColumns,
                             "SELECT DISTINCT ON (r.code) r.code, CAST(r.code AS int4), r.text, r.icon, 'pending', " +
                             "MD5(CONCAT(r.code, r.text, r.icon)), " +
-                            "r.source_system, r.batch_id " +
-                            "FROM raw_weather_condition r " +
+                            "r.source_system, r.batch_id" + execValue + " " +
+                            "FROM raw_weather_condition r " + batchFilter(batches, "raw_weather_condition") +
                             "ORDER BY r.code, r.batch_id DESC");
 
             // 1.3 Observation - BỔ SUNG ĐẦY ĐỦ TRƯỜNG
-            totalUpdated += executeSQL(conn, "Staging Observation",
-                    "TRUNCATE TABLE stg_weather_observation",
-                    "INSERT INTO stg_weather_observation (" +
-                            "   observation_id, location_id, condition_id, observation_date, observation_time, " +
-                            "   is_day, " +
-                            "   temp_c, temp_f, feelslike_c, feelslike_f, " +
-                            "   pressure_mb, pressure_in, precip_mm, precip_in, " +
-                            "   humidity_pct, cloud_pct, uv_index, " +
-                            "   vis_km, vis_miles, " +
-                            "   wind_kph, wind_mph, gust_kph, gust_mph, wind_deg, wind_dir, " +
-                            "   record_status, hash_key, source_system, batch_id" +
-                            ") " +
+            String observationColumns =
+                    "observation_id, location_id, condition_id, observation_date, observation_time, " +
+                            "is_day, " +
+                            "temp_c, temp_f, feelslike_c, feelslike_f, " +
+                            "pressure_mb, pressure_in, precip_mm, precip_in, " +
+                            "humidity_pct, cloud_pct, uv_index, " +
+                            "vis_km, vis_miles, " +
+                            "wind_kph, wind_mph, gust_kph, gust_mph, wind_deg, wind_dir, " +
+                            "record_status, hash_key, source_system, batch_id" + execColumn;
+            stagingStep(dag, delta, execId, "Observation", "stg_weather_observation", "observation_id", observationColumns,
                             "SELECT DISTINCT ON (r.location_name, r.last_updated) " +
                             "   MD5(CONCAT(r.location_name, r.last_updated)), r.location_name, " +
-                            "   (r.raw_payload->>'condition_code'), " +
+                            "   (" + payload + "->>'condition_code'), " +
 
                             // Date & Time
                             "   CASE WHEN LENGTH(TRIM(r.last_updated)) < 10 THEN CAST('1900-01-01' AS date) ELSE CAST(r.last_updated AS date) END, " +
@@ -128,87 +196,90 @@ public class TransformToStaging {
                             "   CASE WHEN r.is_day IN ('0', '1') THEN CAST(r.is_day AS boolean) ELSE NULL END, " +
 
                             // Temperature (C & F)
-                            "   CAST(CASE WHEN r.temp_c ~ '^[-+]?[0-9]*\\.?[0-9]+$' THEN r.temp_c ELSE NULL END AS float8), " +
-                            "   CAST(CASE WHEN r.temp_f ~ '^[-+]?[0-9]*\\.?[0-9]+$' THEN r.temp_f ELSE NULL END AS float8), " +
-                            "   CAST(CASE WHEN r.feelslike_c ~ '^[-+]?[0-9]*\\.?[0-9]+$' THEN r.feelslike_c ELSE NULL END AS float8), " +
-                            "   CAST(CASE WHEN r.feelslike_f ~ '^[-+]?[0-9]*\\.?[0-9]+$' THEN r.feelslike_f ELSE NULL END AS float8), " +
+                            "   " + decimal(typed, "temp_c") + ", " +
+                            "   " + decimal(typed, "temp_f") + ", " +
+                            "   " + decimal(typed, "feelslike_c") + ", " +
+                            "   " + decimal(typed, "feelslike_f") + ", " +
 
                             // Pressure (mb & in)
-                            "   CAST(CASE WHEN r.pressure_mb ~ '^[-+]?[0-9]*\\.?[0-9]+$' THEN r.pressure_mb ELSE NULL END AS float8), " +
-                            "   CAST(CASE WHEN r.pressure_in ~ '^[-+]?[0-9]*\\.?[0-9]+$' THEN r.pressure_in ELSE NULL END AS float8), " +
+                            "   " + decimal(typed, "pressure_mb") + ", " +
+                            "   " + decimal(typed, "pressure_in") + ", " +
 
                             // Precipitation (mm & in)
-                            "   CAST(CASE WHEN r.precip_mm ~ '^[-+]?[0-9]*\\.?[0-9]+$' THEN r.precip_mm ELSE NULL END AS float8), " +
-                            "   CAST(CASE WHEN r.precip_in ~ '^[-+]?[0-9]*\\.?[0-9]+$' THEN r.precip_in ELSE NULL END AS float8), " +
+                            "   " + decimal(typed, "precip_mm") + ", " +
+                            "   " + decimal(typed, "precip_in") + ", " +
 
                             // Humidity & Cloud
-                            "   CAST(NULLIF(r.humidity, '') AS int2), " +
-                            "   CAST(NULLIF(r.cloud, '') AS int2), " +
+                            "   " + (typed ? "CAST(r.humidity AS int2)" : "CAST(NULLIF(r.humidity, '') AS int2)") + ", " +
+                            "   " + (typed ? "CAST(r.cloud AS int2)" : "CAST(NULLIF(r.cloud, '') AS int2)") + ", " +
 
                             // UV
-                            "   CAST(CASE WHEN r.uv ~ '^[-+]?[0-9]*\\.?[0-9]+$' THEN r.uv ELSE NULL END AS float8), " +
+                            "   " + decimal(typed, "uv") + ", " +
 
                             // Visibility (km & miles)
-                            "   CAST(CASE WHEN r.vis_km ~ '^[-+]?[0-9]*\\.?[0-9]+$' THEN r.vis_km ELSE NULL END AS float8), " +
-                            "   CAST(CASE WHEN r.vis_miles ~ '^[-+]?[0-9]*\\.?[0-9]+$' THEN r.vis_miles ELSE NULL END AS float8), " +
+                            "   " + decimal(typed, "vis_km") + ", " +
+                            "   " + decimal(typed, "vis_miles") + ", " +
 
                             // Wind (kph, mph, gust)
-                            "   CAST(CASE WHEN r.wind_kph ~ '^[-+]?[0-9]*\\.?[0-9]+$' THEN r.wind_kph ELSE NULL END AS float8), " +
-                            "   CAST(CASE WHEN r.wind_mph ~ '^[-+]?[0-9]*\\.?[0-9]+$' THEN r.wind_mph ELSE NULL END AS float8), " +
-                            "   CAST(CASE WHEN r.gust_kph ~ '^[-+]?[0-9]*\\.?[0-9]+$' THEN r.gust_kph ELSE NULL END AS float8), " +
-                            "   CAST(CASE WHEN r.gust_mph ~ '^[-+]?[0-9]*\\.?[0-9]+$' THEN r.gust_mph ELSE NULL END AS float8), " +
+                            "   " + decimal(typed, "wind_kph") + ", " +
+                            "   " + decimal(typed, "wind_mph") + ", " +
+                            "   " + decimal(typed, "gust_kph") + ", " +
+                            "   " + decimal(typed, "gust_mph") + ", " +
 
                             // Wind direction
-                            "   CAST(CASE WHEN r.wind_degree ~ '^[-+]?[0-9]+$' THEN r.wind_degree ELSE NULL END AS int4), " +
+                            "   " + integer(typed, "wind_degree") + ", " +
                             "   r.wind_dir, " +
 
                             // Metadata
                             "   'pending', " +
                             "   MD5(CONCAT(r.temp_c, r.humidity, r.precip_mm, r.uv, r.wind_kph, r.pressure_mb, r.vis_km, r.is_day)), " +
-                            "   r.source_system, r.batch_id " +
-                            "FROM raw_weather_observation r " +
+                            "   r.source_system, r.batch_id" + execValue + " " +
+                            "FROM raw_weather_observation r " + payloadJoin + batchFilter(batches, "raw_weather_observation") +
                             "ORDER BY r.location_name, r.last_updated, r.batch_id DESC");
 
             // 1.4 Air Quality (FIX: Ép kiểu tường minh cho to_timestamp)
-            totalUpdated += executeSQL(conn, "Staging Air Quality",
-                    "TRUNCATE TABLE stg_air_quality",
-                    "INSERT INTO stg_air_quality (aq_id, location_id, observation_time, co, no2, o3, so2, pm2_5, pm10, us_epa_index, gb_defra_index, record_status, hash_key, source_system, batch_id) " +
-                            "SELECT DISTINCT ON (l.name, r.batch_id) " +
-                            "MD5(CONCAT(l.name, r.batch_id)), l.name, " +
-                            // FIX MỚI: Ép kiểu l.localtime_epoch sang double precision
-                            "   COALESCE(to_timestamp(CAST(l.localtime_epoch AS double precision)), CAST('1900-01-01 00:00:00' AS timestamp)) AS observation_time, " +
+            // FIX MỚI: Ép kiểu l.localtime_epoch sang double precision
+            String aqTime = "COALESCE(to_timestamp(CAST(l.localtime_epoch AS double precision)), CAST('1900-01-01 00:00:00' AS timestamp))";
+            String airQualityColumns = "aq_id, location_id, observation_time, co, no2, o3, so2, pm2_5, pm10, " +
+                    "us_epa_index, gb_defra_index, record_status, hash_key, source_system, batch_id" + execColumn;
+            stagingStep(dag, delta, execId, "Air Quality", "stg_air_quality", "aq_id", airQualityColumns,
+                            // Khóa theo địa điểm + thời điểm đo (không theo batch), cùng số đo ở batch sau không tạo dòng mới
+                            "SELECT DISTINCT ON (l.name, observation_time) " +
+                            "MD5(CONCAT(l.name, " + aqTime + ")), l.name, " +
+                            "   " + aqTime + " AS observation_time, " +
+                            (typed ?
+                            "r.co, r.no2, r.o3, r.so2, r.pm2_5, r.pm10, r.us_epa_index, r.gb_defra_index, 'pending', " :
                             "CAST(r.co AS float8), CAST(r.no2 AS float8), CAST(r.o3 AS float8), CAST(r.so2 AS float8), CAST(r.pm2_5 AS float8), CAST(r.pm10 AS float8), " +
-                            "CAST(r.us_epa_index AS int4), CAST(r.gb_defra_index AS int4), 'pending', " +
+                            "CAST(r.us_epa_index AS int4), CAST(r.gb_defra_index AS int4), 'pending', ") +
                             "MD5(CONCAT(r.co, r.no2, r.pm2_5, r.pm10, r.us_epa_index)), " +
-                            "r.source_system, r.batch_id " +
+                            "r.source_system, r.batch_id" + execValue + " " +
                             "FROM raw_air_quality r JOIN raw_weather_location l ON r.batch_id = l.batch_id " +
-                            "ORDER BY l.name, r.batch_id DESC");
-
+                            (batches == null ? "" : "AND l.load_batch_id = r.load_batch_id ") +
+                            batchFilter(batches, "raw_air_quality") +
+                            "ORDER BY l.name, observation_time, r.batch_id DESC");
 
-            // --- PHASE 2: STAGING TO DIM/FACT ---
-            System.out.println("\n--- [PHASE 2] STAGING TO DIM/FACT ---");
+            // --- PHASE 2: STAGING TO DIM/FACT (in the transaction, after their inputs) ---
 
             // 2.1 Dim Location
-            totalUpdated += executeUpdate(conn, "Dim Location",
+            dag.onCommit("Dim Location", List.of("Staging Location"),
                     "INSERT INTO dim_location (location_id, city, region, country, lat, lon, tz_id, \"localtime\", localtime_epoch, hash_key, updated_at) " +
-                            "SELECT location_id, city, region, country, lat, lon, tz_id, \"localtime\", localtime_epoch, hash_key, CURRENT_TIMESTAMP FROM stg_location " +
+                            "SELECT location_id, city, region, country, lat, lon, tz_id, \"localtime\", localtime_epoch, hash_key, CURRENT_TIMESTAMP FROM stg_location " + changed +
                             "ON CONFLICT (location_id) DO UPDATE SET " +
                             "   city = EXCLUDED.city, region = EXCLUDED.region, lat = EXCLUDED.lat, lon = EXCLUDED.lon, " +
                             "   \"localtime\" = EXCLUDED.\"localtime\", localtime_epoch = EXCLUDED.localtime_epoch, " +
                             "   hash_key = EXCLUDED.hash_key, updated_at = CURRENT_TIMESTAMP " +
-                            "WHERE dim_location.hash_key IS DISTINCT FROM EXCLUDED.hash_key " +
-                            "   OR dim_location.localtime_epoch IS DISTINCT FROM EXCLUDED.localtime_epoch");
+                            "WHERE dim_location.hash_key IS DISTINCT FROM EXCLUDED.hash_key");
 
             // 2.2 Dim Condition
-            totalUpdated += executeUpdate(conn, "Dim Condition",
+            dag.onCommit("Dim Condition", List.of("Staging Condition"),
                     "INSERT INTO dim_weather_condition (condition_id, code, text, icon, hash_key, updated_at) " +
-                            "SELECT condition_id, code, text, icon, hash_key, CURRENT_TIMESTAMP FROM stg_weather_condition " +
+                            "SELECT condition_id, code, text, icon, hash_key, CURRENT_TIMESTAMP FROM stg_weather_condition " + changed +
                             "ON CONFLICT (condition_id) DO UPDATE SET " +
                             "   text = EXCLUDED.text, icon = EXCLUDED.icon, hash_key = EXCLUDED.hash_key, updated_at = CURRENT_TIMESTAMP " +
                             "WHERE dim_weather_condition.hash_key IS DISTINCT FROM EXCLUDED.hash_key");
 
             // 2.3 Fact Weather Daily - BỔ SUNG ĐẦY ĐỦ TRƯỜNG
-            totalUpdated += executeUpdate(conn, "Fact Weather",
+            dag.onCommit("Fact Weather", List.of("Dim Location", "Dim Condition", "Staging Observation"),
                     "INSERT INTO fact_weather_daily (" +
                             "   location_sk, condition_sk, date_sk, observation_date, observation_time, " +
                             "   is_day, " +
@@ -232,7 +303,7 @@ public class TransformToStaging {
                             "FROM stg_weather_observation s " +
                             "JOIN dim_location dl ON s.location_id = dl.location_id " +
                             "LEFT JOIN dim_weather_condition dwc ON s.condition_id = dwc.condition_id " +
-                            "JOIN dim_date dd ON s.observation_date = dd.full_date " +
+                            "JOIN dim_date dd ON s.observation_date = dd.full_date " + changedS +
                             "ON CONFLICT (location_sk, observation_time) DO UPDATE SET " +
                             "   condition_sk = EXCLUDED.condition_sk, " +
                             "   temp_c = EXCLUDED.temp_c, temp_f = EXCLUDED.temp_f, " +
@@ -252,14 +323,14 @@ public class TransformToStaging {
                             "   OR fact_weather_daily.wind_kph IS DISTINCT FROM EXCLUDED.wind_kph");
 
             // 2.4 Fact Air Quality
-            totalUpdated += executeUpdate(conn, "Fact Air Quality",
+            dag.onCommit("Fact Air Quality", List.of("Dim Location", "Staging Air Quality"),
                     "INSERT INTO fact_air_quality_daily (location_sk, date_sk, observation_time, " +
                             "pm2_5, pm10, us_epa_index, co, no2, o3, so2, gb_defra_index, batch_id, source_system, loaded_at) " +
                             "SELECT dl.location_sk, dd.date_sk, s.observation_time, " +
                             "s.pm2_5, s.pm10, s.us_epa_index, s.co, s.no2, s.o3, s.so2, s.gb_defra_index, s.batch_id, s.source_system, CURRENT_TIMESTAMP " +
                             "FROM stg_air_quality s " +
                             "JOIN dim_location dl ON s.location_id = dl.location_id " +
-                            "JOIN dim_date dd ON CAST(s.observation_time AS date) = dd.full_date " +
+                            "JOIN dim_date dd ON CAST(s.observation_time AS date) = dd.full_date " + changedS +
                             "ON CONFLICT (location_sk, observation_time) DO UPDATE SET " +
                             "   pm2_5 = EXCLUDED.pm2_5, us_epa_index = EXCLUDED.us_epa_index, " +
                             "   co = EXCLUDED.co, no2 = EXCLUDED.no2, o3 = EXCLUDED.o3, so2 = EXCLUDED.so2, gb_defra_index = EXCLUDED.gb_defra_index, " +
@@ -267,11 +338,19 @@ public class TransformToStaging {
                             "WHERE fact_air_quality_daily.pm2_5 IS DISTINCT FROM EXCLUDED.pm2_5 " +
                             "   OR fact_air_quality_daily.co IS DISTINCT FROM EXCLUDED.co");
 
+            // Steps run as soon as their inputs are ready, the scratch tables go with the commit
+            int totalUpdated = dag.run(conn);
+            try (Statement stmt = conn.createStatement()) {
+                for (String table : STAGING_TABLES) {
+                    stmt.execute("DROP TABLE IF EXISTS " + scratchTable(table, execId));
+                }
+            }
             conn.commit();
             return totalUpdated;
 
         } catch (Exception e) {
             try { if(conn != null) conn.rollback(); } catch (SQLException ex) {}
+            dropScratchTables(execId);
             throw e;
         } finally {
             try { if(conn != null) conn.close(); } catch (SQLException ex) {}
@@ -279,34 +358,130 @@ public class TransformToStaging {
     }
 
     // --- Helper Methods ---
-    private static int executeSQL(Connection conn, String name, String truncateSql, String insertSql) throws SQLException {
-        try (Statement stmt = conn.createStatement()) {
-            System.out.print("  > " + name + "... ");
-            if (truncateSql != null) stmt.execute(truncateSql);
-            int rows = stmt.executeUpdate(insertSql);
-            System.out.println("Inserted " + rows + " rows.");
-            return rows;
+    private static final List<String> RAW_TABLES = List.of(
+            "raw_weather_location", "raw_weather_condition", "raw_weather_observation", "raw_air_quality");
+    private static final List<String> STAGING_TABLES = List.of(
+            "stg_location", "stg_weather_condition", "stg_weather_observation", "stg_air_quality");
+
+    /**
+     * Scratch table of one run, named after its exec id so concurrent runs never share one
+     */
+    private static String scratchTable(String table, String execId) {
+        return table + "__" + execId.toLowerCase().replaceAll("[^a-z0-9]", "_");
+    }
+
+    /**
+     * Failed run: the isolated steps created their scratch tables outside the rolled back
+     * transaction, drop them on a separate autocommit connection
+     */
+    private static void dropScratchTables(String execId) {
+        try (Connection conn = stagingDB.getConnection();
+             Statement stmt = conn.createStatement()) {
+            for (String table : STAGING_TABLES) {
+                stmt.execute("DROP TABLE IF EXISTS " + scratchTable(table, execId));
+            }
+        } catch (SQLException e) {
+            System.err.println("⚠️ Failed to drop scratch tables of " + execId + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Incremental: only the batches of this raw table (partition pruning on load_batch_id)
+     */
+    private static String batchFilter(Map<String, List<String>> batches, String rawTable) {
+        if (batches == null) {
+            return "";
+        }
+        List<String> ids = batches.get(rawTable);
+        return ids.isEmpty() ? "WHERE false " : "WHERE r.load_batch_id IN " + StagingBatchLog.inList(ids) + " ";
+    }
+
+    /**
+     * Delta: new keys are inserted, an existing key is only rewritten when its hash_key changed
+     * and the row does not come from an older extract batch than the one staging has
+     */
+    private static String changedOnly(String table, String key, String columns) {
+        StringBuilder set = new StringBuilder();
+        for (String column : columns.split(",")) {
+            column = column.trim();
+            if (column.equals(key)) continue;
+            if (set.length() > 0) set.append(", ");
+            set.append(column).append(" = EXCLUDED.").append(column);
         }
+        return " ON CONFLICT (" + key + ") DO UPDATE SET " + set +
+                " WHERE " + table + ".hash_key IS DISTINCT FROM EXCLUDED.hash_key" +
+                " AND EXCLUDED.batch_id >= " + table + ".batch_id";
     }
 
-    private static int executeUpdate(Connection conn, String name, String sql) throws SQLException {
-        try (PreparedStatement ps = conn.prepareStatement(sql)) {
-            System.out.print("  > " + name + "... ");
-            int rows = ps.executeUpdate();
-            System.out.println("Upserted " + rows + " rows.");
-            return rows;
+    /**
+     * Raw to staging as two steps: the SELECT fills an unlogged scratch table on its own connection
+     * (parallel, nothing visible yet), then the scratch rows replace (rebuild) or are upserted into
+     * (delta) the staging table inside the run's transaction
+     */
+    private static void stagingStep(TransformDag dag, boolean delta, String execId, String name, String table,
+                                    String key, String columns, String select) {
+        String scratch = scratchTable(table, execId);
+        dag.isolated("Build " + name, List.of(),
+                "DROP TABLE IF EXISTS " + scratch,
+                "CREATE UNLOGGED TABLE " + scratch + " (LIKE " + table + " INCLUDING DEFAULTS)",
+                "INSERT INTO " + scratch + " (" + columns + ") " + select);
+
+        String publish = "INSERT INTO " + table + " (" + columns + ") SELECT " + columns + " FROM " + scratch;
+        if (delta) {
+            dag.onCommit("Staging " + name, List.of("Build " + name), publish + changedOnly(table, key, columns));
+        } else {
+            dag.onCommit("Staging " + name, List.of("Build " + name), "TRUNCATE TABLE " + table, publish);
         }
     }
 
+    private static boolean isIncremental(LoadConfig config) {
+        Element load = LoadConfig.getElement(config.getXmlDoc(), "load");
+        return Boolean.parseBoolean(LoadConfig.getValue(load, "incremental"));
+    }
+
+    private static boolean isPayloadStore(LoadConfig config) {
+        Element load = LoadConfig.getElement(config.getXmlDoc(), "load");
+        return Boolean.parseBoolean(LoadConfig.getValue(load, "payloadStore"));
+    }
+
+    private static boolean isDeltaTransform(LoadConfig config) {
+        Element transform = LoadConfig.getElement(config.getXmlDoc(), "transform");
+        return "delta".equalsIgnoreCase(LoadConfig.getValue(transform, "mode"));
+    }
+
+    private static int parallelSteps(LoadConfig config) {
+        Element transform = LoadConfig.getElement(config.getXmlDoc(), "transform");
+        String value = LoadConfig.getValue(transform, "parallelSteps");
+        return value.isEmpty() ? 4 : Integer.parseInt(value);
+    }
+
+    private static boolean isTypedStaging(LoadConfig config) {
+        Element load = LoadConfig.getElement(config.getXmlDoc(), "load");
+        return Boolean.parseBoolean(LoadConfig.getValue(load, "typedStaging"));
+    }
+
+    /**
+     * Numeric raw column: already float8 with typed staging, otherwise text checked by regex
+     */
+    private static String decimal(boolean typed, String column) {
+        return typed ? "r." + column
+                : "CAST(CASE WHEN r." + column + " ~ '^[-+]?[0-9]*\\.?[0-9]+$' THEN r." + column + " ELSE NULL END AS float8)";
+    }
+
+    private static String integer(boolean typed, String column) {
+        return typed ? "r." + column
+                : "CAST(CASE WHEN r." + column + " ~ '^[-+]?[0-9]+$' THEN r." + column + " ELSE NULL END AS int4)";
+    }
+
     private static DBConn connectControlDB(LoadConfig config) throws Exception {
         Element control = LoadConfig.getElement(config.getXmlDoc(), "control");
-        return new DBConn(LoadConfig.getValue(control, "url"), LoadConfig.getValue(control, "username"), LoadConfig.getValue(control, "password"));
+        return DBConn.fromConfig(control);
     }
 
     private static DBConn connectStagingDB(LoadConfig config) throws Exception {
         Element database = LoadConfig.getElement(config.getXmlDoc(), "database");
         Element staging = LoadConfig.getChildElement(database, "staging");
-        return new DBConn(LoadConfig.getValue(staging, "url"), LoadConfig.getValue(staging, "username"), LoadConfig.getValue(staging, "password"));
+        return DBConn.fromConfig(staging);
     }
 
     private static void checkTodayProcessSuccess() {
@@ -0,0 +1,130 @@
+package utils;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+/**
+ * Crash-safe file output: bytes go to <file>.tmp, commit() fsyncs it, renames it
+ * atomically onto <file> and then writes the <file>.manifest (format, row count, size, SHA-256).
+ * A reader that only accepts files with a matching manifest never sees a half-written file.
+ * close() without commit() deletes the temp file and leaves the target untouched.
+ *
+ * Encoders (text writer, gzip...) are layered on stream(); closing them does not
+ * close the file, commit() does.
+ */
+public class AtomicFileWriter implements Closeable {
+
+    private final Path target;
+    private final Path tempPath;
+    private final String format;
+    private final FileOutputStream out;
+    private final MessageDigest digest;
+    private final OutputStream stream;
+    private boolean done;
+
+    public AtomicFileWriter(Path target, String format) throws IOException {
+        this.target = target;
+        this.format = format;
+        this.tempPath = target.resolveSibling(target.getFileName() + ".tmp");
+        if (target.getParent() != null) {
+            Files.createDirectories(target.getParent());
+        }
+        try {
+            this.digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+        this.out = new FileOutputStream(tempPath.toFile());
+        this.stream = new FilterOutputStream(new DigestOutputStream(new BufferedOutputStream(out, 64 * 1024), digest)) {
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                out.write(b, off, len);
+            }
+
+            @Override
+            public void close() throws IOException {
+                flush(); // file is closed by commit() / abort()
+            }
+        };
+    }
+
+    /**
+     * Output stream of the temp file
+     */
+    public OutputStream stream() {
+        return stream;
+    }
+
+    /**
+     * fsync temp file -> atomic rename onto target -> write manifest
+     */
+    public FileManifest commit(long rowCount) throws IOException {
+        stream.flush();
+        out.getFD().sync();
+        out.close();
+        done = true;
+
+        // An old manifest must never describe the new file
+        Files.deleteIfExists(FileManifest.pathFor(target));
+        Files.move(tempPath, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+
+        FileManifest manifest = new FileManifest(target.getFileName().toString(), format, rowCount,
+                Files.size(target), HexFormat.of().formatHex(digest.digest()));
+        manifest.writeFor(target);
+        syncDirectory(target);
+        return manifest;
+    }
+
+    /**
+     * Drop everything written so far
+     */
+    public void abort() {
+        if (done) {
+            return;
+        }
+        done = true;
+        try {
+            out.close();
+        } catch (IOException e) {
+            // ignore, temp file is deleted anyway
+        }
+        try {
+            Files.deleteIfExists(tempPath);
+        } catch (IOException e) {
+            System.err.println("WARNING: Cannot delete temp file " + tempPath + ": " + e.getMessage());
+        }
+    }
+
+    @Override
+    public void close() {
+        abort();
+    }
+
+    /**
+     * fsync the directory so the rename itself survives a crash (not supported on every OS)
+     */
+    static void syncDirectory(Path file) {
+        Path dir = file.toAbsolutePath().getParent();
+        if (dir == null) {
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(dir, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException | UnsupportedOperationException e) {
+            // Windows cannot open a directory, rename is still atomic
+        }
+    }
+}
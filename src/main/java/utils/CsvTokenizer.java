@@ -0,0 +1,233 @@
+package utils;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+
+/**
+ * Single pass RFC-4180 tokenizer over a Reader.
+ *
+ * Input is read in blocks into a reusable char buffer; the fields of the current
+ * record are unescaped into a second reusable buffer and only referenced by offsets,
+ * so nothing is allocated per record until a field is asked for as a String.
+ * Handles quoted fields with embedded commas, "" escapes and line breaks, and
+ * both LF and CRLF record endings.
+ *
+ * Not thread safe.
+ */
+public class CsvTokenizer {
+
+    private static final int EOF = -1;
+
+    private Reader reader;
+    private final char[] buffer;
+    private int position;
+    private int limit;
+
+    // fields of the current record: chars in fieldChars[starts[i] .. ends[i])
+    private char[] fieldChars = new char[1024];
+    private int fieldLength;
+    private int[] starts = new int[64];
+    private int[] ends = new int[64];
+    private boolean[] quoted = new boolean[64];
+    private int fieldCount;
+    private long recordNumber;
+    private long lineBreaks;
+    private long recordLine;
+
+    public CsvTokenizer(Reader reader) {
+        this(reader, 64 * 1024);
+    }
+
+    public CsvTokenizer(Reader reader, int bufferSize) {
+        this.reader = reader;
+        this.buffer = new char[bufferSize];
+    }
+
+    /**
+     * Continue on another input, buffers are kept (e.g. one tokenizer for many single-line strings)
+     */
+    public void reset(Reader reader) {
+        this.reader = reader;
+        this.position = 0;
+        this.limit = 0;
+        this.recordNumber = 0;
+        this.lineBreaks = 0;
+        this.fieldCount = 0;
+    }
+
+    /**
+     * Read the next record, false at end of input (an empty last line is not a record)
+     */
+    public boolean next() throws IOException {
+        fieldCount = 0;
+        fieldLength = 0;
+        recordLine = lineBreaks + 1;
+
+        int c = read();
+        if (c == EOF) {
+            return false;
+        }
+
+        while (true) {
+            int start = fieldLength;
+            boolean isQuoted = false;
+
+            if (c == '"') {
+                isQuoted = true;
+                // Quoted field: everything up to the closing quote, "" = one quote
+                while (true) {
+                    c = read();
+                    if (c == EOF) {
+                        throw new IOException("Unterminated quoted field in record " + (recordNumber + 1));
+                    }
+                    if (c == '"') {
+                        c = read();
+                        if (c != '"') {
+                            break; // closing quote, c is the char after it
+                        }
+                    }
+                    if (c == '\n') {
+                        lineBreaks++;
+                    }
+                    append((char) c);
+                }
+                // Lenient: keep any chars between closing quote and separator
+                while (c != ',' && c != '\n' && c != '\r' && c != EOF) {
+                    append((char) c);
+                    c = read();
+                }
+            } else {
+                while (c != ',' && c != '\n' && c != '\r' && c != EOF) {
+                    append((char) c);
+                    c = read();
+                }
+            }
+
+            addField(start, isQuoted);
+
+            if (c == ',') {
+                c = read();
+                continue;
+            }
+            if (c == '\r') {
+                c = read();
+                if (c != '\n' && c != EOF) {
+                    position--; // lone CR ends the record, keep the next char
+                }
+            }
+            if (c != EOF) {
+                lineBreaks++;
+            }
+            recordNumber++;
+            return true;
+        }
+    }
+
+    private int read() throws IOException {
+        if (position >= limit) {
+            limit = reader.read(buffer, 0, buffer.length);
+            position = 0;
+            if (limit <= 0) {
+                limit = 0;
+                return EOF;
+            }
+        }
+        return buffer[position++];
+    }
+
+    private void append(char c) {
+        if (fieldLength == fieldChars.length) {
+            char[] grown = new char[fieldChars.length * 2];
+            System.arraycopy(fieldChars, 0, grown, 0, fieldLength);
+            fieldChars = grown;
+        }
+        fieldChars[fieldLength++] = c;
+    }
+
+    private void addField(int start, boolean isQuoted) {
+        if (fieldCount == starts.length) {
+            int size = starts.length * 2;
+            starts = Arrays.copyOf(starts, size);
+            ends = Arrays.copyOf(ends, size);
+            quoted = Arrays.copyOf(quoted, size);
+        }
+        starts[fieldCount] = start;
+        ends[fieldCount] = fieldLength;
+        quoted[fieldCount] = isQuoted;
+        fieldCount++;
+    }
+
+    public int getFieldCount() {
+        return fieldCount;
+    }
+
+    /**
+     * 1-based number of the current record
+     */
+    public long getRecordNumber() {
+        return recordNumber;
+    }
+
+    /**
+     * 1-based line the current record starts on (differs from the record number after
+     * blank lines or quoted line breaks)
+     */
+    public long getLineNumber() {
+        return recordLine;
+    }
+
+    /**
+     * Field as it was in the file (unescaped), or null if the record has no such field
+     */
+    public String getField(int i) {
+        if (i < 0 || i >= fieldCount) {
+            return null;
+        }
+        return new String(fieldChars, starts[i], ends[i] - starts[i]);
+    }
+
+    /**
+     * Field without surrounding whitespace, null if missing or blank (no allocation for blank fields)
+     */
+    public String getTrimmedField(int i) {
+        if (i < 0 || i >= fieldCount) {
+            return null;
+        }
+        int start = starts[i];
+        int end = ends[i];
+        while (start < end && fieldChars[start] <= ' ') start++;
+        while (end > start && fieldChars[end - 1] <= ' ') end--;
+        return start == end ? null : new String(fieldChars, start, end - start);
+    }
+
+    /**
+     * True if the field is missing or only whitespace (same as getTrimmedField(i) == null, no allocation)
+     */
+    public boolean isBlank(int i) {
+        if (i < 0 || i >= fieldCount) {
+            return true;
+        }
+        for (int c = starts[i]; c < ends[i]; c++) {
+            if (fieldChars[c] > ' ') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public boolean isQuoted(int i) {
+        return i >= 0 && i < fieldCount && quoted[i];
+    }
+
+    /**
+     * Fields of the current record as Strings
+     */
+    public String[] getFields() {
+        String[] fields = new String[fieldCount];
+        for (int i = 0; i < fieldCount; i++) {
+            fields[i] = new String(fieldChars, starts[i], ends[i] - starts[i]);
+        }
+        return fields;
+    }
+}
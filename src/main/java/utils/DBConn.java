@@ -1,48 +1,194 @@
-package utils;
-
-import java.sql.*;
-
-public class DBConn {
-    private final String url;
-    private final String username;
-    private final String password;
-
-    public DBConn(String url, String username, String password) {
-        this.url = url;
-        this.username = username;
-        this.password = password;
-    }
-
-    public Connection getConnection() throws SQLException {
-        return DriverManager.getConnection(url, username, password);
-    }
-
-    public void executeQuery(String sql, ResultSetHandler handler, Object... params) throws SQLException {
-        try (Connection conn = getConnection();
-             PreparedStatement stmt = prepare(conn, sql, params);
-             ResultSet rs = stmt.executeQuery()) {
-
-            handler.handle(rs); // callback xử lý
-        }
-    }
-
-    public int executeUpdate(String sql, Object... params) throws SQLException {
-        try (Connection conn = getConnection();
-             PreparedStatement stmt = prepare(conn, sql, params)) {
-
-            return stmt.executeUpdate();
-        }
-    }
-
-    private PreparedStatement prepare(Connection conn, String sql, Object... params) throws SQLException {
-        PreparedStatement stmt = conn.prepareStatement(sql);
-        for (int i = 0; i < params.length; i++) {
-            stmt.setObject(i + 1, params[i]);
-        }
-        return stmt;
-    }
-
-    public interface ResultSetHandler {
-        void handle(ResultSet rs) throws SQLException;
-    }
-}
+package utils;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import com.zaxxer.hikari.metrics.IMetricsTracker;
+import org.w3c.dom.Element;
+
+import java.sql.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Connections to one database from a bounded pool (HikariCP).
+ * getConnection() borrows a connection, close() gives it back to the pool.
+ * The constructor opens the first connection (fails fast on a bad url/password).
+ *
+ * Pool settings per database in config.xml (all optional):
+ * <pool>
+ *     <maxSize>10</maxSize>                         max open connections, callers wait when all are in use
+ *     <minIdle>1</minIdle>                          connections kept open between calls
+ *     <maxLifetimeMinutes>30</maxLifetimeMinutes>   connections are replaced after this
+ *     <connectionTimeoutSeconds>30</connectionTimeoutSeconds>  max wait for a free connection
+ *     <validationQuery>SELECT 1</validationQuery>   empty = JDBC isValid()
+ *     <fetchSize>1000</fetchSize>                   rows per round trip of a query, 0 = whole result at once
+ * </pool>
+ *
+ * pgjdbc reads the whole result into memory unless the query runs inside a transaction with a
+ * fetch size (then it uses a cursor): executeQuery() does that, so memory is bounded by fetchSize
+ * rows instead of the result size. The fetch size is also the default of every statement.
+ */
+public class DBConn implements AutoCloseable {
+    private final HikariDataSource dataSource;
+    private final String name;
+    private final int fetchSize;
+
+    // Pool metrics
+    private final AtomicLong acquired = new AtomicLong();
+    private final AtomicLong waitNanos = new AtomicLong();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+    private final AtomicLong timeouts = new AtomicLong();
+
+    public DBConn(String url, String username, String password) {
+        this(url, username, password, null);
+    }
+
+    public DBConn(String url, String username, String password, Element pool) {
+        String database = url.substring(url.lastIndexOf('/') + 1);
+        this.name = database.contains("?") ? database.substring(0, database.indexOf('?')) : database;
+
+        HikariConfig config = new HikariConfig();
+        config.setPoolName("db-" + name);
+        config.setJdbcUrl(url);
+        config.setUsername(username);
+        config.setPassword(password);
+        config.setMaximumPoolSize(intValue(pool, "maxSize", 10));
+        config.setMinimumIdle(intValue(pool, "minIdle", 1));
+        config.setMaxLifetime(TimeUnit.MINUTES.toMillis(intValue(pool, "maxLifetimeMinutes", 30)));
+        config.setConnectionTimeout(TimeUnit.SECONDS.toMillis(intValue(pool, "connectionTimeoutSeconds", 30)));
+        this.fetchSize = intValue(pool, "fetchSize", 1000);
+        config.addDataSourceProperty("defaultRowFetchSize", fetchSize);
+        String validationQuery = pool == null ? "" : LoadConfig.getValue(pool, "validationQuery");
+        if (!validationQuery.isEmpty()) {
+            config.setConnectionTestQuery(validationQuery);
+        }
+        config.setMetricsTrackerFactory((poolName, poolStats) -> new IMetricsTracker() {
+            @Override
+            public void recordConnectionAcquiredNanos(long elapsedAcquiredNanos) {
+                acquired.incrementAndGet();
+                waitNanos.addAndGet(elapsedAcquiredNanos);
+                maxWaitNanos.accumulateAndGet(elapsedAcquiredNanos, Math::max);
+            }
+
+            @Override
+            public void recordConnectionTimeout() {
+                timeouts.incrementAndGet();
+            }
+        });
+        this.dataSource = new HikariDataSource(config);
+    }
+
+    /**
+     * Database element of config.xml (<control>, <staging>, <warehouse>...): url, username, password, pool
+     */
+    public static DBConn fromConfig(Element database) {
+        return new DBConn(LoadConfig.getValue(database, "url"), LoadConfig.getValue(database, "username"),
+                LoadConfig.getValue(database, "password"), LoadConfig.getChildElement(database, "pool"));
+    }
+
+    private static int intValue(Element pool, String tag, int defaultValue) {
+        String value = pool == null ? "" : LoadConfig.getValue(pool, tag);
+        return value.isEmpty() ? defaultValue : Integer.parseInt(value);
+    }
+
+    public Connection getConnection() throws SQLException {
+        return dataSource.getConnection();
+    }
+
+    public int getFetchSize() {
+        return fetchSize;
+    }
+
+    /**
+     * Streams the rows to the handler, fetchSize rows at a time (cursor in a transaction,
+     * committed afterwards since queries also call functions that write, e.g. the log functions)
+     */
+    public void executeQuery(String sql, ResultSetHandler handler, Object... params) throws SQLException {
+        try (Connection conn = getConnection()) {
+            boolean cursor = fetchSize > 0;
+            if (cursor) {
+                conn.setAutoCommit(false);
+            }
+            try (PreparedStatement stmt = prepare(conn, sql, params)) {
+                stmt.setFetchSize(fetchSize);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    handler.handle(rs); // callback xử lý
+                }
+                if (cursor) {
+                    conn.commit();
+                }
+            } catch (SQLException | RuntimeException e) {
+                if (cursor) {
+                    conn.rollback();
+                }
+                throw e;
+            } finally {
+                if (cursor) {
+                    conn.setAutoCommit(true);
+                }
+            }
+        }
+    }
+
+    public int executeUpdate(String sql, Object... params) throws SQLException {
+        try (Connection conn = getConnection();
+             PreparedStatement stmt = prepare(conn, sql, params)) {
+
+            return stmt.executeUpdate();
+        }
+    }
+
+    private PreparedStatement prepare(Connection conn, String sql, Object... params) throws SQLException {
+        PreparedStatement stmt = conn.prepareStatement(sql);
+        for (int i = 0; i < params.length; i++) {
+            stmt.setObject(i + 1, params[i]);
+        }
+        return stmt;
+    }
+
+    public int getActiveConnections() {
+        HikariPoolMXBean pool = dataSource.getHikariPoolMXBean();
+        return pool == null ? 0 : pool.getActiveConnections();
+    }
+
+    public int getIdleConnections() {
+        HikariPoolMXBean pool = dataSource.getHikariPoolMXBean();
+        return pool == null ? 0 : pool.getIdleConnections();
+    }
+
+    /**
+     * Callers currently waiting for a free connection
+     */
+    public int getWaitingThreads() {
+        HikariPoolMXBean pool = dataSource.getHikariPoolMXBean();
+        return pool == null ? 0 : pool.getThreadsAwaitingConnection();
+    }
+
+    public long getTotalWaitMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(waitNanos.get());
+    }
+
+    public long getMaxWaitMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(maxWaitNanos.get());
+    }
+
+    /**
+     * One line summary, e.g. for the end of a run
+     */
+    public String getPoolStats() {
+        return name + ": active=" + getActiveConnections() + ", idle=" + getIdleConnections() +
+                ", waiting=" + getWaitingThreads() + ", acquired=" + acquired.get() +
+                ", waitTotal=" + getTotalWaitMillis() + "ms, waitMax=" + getMaxWaitMillis() + "ms" +
+                ", timeouts=" + timeouts.get();
+    }
+
+    @Override
+    public void close() {
+        dataSource.close();
+    }
+
+    public interface ResultSetHandler {
+        void handle(ResultSet rs) throws SQLException;
+    }
+}
@@ -0,0 +1,218 @@
+package utils;
+
+import org.w3c.dom.Element;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Monthly partitions of the fact tables (RANGE on observation_time), in the staging DB
+ * (TransformToStaging) and in the warehouse DB (LoadToDataWarehouse).
+ * See database/sql/fact_partitioning.sql.
+ *
+ * maintain(), before the facts are written:
+ * - creates the partitions from last month to <aheadMonths> ahead
+ * - moves rows that landed in <table>_default (month without partition) into a new partition
+ * - drops partitions older than <retentionMonths> (0 = keep everything)
+ *
+ * <factPartitions>
+ *     <enabled>false</enabled>
+ *     <aheadMonths>3</aheadMonths>
+ *     <retentionMonths>0</retentionMonths>
+ * </factPartitions>
+ */
+public class FactPartitions {
+
+    public static final List<String> FACT_TABLES = List.of("fact_weather_daily", "fact_air_quality_daily");
+    public static final String TIME_COLUMN = "observation_time";
+    private static final DateTimeFormatter MONTH = DateTimeFormatter.ofPattern("yyyyMM");
+    private static final String MOVED_TABLE = "fact_partition_moved";
+
+    private final boolean enabled;
+    private final int aheadMonths;
+    private final int retentionMonths;
+
+    public FactPartitions(LoadConfig config) {
+        Element partitions = LoadConfig.getElement(config.getXmlDoc(), "factPartitions");
+        this.enabled = Boolean.parseBoolean(LoadConfig.getValue(partitions, "enabled"));
+        this.aheadMonths = intValue(partitions, "aheadMonths", 3);
+        this.retentionMonths = intValue(partitions, "retentionMonths", 0);
+    }
+
+    private static int intValue(Element parent, String tag, int defaultValue) {
+        String value = LoadConfig.getValue(parent, tag);
+        return value.isEmpty() ? defaultValue : Integer.parseInt(value);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public static String partitionName(String table, YearMonth month) {
+        return table + "_p" + month.format(MONTH);
+    }
+
+    public static String defaultPartition(String table) {
+        return table + "_default";
+    }
+
+    /**
+     * Where the rows of one day go: its month partition, or the table itself when it is not
+     * partitioned or the partition does not exist (the default partition takes the rows)
+     */
+    public static String targetTable(Connection conn, String table, LocalDate day) throws SQLException {
+        String partition = partitionName(table, YearMonth.from(day));
+        return isPartitioned(conn, table) && exists(conn, partition) ? partition : table;
+    }
+
+    /**
+     * Predicate on the partition key for one day (partition pruning, unlike DATE(observation_time))
+     */
+    public static String dayRange(LocalDate day) {
+        return TIME_COLUMN + " >= '" + day + "' AND " + TIME_COLUMN + " < '" + day.plusDays(1) + "'";
+    }
+
+    /**
+     * Create, split and drop the partitions of all fact tables of this database
+     */
+    public void maintain(DBConn db) throws SQLException {
+        if (!enabled) {
+            return;
+        }
+        YearMonth now = YearMonth.now();
+        YearMonth oldest = retentionMonths > 0 ? now.minusMonths(retentionMonths) : null;
+
+        try (Connection conn = db.getConnection()) {
+            for (String table : FACT_TABLES) {
+                if (!isPartitioned(conn, table)) {
+                    throw new IllegalStateException(table + " is not partitioned, run database/sql/fact_partitioning.sql " +
+                            "or set <factPartitions><enabled>false</enabled>");
+                }
+
+                List<YearMonth> months = new ArrayList<>();
+                for (YearMonth month = now.minusMonths(1); !month.isAfter(now.plusMonths(aheadMonths)); month = month.plusMonths(1)) {
+                    months.add(month);
+                }
+                for (YearMonth month : defaultMonths(conn, table)) {
+                    if (!months.contains(month)) months.add(month);
+                }
+                for (YearMonth month : months) {
+                    if (oldest == null || !month.isBefore(oldest)) {
+                        createPartition(conn, table, month);
+                    }
+                }
+                if (oldest != null) {
+                    dropBefore(conn, table, oldest);
+                }
+            }
+        }
+    }
+
+    /**
+     * Months with rows in the default partition
+     */
+    private static List<YearMonth> defaultMonths(Connection conn, String table) throws SQLException {
+        List<YearMonth> months = new ArrayList<>();
+        if (!exists(conn, defaultPartition(table))) {
+            return months;
+        }
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT DISTINCT CAST(date_trunc('month', " + TIME_COLUMN + ") AS date) " +
+                     "FROM " + defaultPartition(table) + " WHERE " + TIME_COLUMN + " IS NOT NULL ORDER BY 1")) {
+            while (rs.next()) {
+                months.add(YearMonth.from(rs.getDate(1).toLocalDate()));
+            }
+        }
+        return months;
+    }
+
+    /**
+     * New month partition; rows of that month already in the default partition are moved into it
+     * (PostgreSQL refuses the partition while the default one holds rows of its range)
+     */
+    private static void createPartition(Connection conn, String table, YearMonth month) throws SQLException {
+        String partition = partitionName(table, month);
+        if (exists(conn, partition)) {
+            return;
+        }
+        String range = TIME_COLUMN + " >= '" + month.atDay(1) + "' AND " + TIME_COLUMN + " < '" + month.plusMonths(1).atDay(1) + "'";
+        String defaultTable = defaultPartition(table);
+
+        conn.setAutoCommit(false);
+        try (Statement stmt = conn.createStatement()) {
+            int moved = 0;
+            if (exists(conn, defaultTable)) {
+                stmt.execute("CREATE TEMP TABLE " + MOVED_TABLE + " (LIKE " + table + ") ON COMMIT DROP");
+                moved = stmt.executeUpdate("WITH d AS (DELETE FROM " + defaultTable + " WHERE " + range + " RETURNING *) " +
+                        "INSERT INTO " + MOVED_TABLE + " SELECT * FROM d");
+            }
+            stmt.execute("CREATE TABLE IF NOT EXISTS " + partition + " PARTITION OF " + table +
+                    " FOR VALUES FROM ('" + month.atDay(1) + "') TO ('" + month.plusMonths(1).atDay(1) + "')");
+            if (moved > 0) {
+                stmt.executeUpdate("INSERT INTO " + table + " OVERRIDING SYSTEM VALUE SELECT * FROM " + MOVED_TABLE);
+            }
+            conn.commit();
+            System.out.println("[Partition] Created " + partition + (moved > 0 ? " (" + moved + " rows from " + defaultTable + ")" : ""));
+        } catch (SQLException e) {
+            conn.rollback();
+            throw e;
+        } finally {
+            conn.setAutoCommit(true);
+        }
+    }
+
+    /**
+     * Retention: drop month partitions before the oldest month kept, purge the default partition too
+     */
+    private static void dropBefore(Connection conn, String table, YearMonth oldest) throws SQLException {
+        Pattern monthPartition = Pattern.compile(Pattern.quote(table) + "_p(\\d{6})");
+        List<String> expired = new ArrayList<>();
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT c.relname FROM pg_inherits i JOIN pg_class c ON c.oid = i.inhrelid " +
+                     "WHERE i.inhparent = to_regclass('" + table + "') ORDER BY c.relname")) {
+            while (rs.next()) {
+                Matcher matcher = monthPartition.matcher(rs.getString(1));
+                if (matcher.matches() && YearMonth.parse(matcher.group(1), MONTH).isBefore(oldest)) {
+                    expired.add(rs.getString(1));
+                }
+            }
+        }
+
+        try (Statement stmt = conn.createStatement()) {
+            for (String partition : expired) {
+                stmt.execute("DROP TABLE IF EXISTS " + partition);
+                System.out.println("[Partition] Dropped " + partition + " (retention)");
+            }
+            if (exists(conn, defaultPartition(table))) {
+                int purged = stmt.executeUpdate("DELETE FROM " + defaultPartition(table) + " WHERE " + TIME_COLUMN +
+                        " < '" + oldest.atDay(1) + "'");
+                if (purged > 0) {
+                    System.out.println("[Partition] Purged " + purged + " old rows from " + defaultPartition(table));
+                }
+            }
+        }
+    }
+
+    public static boolean isPartitioned(Connection conn, String table) throws SQLException {
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT 1 FROM pg_partitioned_table WHERE partrelid = to_regclass('" + table + "')")) {
+            return rs.next();
+        }
+    }
+
+    private static boolean exists(Connection conn, String table) throws SQLException {
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT to_regclass('" + table + "') IS NOT NULL")) {
+            return rs.next() && rs.getBoolean(1);
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package utils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.HexFormat;
+import java.util.Properties;
+
+/**
+ * Sidecar <file>.manifest written by AtomicFileWriter after the data file is in place:
+ * file name, format, data rows (header excluded), size in bytes and SHA-256 of the content.
+ * Rows are recounted on verify only for plain csv, other formats rely on the checksum.
+ */
+public class FileManifest {
+
+    private final String fileName;
+    private final String format;
+    private final long rows;
+    private final long bytes;
+    private final String sha256;
+
+    public FileManifest(String fileName, String format, long rows, long bytes, String sha256) {
+        this.fileName = fileName;
+        this.format = format;
+        this.rows = rows;
+        this.bytes = bytes;
+        this.sha256 = sha256;
+    }
+
+    public static Path pathFor(Path dataFile) {
+        return dataFile.resolveSibling(dataFile.getFileName() + ".manifest");
+    }
+
+    /**
+     * Manifest of a data file, or null if there is none
+     */
+    public static FileManifest readFor(Path dataFile) throws IOException {
+        Path path = pathFor(dataFile);
+        if (!Files.exists(path)) {
+            return null;
+        }
+        Properties props = new Properties();
+        try (Reader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            props.load(reader);
+        }
+        try {
+            return new FileManifest(
+                    props.getProperty("file"),
+                    props.getProperty("format", RecordFormat.CSV.getName()),
+                    Long.parseLong(props.getProperty("rows")),
+                    Long.parseLong(props.getProperty("bytes")),
+                    props.getProperty("sha256"));
+        } catch (RuntimeException e) {
+            throw new IOException("Invalid manifest " + path + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Write manifest next to the data file (temp + fsync + rename)
+     */
+    void writeFor(Path dataFile) throws IOException {
+        Properties props = new Properties();
+        props.setProperty("file", fileName);
+        props.setProperty("format", format);
+        props.setProperty("rows", String.valueOf(rows));
+        props.setProperty("bytes", String.valueOf(bytes));
+        props.setProperty("sha256", sha256);
+        props.setProperty("created", LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss")));
+
+        Path path = pathFor(dataFile);
+        Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+        try (Writer writer = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+            props.store(writer, "Written after " + fileName + " was complete");
+        }
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+            channel.force(true);
+        }
+        Files.move(tmp, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Check size, SHA-256 and row count of the data file against this manifest
+     */
+    public void verify(Path dataFile) throws IOException {
+        long size = Files.size(dataFile);
+        if (size != bytes) {
+            throw new IOException("Size mismatch for " + dataFile + ": manifest " + bytes + " bytes, file " + size);
+        }
+
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+        long lines = 0;
+        byte[] buffer = new byte[64 * 1024];
+        try (InputStream in = Files.newInputStream(dataFile)) {
+            int n;
+            while ((n = in.read(buffer)) > 0) {
+                digest.update(buffer, 0, n);
+                for (int i = 0; i < n; i++) {
+                    if (buffer[i] == '\n') {
+                        lines++;
+                    }
+                }
+            }
+        }
+
+        String actual = HexFormat.of().formatHex(digest.digest());
+        if (!actual.equalsIgnoreCase(sha256)) {
+            throw new IOException("Checksum mismatch for " + dataFile + ": manifest " + sha256 + ", file " + actual);
+        }
+        if (RecordFormat.CSV.getName().equals(format) && lines - 1 != rows) {
+            throw new IOException("Row count mismatch for " + dataFile + ": manifest " + rows + ", file " + (lines - 1));
+        }
+    }
+
+    public String getFileName() {
+        return fileName;
+    }
+
+    public String getFormat() {
+        return format;
+    }
+
+    public long getRows() {
+        return rows;
+    }
+
+    public long getBytes() {
+        return bytes;
+    }
+
+    public String getSha256() {
+        return sha256;
+    }
+}
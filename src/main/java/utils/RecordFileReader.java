@@ -0,0 +1,373 @@
+package utils;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Reads an extract file written by RecordFileWriter (or any legacy CSV).
+ * The format is detected from the content: gzip magic -> decompress,
+ * then WXB magic -> typed binary rows, otherwise CSV text.
+ *
+ * Values are read by column name, or by column index (indexOf once per file, -1 = missing column):
+ * - getString: trimmed text, null when missing or empty
+ * - getDouble / getLong: typed value (no text parsing for the binary format), null when missing or invalid
+ */
+public abstract class RecordFileReader implements Closeable {
+
+    private final Map<String, Integer> index = new HashMap<>();
+    private String[] columns;
+
+    public static RecordFileReader open(Path path) throws IOException {
+        InputStream in = new BufferedInputStream(Files.newInputStream(path), 64 * 1024);
+        try {
+            in.mark(2);
+            int b1 = in.read();
+            int b2 = in.read();
+            in.reset();
+            boolean gzip = b1 == 0x1f && b2 == 0x8b;
+            if (gzip) {
+                in = new BufferedInputStream(new GZIPInputStream(in, 64 * 1024), 64 * 1024);
+            }
+
+            in.mark(RecordFileWriter.BINARY_MAGIC.length);
+            byte[] magic = in.readNBytes(RecordFileWriter.BINARY_MAGIC.length);
+            in.reset();
+            if (Arrays.equals(magic, RecordFileWriter.BINARY_MAGIC)) {
+                return new BinaryReader(in);
+            }
+            return new CsvReader(in, gzip ? RecordFormat.CSV_GZIP : RecordFormat.CSV);
+        } catch (IOException | RuntimeException e) {
+            in.close();
+            throw e;
+        }
+    }
+
+    protected void setColumns(String[] columns) {
+        this.columns = columns;
+        for (int i = 0; i < columns.length; i++) {
+            index.put(columns[i], i);
+        }
+    }
+
+    public String[] getColumns() {
+        return columns;
+    }
+
+    public boolean hasColumn(String column) {
+        return index.containsKey(column);
+    }
+
+    public int indexOf(String column) {
+        Integer i = index.get(column);
+        return i == null ? -1 : i;
+    }
+
+    public abstract RecordFormat getFormat();
+
+    /**
+     * Move to the next row, false at the end of the file
+     */
+    public abstract boolean next() throws IOException;
+
+    public String getString(String column) {
+        return getString(indexOf(column));
+    }
+
+    public Double getDouble(String column) {
+        return getDouble(indexOf(column));
+    }
+
+    public Long getLong(String column) {
+        return getLong(indexOf(column));
+    }
+
+    /**
+     * Line of the current row in the file (CSV, header = line 1) or its row number (binary)
+     */
+    public abstract long getLineNumber();
+
+    /**
+     * Number of values in the current row, differs from getColumns().length for broken CSV lines
+     */
+    public abstract int getFieldCount();
+
+    /**
+     * Current row as one CSV line (e.g. to keep a rejected row)
+     */
+    public String formatRow() {
+        StringBuilder sb = new StringBuilder();
+        int count = Math.max(getFieldCount(), columns.length);
+        for (int i = 0; i < count; i++) {
+            if (i > 0) sb.append(',');
+            String value = getString(i);
+            if (value == null) continue;
+            if (value.indexOf(',') >= 0 || value.indexOf('"') >= 0 || value.indexOf('\n') >= 0 || value.indexOf('\r') >= 0) {
+                sb.append('"').append(value.replace("\"", "\"\"")).append('"');
+            } else {
+                sb.append(value);
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Same as getString(column) == null, without creating the String
+     */
+    public abstract boolean isBlank(int column);
+
+    public abstract String getString(int column);
+
+    public abstract Double getDouble(int column);
+
+    public abstract Long getLong(int column);
+
+    // ============================================================
+    // CSV / CSV.GZ
+    // ============================================================
+    private static class CsvReader extends RecordFileReader {
+        private final Reader reader;
+        private final CsvTokenizer tokenizer;
+        private final RecordFormat format;
+
+        CsvReader(InputStream in, RecordFormat format) throws IOException {
+            this.reader = new InputStreamReader(in, StandardCharsets.UTF_8);
+            this.tokenizer = new CsvTokenizer(reader);
+            this.format = format;
+
+            if (!tokenizer.next()) {
+                setColumns(new String[0]);
+                return;
+            }
+            String[] names = tokenizer.getFields();
+            if (names.length > 0 && names[0].startsWith("\uFEFF")) names[0] = names[0].substring(1);
+            for (int i = 0; i < names.length; i++) names[i] = names[i].trim();
+            setColumns(names);
+        }
+
+        @Override
+        public RecordFormat getFormat() {
+            return format;
+        }
+
+        @Override
+        public boolean next() throws IOException {
+            while (tokenizer.next()) {
+                // Skip blank lines
+                if (tokenizer.getFieldCount() == 1 && tokenizer.getTrimmedField(0) == null
+                        && !tokenizer.isQuoted(0)) {
+                    continue;
+                }
+                return true;
+            }
+            return false;
+        }
+
+        @Override
+        public long getLineNumber() {
+            return tokenizer.getLineNumber();
+        }
+
+        @Override
+        public int getFieldCount() {
+            return tokenizer.getFieldCount();
+        }
+
+        @Override
+        public boolean isBlank(int column) {
+            return tokenizer.isBlank(column);
+        }
+
+        @Override
+        public String getString(int column) {
+            return tokenizer.getTrimmedField(column);
+        }
+
+        @Override
+        public Double getDouble(int column) {
+            String value = getString(column);
+            try {
+                return value == null ? null : Double.parseDouble(value);
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+
+        @Override
+        public Long getLong(int column) {
+            String value = getString(column);
+            try {
+                return value == null ? null : Long.parseLong(value);
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            reader.close();
+        }
+    }
+
+    // ============================================================
+    // WXB (see RecordFileWriter)
+    // ============================================================
+    private static class BinaryReader extends RecordFileReader {
+        private final DataInputStream in;
+        private final RecordFormat.ColumnType[] types;
+        private final List<String> dictionary = new ArrayList<>();
+        private final Object[] values;
+        // Decimals of each DOUBLE value's source text, -1 = unknown (older files)
+        private final int[] scales;
+        private long rowsRead;
+
+        BinaryReader(InputStream stream) throws IOException {
+            this.in = new DataInputStream(stream);
+            in.readNBytes(RecordFileWriter.BINARY_MAGIC.length);
+
+            int count = in.readInt();
+            String[] names = new String[count];
+            types = new RecordFormat.ColumnType[count];
+            for (int i = 0; i < count; i++) {
+                names[i] = in.readUTF();
+                types[i] = RecordFormat.ColumnType.values()[in.readByte()];
+            }
+            setColumns(names);
+            values = new Object[count];
+            scales = new int[count];
+        }
+
+        @Override
+        public RecordFormat getFormat() {
+            return RecordFormat.BINARY;
+        }
+
+        @Override
+        public boolean next() throws IOException {
+            int marker = in.readByte();
+            if (marker == RecordFileWriter.END) {
+                long expected = in.readLong();
+                if (expected != rowsRead) {
+                    throw new IOException("Binary file truncated: " + rowsRead + " of " + expected + " rows");
+                }
+                return false;
+            }
+            if (marker != RecordFileWriter.ROW) {
+                throw new IOException("Corrupt binary file at row " + (rowsRead + 1));
+            }
+
+            for (int i = 0; i < types.length; i++) {
+                switch (types[i]) {
+                    case DOUBLE:
+                        int scaleMarker = in.readUnsignedByte();
+                        values[i] = scaleMarker == 0 ? null : in.readDouble();
+                        scales[i] = scaleMarker >= RecordFileWriter.DOUBLE_SCALE_BASE
+                                ? scaleMarker - RecordFileWriter.DOUBLE_SCALE_BASE : -1;
+                        break;
+                    case LONG:
+                        values[i] = in.readByte() == 0 ? null : in.readLong();
+                        break;
+                    default:
+                        int id = readVarInt();
+                        if (id == 0) {
+                            values[i] = null;
+                        } else if (id <= dictionary.size()) {
+                            values[i] = dictionary.get(id - 1);
+                        } else {
+                            String value = in.readUTF();
+                            dictionary.add(value);
+                            values[i] = value;
+                        }
+                }
+            }
+            rowsRead++;
+            return true;
+        }
+
+        private int readVarInt() throws IOException {
+            int value = 0;
+            int shift = 0;
+            int b;
+            do {
+                b = in.readUnsignedByte();
+                value |= (b & 0x7F) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            return value;
+        }
+
+        private Object value(int column) {
+            return column < 0 || column >= values.length ? null : values[column];
+        }
+
+        @Override
+        public long getLineNumber() {
+            return rowsRead;
+        }
+
+        @Override
+        public int getFieldCount() {
+            return values.length;
+        }
+
+        @Override
+        public boolean isBlank(int column) {
+            return value(column) == null;
+        }
+
+        @Override
+        public String getString(int column) {
+            Object value = value(column);
+            if (value == null) return null;
+            if (value instanceof Double) {
+                // Same text as the CSV formats (hash keys and raw text columns do not depend on the format)
+                return scales[column] >= 0 ? RecordFileWriter.decimalText((Double) value, scales[column])
+                        : BigDecimal.valueOf((Double) value).toPlainString();
+            }
+            return value.toString();
+        }
+
+        @Override
+        public Double getDouble(int column) {
+            Object value = value(column);
+            if (value instanceof Double) return (Double) value;
+            if (value instanceof Long) return ((Long) value).doubleValue();
+            try {
+                return value == null ? null : Double.parseDouble((String) value);
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+
+        @Override
+        public Long getLong(int column) {
+            Object value = value(column);
+            if (value instanceof Long) return (Long) value;
+            if (value instanceof Double) return ((Double) value).longValue();
+            try {
+                return value == null ? null : Long.parseLong((String) value);
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+}
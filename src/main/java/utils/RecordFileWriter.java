@@ -0,0 +1,242 @@
+package utils;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Writes extract rows in the configured RecordFormat through an AtomicFileWriter
+ * (nothing is visible at the target path before commit()).
+ *
+ * Rows are given as canonical CSV lines (what the transcoders produce);
+ * the binary writer splits them once here so the loader gets typed values.
+ */
+public abstract class RecordFileWriter implements Closeable {
+
+    static final byte[] BINARY_MAGIC = {'W', 'X', 'B', '1'};
+    static final int ROW = 1;
+    static final int END = 0;
+    // DOUBLE marker: 0 = null, 1 = value without its text scale (older files), 2 + scale = value
+    // written with that many decimals in the source text (e.g. 105.8500 -> 6)
+    static final int DOUBLE_NO_SCALE = 1;
+    static final int DOUBLE_SCALE_BASE = 2;
+    private static final int MAX_SCALE = 255 - DOUBLE_SCALE_BASE;
+
+    /**
+     * Text of a DOUBLE cell with a fixed number of decimals, as the extract writes it in CSV
+     */
+    static String decimalText(double value, int scale) {
+        String text = new BigDecimal(Double.toString(value)).setScale(scale, RoundingMode.HALF_UP).toPlainString();
+        // -0.0 keeps its sign like in the CSV text
+        return value == 0 && Double.doubleToRawLongBits(value) < 0 && !text.startsWith("-") ? "-" + text : text;
+    }
+
+    protected final AtomicFileWriter file;
+    private long rowCount;
+
+    protected RecordFileWriter(AtomicFileWriter file) {
+        this.file = file;
+    }
+
+    /**
+     * Open a writer, column types are only used by the binary format
+     */
+    public static RecordFileWriter open(Path target, RecordFormat format, String[] columns,
+                                        RecordFormat.ColumnType[] types) throws IOException {
+        AtomicFileWriter file = new AtomicFileWriter(target, format.getName());
+        try {
+            switch (format) {
+                case CSV:
+                    return new CsvWriter(file, columns, file.stream());
+                case CSV_GZIP:
+                    return new CsvWriter(file, columns, new GZIPOutputStream(file.stream(), 64 * 1024));
+                case BINARY:
+                    return new BinaryWriter(file, columns, types);
+                default:
+                    throw new IllegalArgumentException("Unsupported format " + format);
+            }
+        } catch (IOException | RuntimeException e) {
+            file.abort();
+            throw e;
+        }
+    }
+
+    public void writeRow(String csvRow) throws IOException {
+        write(csvRow);
+        rowCount++;
+    }
+
+    public long getRowCount() {
+        return rowCount;
+    }
+
+    /**
+     * Finish encoding, then fsync + rename + manifest
+     */
+    public FileManifest commit() throws IOException {
+        finish();
+        return file.commit(rowCount);
+    }
+
+    @Override
+    public void close() {
+        file.abort();
+    }
+
+    protected abstract void write(String csvRow) throws IOException;
+
+    protected abstract void finish() throws IOException;
+
+    // ============================================================
+    // CSV / CSV.GZ
+    // ============================================================
+    private static class CsvWriter extends RecordFileWriter {
+        private final Writer writer;
+
+        CsvWriter(AtomicFileWriter file, String[] columns, OutputStream out) throws IOException {
+            super(file);
+            this.writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), 64 * 1024);
+            writer.write(String.join(",", columns));
+            writer.write(System.lineSeparator());
+        }
+
+        @Override
+        protected void write(String csvRow) throws IOException {
+            writer.write(csvRow);
+            writer.write(System.lineSeparator());
+        }
+
+        @Override
+        protected void finish() throws IOException {
+            writer.close(); // also finishes gzip, the file itself stays open
+        }
+    }
+
+    // ============================================================
+    // WXB: gzip( magic, schema, rows..., END, row count )
+    // - STRING: varint 0 = null, id of a known value, or next id followed by the UTF value
+    // - DOUBLE: byte 0 = null, else 2 + decimals of the source text followed by the 8 byte value,
+    //   so the reader gives back the same text as CSV ("105.8500", not "105.85")
+    // - LONG: byte 0 = null, 1 followed by the 8 byte value
+    // ============================================================
+    private static class BinaryWriter extends RecordFileWriter {
+        private final DataOutputStream out;
+        private final String[] columns;
+        private final RecordFormat.ColumnType[] types;
+        private final Map<String, Integer> dictionary = new HashMap<>();
+        private final CsvTokenizer tokenizer = new CsvTokenizer(Reader.nullReader(), 1024);
+
+        BinaryWriter(AtomicFileWriter file, String[] columns, RecordFormat.ColumnType[] types) throws IOException {
+            super(file);
+            if (types == null || types.length != columns.length) {
+                throw new IllegalArgumentException("Binary format needs one type per column");
+            }
+            this.columns = columns;
+            this.types = types;
+            this.out = new DataOutputStream(new BufferedOutputStream(
+                    new GZIPOutputStream(file.stream(), 64 * 1024), 64 * 1024));
+
+            out.write(BINARY_MAGIC);
+            out.writeInt(columns.length);
+            for (int i = 0; i < columns.length; i++) {
+                out.writeUTF(columns[i]);
+                out.writeByte(types[i].ordinal());
+            }
+        }
+
+        @Override
+        protected void write(String csvRow) throws IOException {
+            tokenizer.reset(new StringReader(csvRow));
+            if (!tokenizer.next()) {
+                throw new IOException("Empty row");
+            }
+            out.writeByte(ROW);
+            for (int i = 0; i < columns.length; i++) {
+                String value = tokenizer.getTrimmedField(i);
+                try {
+                    writeValue(types[i], value);
+                } catch (NumberFormatException e) {
+                    throw new IOException("Column " + columns[i] + ": not a number '" + value + "'", e);
+                }
+            }
+        }
+
+        private void writeValue(RecordFormat.ColumnType type, String value) throws IOException {
+            switch (type) {
+                case DOUBLE:
+                    if (value == null) {
+                        out.writeByte(0);
+                    } else {
+                        double parsed = Double.parseDouble(value);
+                        out.writeByte(scaleMarker(value, parsed));
+                        out.writeDouble(parsed);
+                    }
+                    break;
+                case LONG:
+                    if (value == null) {
+                        out.writeByte(0);
+                    } else {
+                        long parsed = Long.parseLong(value);
+                        out.writeByte(1);
+                        out.writeLong(parsed);
+                    }
+                    break;
+                default:
+                    if (value == null) {
+                        writeVarInt(0);
+                        break;
+                    }
+                    Integer id = dictionary.get(value);
+                    if (id != null) {
+                        writeVarInt(id);
+                    } else {
+                        id = dictionary.size() + 1;
+                        dictionary.put(value, id);
+                        writeVarInt(id);
+                        out.writeUTF(value);
+                    }
+            }
+        }
+
+        /**
+         * Marker keeping the number of decimals of the text, when the value renders back to the same text
+         */
+        private static int scaleMarker(String text, double parsed) {
+            int dot = text.indexOf('.');
+            int scale = dot < 0 ? 0 : text.length() - dot - 1;
+            if (scale > MAX_SCALE || !decimalText(parsed, scale).equals(text)) {
+                return DOUBLE_NO_SCALE; // exponent, leading '+' or zeros...: shortest form
+            }
+            return DOUBLE_SCALE_BASE + scale;
+        }
+
+        private void writeVarInt(int value) throws IOException {
+            while ((value & ~0x7F) != 0) {
+                out.writeByte((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            out.writeByte(value);
+        }
+
+        @Override
+        protected void finish() throws IOException {
+            out.writeByte(END);
+            out.writeLong(getRowCount());
+            out.close(); // finishes gzip, the file itself stays open
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package utils;
+
+/**
+ * Format of the file handed from extract to load (<configSource><output_format>).
+ * - csv    : plain text, one row per line
+ * - csv.gz : same CSV, gzip compressed
+ * - wxb    : typed binary rows (dictionary encoded strings, binary numbers), gzip compressed
+ * Readers detect the format from the file content, not from the extension.
+ */
+public enum RecordFormat {
+    CSV("csv", ".csv"),
+    CSV_GZIP("csv.gz", ".csv.gz"),
+    BINARY("wxb", ".wxb");
+
+    private final String name;
+    private final String extension;
+
+    RecordFormat(String name, String extension) {
+        this.name = name;
+        this.extension = extension;
+    }
+
+    public static RecordFormat fromName(String name) {
+        if (name == null || name.isBlank()) {
+            return CSV;
+        }
+        for (RecordFormat format : values()) {
+            if (format.name.equalsIgnoreCase(name.trim())) {
+                return format;
+            }
+        }
+        throw new IllegalArgumentException("Unknown output format: " + name + " (csv, csv.gz, wxb)");
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getExtension() {
+        return extension;
+    }
+
+    /**
+     * Type of a column in the binary format
+     */
+    public enum ColumnType {
+        STRING, DOUBLE, LONG
+    }
+}
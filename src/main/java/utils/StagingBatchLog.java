@@ -0,0 +1,167 @@
+package utils;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Control DB bookkeeping for incremental staging (<load><incremental>true</incremental>).
+ *
+ * Every load appends into its own partition of the raw_* tables (LIST on load_batch_id =
+ * load execution id) and is recorded in staging_batch:
+ * - loaded      : rows are in staging, not transformed yet
+ * - transformed : TransformToStaging has processed the batch
+ * - dropped     : the partitions were removed by the retention policy
+ * See database/sql/staging_incremental.sql and load_to_staging.sql.
+ */
+public class StagingBatchLog {
+
+    public static final String LOADED = "loaded";
+    public static final String TRANSFORMED = "transformed";
+    public static final String DROPPED = "dropped";
+
+    private final DBConn controlDB;
+
+    public StagingBatchLog(DBConn controlDB) {
+        this.controlDB = controlDB;
+    }
+
+    /**
+     * True if a file with this content (SHA-256 from its manifest) is already in staging
+     */
+    public boolean isFileLoaded(String sha256) throws SQLException {
+        final boolean[] loaded = {false};
+        controlDB.executeQuery("SELECT 1 FROM staging_batch WHERE file_sha256 = ? AND status <> ?",
+                rs -> loaded[0] = rs.next(), sha256, DROPPED);
+        return loaded[0];
+    }
+
+    public void markLoaded(String loadBatchId, String sourceFile, String sha256, int rows) throws SQLException {
+        controlDB.executeUpdate(
+                "INSERT INTO staging_batch (load_batch_id, source_file, file_sha256, row_count, status, loaded_at) " +
+                        "VALUES (?, ?, ?, ?, ?, NOW()) " +
+                        "ON CONFLICT (load_batch_id) DO UPDATE SET source_file = EXCLUDED.source_file, " +
+                        "file_sha256 = EXCLUDED.file_sha256, row_count = EXCLUDED.row_count, " +
+                        "status = EXCLUDED.status, loaded_at = EXCLUDED.loaded_at",
+                loadBatchId, sourceFile, sha256, rows, LOADED);
+    }
+
+    /**
+     * Batches loaded but not transformed yet, oldest first
+     */
+    public List<String> pendingBatches() throws SQLException {
+        return batchIds("SELECT load_batch_id FROM staging_batch WHERE status = ? ORDER BY loaded_at", LOADED);
+    }
+
+    public void markTransformed(List<String> loadBatchIds) throws SQLException {
+        for (String id : loadBatchIds) {
+            controlDB.executeUpdate("UPDATE staging_batch SET status = ?, transformed_at = NOW() WHERE load_batch_id = ?",
+                    TRANSFORMED, id);
+        }
+    }
+
+    /**
+     * Delta transform: batches of a raw table after its high-water mark (transform_watermark),
+     * plus any batch not transformed yet (a batch committed late with an older loaded_at)
+     */
+    public List<String> batchesAfterWatermark(String sourceTable) throws SQLException {
+        return batchIds("SELECT b.load_batch_id FROM staging_batch b " +
+                "LEFT JOIN transform_watermark w ON w.source_table = ? " +
+                "WHERE b.status <> ? AND (b.status = ? OR w.last_loaded_at IS NULL OR b.loaded_at > w.last_loaded_at) " +
+                "ORDER BY b.loaded_at", sourceTable, DROPPED, LOADED);
+    }
+
+    /**
+     * Move the high-water mark of a raw table to the newest of the transformed batches
+     */
+    public void advanceWatermark(String sourceTable, List<String> loadBatchIds) throws SQLException {
+        if (loadBatchIds.isEmpty()) {
+            return;
+        }
+        controlDB.executeUpdate(
+                "INSERT INTO transform_watermark (source_table, last_loaded_at, last_load_batch_id, updated_at) " +
+                        "SELECT ?, b.loaded_at, b.load_batch_id, NOW() FROM staging_batch b " +
+                        "WHERE b.load_batch_id IN " + inList(loadBatchIds) + " ORDER BY b.loaded_at DESC LIMIT 1 " +
+                        "ON CONFLICT (source_table) DO UPDATE SET last_loaded_at = EXCLUDED.last_loaded_at, " +
+                        "last_load_batch_id = EXCLUDED.last_load_batch_id, updated_at = NOW() " +
+                        "WHERE transform_watermark.last_loaded_at IS NULL " +
+                        "   OR EXCLUDED.last_loaded_at > transform_watermark.last_loaded_at",
+                sourceTable);
+    }
+
+    /**
+     * Batches older than the retention whose partitions still exist
+     */
+    public List<String> expiredBatches(int retentionDays) throws SQLException {
+        return batchIds("SELECT load_batch_id FROM staging_batch WHERE status <> ? " +
+                "AND loaded_at < NOW() - make_interval(days => ?) ORDER BY loaded_at", DROPPED, retentionDays);
+    }
+
+    public String getStatus(String loadBatchId) throws SQLException {
+        final String[] status = {null};
+        controlDB.executeQuery("SELECT status FROM staging_batch WHERE load_batch_id = ?",
+                rs -> { if (rs.next()) status[0] = rs.getString(1); }, loadBatchId);
+        return status[0];
+    }
+
+    public void markDropped(String loadBatchId) throws SQLException {
+        controlDB.executeUpdate("UPDATE staging_batch SET status = ?, dropped_at = NOW() WHERE load_batch_id = ?",
+                DROPPED, loadBatchId);
+    }
+
+    /**
+     * Claim an input file for this process (multi-file ingestion). A file can be claimed
+     * when nobody has it, when the last attempt failed, when a claim is older than
+     * claimTimeoutMinutes (crashed loader) or when a loaded name comes back with new content.
+     * Returns false if another loader owns it or it is already loaded.
+     */
+    public boolean claimFile(String fileName, String sha256, String owner, int claimTimeoutMinutes) throws SQLException {
+        int rows = controlDB.executeUpdate(
+                "INSERT INTO staging_file_claim (file_name, file_sha256, status, claimed_by, claimed_at) " +
+                        "VALUES (?, ?, 'claimed', ?, NOW()) " +
+                        "ON CONFLICT (file_name) DO UPDATE SET file_sha256 = EXCLUDED.file_sha256, status = 'claimed', " +
+                        "claimed_by = EXCLUDED.claimed_by, claimed_at = NOW(), finished_at = NULL " +
+                        "WHERE staging_file_claim.status = 'failed' " +
+                        "   OR (staging_file_claim.status = 'claimed' " +
+                        "       AND staging_file_claim.claimed_at < NOW() - make_interval(mins => ?)) " +
+                        "   OR (staging_file_claim.status = 'loaded' " +
+                        "       AND staging_file_claim.file_sha256 IS DISTINCT FROM EXCLUDED.file_sha256)",
+                fileName, sha256, owner, claimTimeoutMinutes);
+        return rows > 0;
+    }
+
+    /**
+     * Close a claim: loaded (file archived) or failed (next run retries)
+     */
+    public void finishClaim(String fileName, String status, String loadBatchId) throws SQLException {
+        controlDB.executeUpdate("UPDATE staging_file_claim SET status = ?, load_batch_id = ?, finished_at = NOW() " +
+                "WHERE file_name = ?", status, loadBatchId, fileName);
+    }
+
+    private List<String> batchIds(String sql, Object... params) throws SQLException {
+        List<String> ids = new ArrayList<>();
+        controlDB.executeQuery(sql, rs -> {
+            while (rs.next()) ids.add(rs.getString(1));
+        }, params);
+        return ids;
+    }
+
+    /**
+     * Partition of a raw table for one batch, e.g. raw_weather_location_lod_stg_20251118_001
+     */
+    public static String partitionName(String table, String loadBatchId) {
+        return table + "_" + loadBatchId.toLowerCase().replaceAll("[^a-z0-9_]", "_");
+    }
+
+    /**
+     * SQL IN list of batch ids (ids come from the control DB, quotes are escaped anyway)
+     */
+    public static String inList(List<String> loadBatchIds) {
+        StringBuilder sb = new StringBuilder("(");
+        for (int i = 0; i < loadBatchIds.size(); i++) {
+            if (i > 0) sb.append(", ");
+            sb.append('\'').append(loadBatchIds.get(i).replace("'", "''")).append('\'');
+        }
+        return sb.append(')').toString();
+    }
+}
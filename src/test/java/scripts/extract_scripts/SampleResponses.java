@@ -0,0 +1,23 @@
+package scripts.extract_scripts;
+
+/**
+ * WeatherAPI responses used by the tests and the JMH benchmarks
+ */
+final class SampleResponses {
+
+    static final String CURRENT = "{\"location\":{\"name\":\"Hanoi\",\"region\":\"\",\"country\":\"Vietnam\"," +
+            "\"lat\":21.0333,\"lon\":105.85,\"tz_id\":\"Asia/Bangkok\",\"localtime_epoch\":1763859600," +
+            "\"localtime\":\"2025-11-23 08:00\"}," +
+            "\"current\":{\"last_updated_epoch\":1763859600,\"last_updated\":\"2025-11-23 08:00\"," +
+            "\"temp_c\":22.3,\"temp_f\":72.1,\"is_day\":1," +
+            "\"condition\":{\"text\":\"Partly cloudy\",\"icon\":\"//cdn.weatherapi.com/weather/64x64/day/116.png\",\"code\":1003}," +
+            "\"wind_mph\":6.7,\"wind_kph\":10.8,\"wind_degree\":45,\"wind_dir\":\"NE\",\"pressure_mb\":1019.0," +
+            "\"pressure_in\":30.09,\"precip_mm\":0.0,\"precip_in\":0.0,\"humidity\":73,\"cloud\":50," +
+            "\"feelslike_c\":24.6,\"feelslike_f\":76.3,\"vis_km\":10.0,\"vis_miles\":6.0,\"uv\":1.4," +
+            "\"gust_mph\":9.1,\"gust_kph\":14.6," +
+            "\"air_quality\":{\"co\":1093.95,\"no2\":52.355,\"o3\":30.0,\"so2\":21.83,\"pm2_5\":88.245," +
+            "\"pm10\":91.575,\"us-epa-index\":4,\"gb-defra-index\":10}}}";
+
+    private SampleResponses() {
+    }
+}
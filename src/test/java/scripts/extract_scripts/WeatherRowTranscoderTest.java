@@ -0,0 +1,80 @@
+package scripts.extract_scripts;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Locale;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class WeatherRowTranscoderTest {
+
+    private static final ExtractWeatherData.Location HANOI =
+            new ExtractWeatherData.Location("Ha Noi, Viet Nam", "Hanoi", "HN", "North");
+
+    private static String fixed(String literal, int decimals) {
+        StringBuilder sb = new StringBuilder();
+        new WeatherRowTranscoder().appendFixed(sb, literal, decimals);
+        return sb.toString();
+    }
+
+    @Test
+    void roundsHalfUpOnTheLiteral() {
+        assertEquals("21.3", fixed("21.25", 1));
+        assertEquals("21.2", fixed("21.249", 1));
+        assertEquals("1.01", fixed("1.005", 2));
+        assertEquals("-3.46", fixed("-3.455", 2));
+        assertEquals("105.8500", fixed("105.85", 4));
+        assertEquals("7.00", fixed("7", 2));
+    }
+
+    @Test
+    void carryRunsIntoTheIntegerPart() {
+        assertEquals("10.00", fixed("9.995", 2));
+        assertEquals("100.0", fixed("99.95", 1));
+        assertEquals("-1000.0", fixed("-999.96", 1));
+        assertEquals("1.0", fixed("0.96", 1));
+        assertEquals("1", fixed("0.5", 0));
+    }
+
+    @Test
+    void keepsTheSignOfNegativeZero() {
+        assertEquals("-0.0", fixed("-0.0", 1));
+        assertEquals("-0.0", fixed("-0.04", 1));
+        assertEquals("-0.00", fixed("-0", 2));
+        assertEquals(String.format(Locale.ROOT, "%.1f", -0.04), fixed("-0.04", 1));
+    }
+
+    @Test
+    void handlesExponentAndLeadingDot() {
+        assertEquals("0.0010", fixed("1e-3", 4));
+        assertEquals("1500.0", fixed("1.5E3", 1));
+        assertEquals("0.50", fixed(".5", 2));
+        assertThrows(NumberFormatException.class, () -> fixed("-", 1));
+    }
+
+    @Test
+    void matchesStringFormatForRandomValues() {
+        java.util.Random random = new java.util.Random(42);
+        for (int i = 0; i < 10_000; i++) {
+            double value = Math.round((random.nextDouble() - 0.5) * 2_000_000) / 1000.0;
+            int decimals = random.nextInt(5);
+            assertEquals(String.format(Locale.ROOT, "%." + decimals + "f", value),
+                    fixed(Double.toString(value), decimals), Double.toString(value));
+        }
+    }
+
+    @Test
+    void rendersCurrentResponseAsCsvRow() throws Exception {
+        String row = new WeatherRowTranscoder().transcode(SampleResponses.CURRENT, HANOI,
+                "EXEC-20251123-001", "2025-11-23 08:00:00");
+        List<String> cells = List.of(row.split(",(?=(?:[^\"]*\"[^\"]*\")*[^\"]*$)", -1));
+        assertEquals(43, cells.size(), row);
+        assertEquals("EXEC-20251123-001", cells.get(0));
+        assertEquals("\"Ha Noi, Viet Nam\"", cells.get(1));
+        assertEquals("21.0333", cells.get(5));
+        assertEquals("\"https://cdn.weatherapi.com/weather/64x64/day/116.png\"", cells.get(31));
+        assertEquals("2025-11-23 08:00:00", cells.get(42));
+    }
+}
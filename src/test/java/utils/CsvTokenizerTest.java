@@ -0,0 +1,82 @@
+package utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CsvTokenizerTest {
+
+    private static CsvTokenizer tokenizer(String csv) {
+        // Tiny buffer so records and quotes cross buffer refills
+        return new CsvTokenizer(new StringReader(csv), 3);
+    }
+
+    @Test
+    void splitsPlainFieldsAndKeepsEmptyOnes() throws IOException {
+        CsvTokenizer csv = tokenizer("a,b,,d\n,,\n");
+        assertTrue(csv.next());
+        assertArrayEquals(new String[]{"a", "b", "", "d"}, csv.getFields());
+        assertTrue(csv.next());
+        assertArrayEquals(new String[]{"", "", ""}, csv.getFields());
+        assertFalse(csv.next());
+    }
+
+    @Test
+    void unescapesQuotedFieldsWithQuotesAndCommas() throws IOException {
+        CsvTokenizer csv = tokenizer("\"Ha Noi, Viet Nam\",\"say \"\"hi\"\"\",\"\",x\n");
+        assertTrue(csv.next());
+        assertArrayEquals(new String[]{"Ha Noi, Viet Nam", "say \"hi\"", "", "x"}, csv.getFields());
+        assertTrue(csv.isQuoted(0));
+        assertTrue(csv.isQuoted(2));
+        assertFalse(csv.isQuoted(3));
+    }
+
+    @Test
+    void handlesCrlfAndLineBreaksInsideQuotes() throws IOException {
+        CsvTokenizer csv = tokenizer("h1,h2\r\n\"line 1\r\nline 2\",b\r\nc,\"d,\"\"e\"\"\"\r\n");
+        assertTrue(csv.next());
+        assertArrayEquals(new String[]{"h1", "h2"}, csv.getFields());
+        assertTrue(csv.next());
+        assertArrayEquals(new String[]{"line 1\r\nline 2", "b"}, csv.getFields());
+        assertEquals(2, csv.getLineNumber());
+        assertTrue(csv.next());
+        assertArrayEquals(new String[]{"c", "d,\"e\""}, csv.getFields());
+        assertEquals(3, csv.getRecordNumber());
+        assertEquals(4, csv.getLineNumber());
+        assertFalse(csv.next());
+    }
+
+    @Test
+    void lastRecordWithoutLineBreak() throws IOException {
+        CsvTokenizer csv = tokenizer("a,\"b\"");
+        assertTrue(csv.next());
+        assertArrayEquals(new String[]{"a", "b"}, csv.getFields());
+        assertFalse(csv.next());
+    }
+
+    @Test
+    void trimmedAndBlankFields() throws IOException {
+        CsvTokenizer csv = tokenizer("  x ,   ,\"\"\n");
+        assertTrue(csv.next());
+        assertEquals("x", csv.getTrimmedField(0));
+        assertNull(csv.getTrimmedField(1));
+        assertTrue(csv.isBlank(1));
+        assertTrue(csv.isBlank(2));
+        assertTrue(csv.isBlank(5));
+        assertNull(csv.getField(5));
+    }
+
+    @Test
+    void rejectsUnterminatedQuote() throws IOException {
+        CsvTokenizer csv = tokenizer("a,\"open\nb\n");
+        assertThrows(IOException.class, csv::next);
+    }
+}